@@ -0,0 +1,47 @@
+package dev.yuzuki.utils.animations;
+
+import dev.yuzuki.utils.animations.bezier.BezierEasing;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EasingBenchmark {
+    private final BezierEasing bezier = new BezierEasing(0.25, 0.1, 0.25, 1.0);
+    private final Animation animation = new Animation(Easing.EASE_IN_OUT_CUBIC);
+    private double progress;
+
+    @Param({"EASE_OUT_SINE", "EASE_IN_OUT_CUBIC"})
+    public Easing easing;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        animation.setValue(0);
+    }
+
+    private double next() {
+        progress += 0.001;
+        if (progress >= 1) progress = 0;
+        return progress;
+    }
+
+    @Benchmark
+    public double easing() {
+        return easing.ease(next());
+    }
+
+    @Benchmark
+    public double bezier() {
+        return bezier.ease(next());
+    }
+
+    @Benchmark
+    public double animationGet() {
+        return animation.get(10_000, 100);
+    }
+}
@@ -0,0 +1,36 @@
+package dev.yuzuki.utils.color;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RichColorBenchmark {
+    private final RichColor color = new RichColor(0x80FF8040);
+    private int value = 0x80FF8040;
+
+    @Benchmark
+    public RichColor fromArgb() {
+        return new RichColor(value++);
+    }
+
+    @Benchmark
+    public RichColor fromComponents() {
+        return RichColor.of(255, 128, 64, 128);
+    }
+
+    @Benchmark
+    public RichColor mutate() {
+        return color.alpha(100).red(200).green(100).blue(55);
+    }
+
+    @Benchmark
+    public float[] hsb() {
+        return color.getHSB();
+    }
+}
@@ -0,0 +1,103 @@
+package dev.yuzuki.utils.event;
+
+import com.google.common.eventbus.Subscribe;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EventBusBenchmark {
+    private final MockEvent event = new MockEvent();
+    private final MockParallelEvent parallelEvent = new MockParallelEvent();
+
+    private EventBus single;
+    private EventBus many;
+    private EventBus parallel;
+    private com.google.common.eventbus.EventBus guava;
+    private MockListener listener;
+    private Method method;
+
+    @Param({"16"})
+    public int listeners;
+
+    @Setup
+    public void setup() throws NoSuchMethodException {
+        listener = new MockListener();
+        method = MockListener.class.getDeclaredMethod("onEvent", MockEvent.class);
+
+        single = new EventBus();
+        single.register(listener);
+
+        many = new EventBus();
+        for (int i = 0; i < listeners; i++) {
+            many.register(new MockListener());
+        }
+
+        parallel = EventBus.builder().executor(EventExecutors.bounded(4, 1 << 16, EventExecutors.Overflow.CALLER_RUNS)).build();
+        parallel.register(new MockParallelListener());
+
+        guava = new com.google.common.eventbus.EventBus();
+        guava.register(listener);
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        parallel.shutdown();
+        parallel.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public void postSingle() {
+        single.post(event);
+    }
+
+    @Benchmark
+    public void postManyListeners() {
+        many.post(event);
+    }
+
+    @Benchmark
+    public void postParallel() {
+        parallel.post(parallelEvent);
+    }
+
+    @Benchmark
+    public void postGuava() {
+        guava.post(event);
+    }
+
+    /**
+     * The dispatch path EventBus used before listener invokers: a reflective call per listener.
+     */
+    @Benchmark
+    public void reflectiveInvoke(Blackhole blackhole) throws Exception {
+        method.setAccessible(true);
+        blackhole.consume(method.invoke(listener, event));
+    }
+
+    public static class MockListener {
+        @Listener
+        @Subscribe
+        public void onEvent(MockEvent event) {
+        }
+    }
+
+    public static class MockParallelListener {
+        @Listener
+        public void onEvent(MockParallelEvent event) {
+        }
+    }
+
+    public static class MockEvent {
+    }
+
+    public static class MockParallelEvent extends ParallelEvent {
+    }
+}
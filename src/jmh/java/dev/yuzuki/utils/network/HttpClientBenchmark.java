@@ -0,0 +1,70 @@
+package dev.yuzuki.utils.network;
+
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trips against an HTTP server on the loopback interface, so only client overhead is measured.
+ * One client instance is shared by every invocation, so requests go through its connection pool.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HttpClientBenchmark {
+    private HttpServer server;
+    private HttpClient client;
+    private Request small;
+    private Request large;
+
+    @Setup
+    public void setup() throws IOException {
+        byte[] smallBody = "{\"status\":\"ok\"}".getBytes();
+        byte[] largeBody = new byte[1 << 20];
+        Arrays.fill(largeBody, (byte) 'a');
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/small", exchange -> respond(exchange, smallBody));
+        server.createContext("/large", exchange -> respond(exchange, largeBody));
+        server.setExecutor(Executors.newFixedThreadPool(4));
+        server.start();
+        client = HttpClient.builder().build();
+
+        String base = "http://127.0.0.1:" + server.getAddress().getPort();
+        small = Request.builder().url(base + "/small").method(Request.Method.GET).build();
+        large = Request.builder().url(base + "/large").method(Request.Method.GET).build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.getConnectionPool().evictAll();
+        server.stop(0);
+    }
+
+    private static void respond(com.sun.net.httpserver.HttpExchange exchange, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    @Benchmark
+    public Object smallText() throws IOException {
+        return client.send(small).toTextResponse().get();
+    }
+
+    @Benchmark
+    public Object largeBinary() throws IOException {
+        return client.send(large).toBinaryResponse().get();
+    }
+}
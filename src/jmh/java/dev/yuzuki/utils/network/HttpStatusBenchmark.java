@@ -0,0 +1,27 @@
+package dev.yuzuki.utils.network;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HttpStatusBenchmark {
+
+    @Param({"200", "404", "511", "999"})
+    public int code;
+
+    @Benchmark
+    public HttpStatus fromCode() {
+        return HttpStatus.fromCode(code);
+    }
+
+    @Benchmark
+    public String messageByCode() {
+        return HttpStatus.getMessageByCode(code);
+    }
+}
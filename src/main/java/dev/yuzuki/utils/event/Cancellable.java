@@ -0,0 +1,24 @@
+package dev.yuzuki.utils.event;
+
+/**
+ * An event that listeners can cancel.
+ * Once cancelled, listeners with {@link Listener#ignoreCancelled()} set are no longer called for it.
+ *
+ * @see CancellableEvent
+ */
+public interface Cancellable {
+
+    /**
+     * Returns whether the event has been cancelled.
+     *
+     * @return true if cancelled
+     */
+    boolean isCancelled();
+
+    /**
+     * Sets whether the event is cancelled.
+     *
+     * @param cancelled true to cancel the event
+     */
+    void setCancelled(boolean cancelled);
+}
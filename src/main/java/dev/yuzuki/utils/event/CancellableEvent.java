@@ -0,0 +1,18 @@
+package dev.yuzuki.utils.event;
+
+/**
+ * A base class for events implementing {@link Cancellable}.
+ */
+public class CancellableEvent implements Cancellable {
+    private volatile boolean cancelled;
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public void setCancelled(boolean cancelled) {
+        this.cancelled = cancelled;
+    }
+}
@@ -0,0 +1,81 @@
+package dev.yuzuki.utils.event;
+
+import dev.yuzuki.utils.LatencyHistogram;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live counters for one listener method or one event class.
+ */
+final class DispatchMetrics {
+    private final String name;
+    private final LongAdder invocations = new LongAdder();
+    private final LongAdder exceptions = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder queued = new LongAdder();
+    private final AtomicLong maxQueueWaitNanos = new AtomicLong();
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+
+    DispatchMetrics(String name) {
+        this.name = name;
+    }
+
+    void record(long nanos) {
+        invocations.increment();
+        totalNanos.add(nanos);
+        latency.record(nanos);
+        updateMax(maxNanos, nanos);
+    }
+
+    void recordException() {
+        exceptions.increment();
+    }
+
+    void recordQueueWait(long nanos) {
+        queued.increment();
+        queueWait.record(nanos);
+        updateMax(maxQueueWaitNanos, nanos);
+    }
+
+    MetricsSnapshot snapshot() {
+        // percentiles report the top of their bucket, which may lie above the largest recorded value
+        long max = maxNanos.get();
+        long maxQueueWait = maxQueueWaitNanos.get();
+        return new MetricsSnapshot(
+                name,
+                invocations.sum(),
+                exceptions.sum(),
+                totalNanos.sum(),
+                max,
+                Math.min(max, latency.percentile(50)),
+                Math.min(max, latency.percentile(90)),
+                Math.min(max, latency.percentile(99)),
+                Math.min(max, latency.percentile(99.9)),
+                queued.sum(),
+                maxQueueWait,
+                Math.min(maxQueueWait, queueWait.percentile(50)),
+                Math.min(maxQueueWait, queueWait.percentile(99))
+        );
+    }
+
+    void reset() {
+        invocations.reset();
+        exceptions.reset();
+        totalNanos.reset();
+        maxNanos.set(0);
+        latency.reset();
+        queued.reset();
+        maxQueueWaitNanos.set(0);
+        queueWait.reset();
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) return;
+        }
+    }
+}
@@ -1,75 +1,1130 @@
 package dev.yuzuki.utils.event;
 
-import java.lang.reflect.InvocationTargetException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 
-public class EventBus {
-    private final Map<Class<?>, List<ListenerHolder>> methodMap = new ConcurrentHashMap<>();
-    private final ExecutorService service = Executors.newFixedThreadPool(16);
+/**
+ * A simple annotation based event bus. <br>
+ * Usage:
+ * <pre>
+ *     {@code
+ *     EventBus bus = new EventBus();
+ *     bus.register(listener);
+ *     bus.post(new SomeEvent());
+ *     }
+ * </pre>
+ *
+ * or, to configure how parallel listeners are run:
+ *
+ * <pre>
+ *     {@code
+ *     EventBus bus = EventBus.builder()
+ *             .executor(EventExecutors.virtualThreads())
+ *             .exceptionHandler((exception, event) -> logger.error("Listener failed", exception))
+ *             .build();
+ *     }
+ * </pre>
+ *
+ * @see Listener
+ * @see EventExecutors
+ */
+public class EventBus implements AutoCloseable {
+    private static final ListenerHolder[] NO_LISTENERS = new ListenerHolder[0];
+    private static final Comparator<ListenerHolder> ORDER = Comparator.<ListenerHolder>comparingInt(h -> h.priority).thenComparingLong(h -> h.sequence);
 
+    /**
+     * Immutable, priority-sorted listener arrays per declared listener parameter type. Arrays are never modified
+     * once published, so {@link #post(Object)} can iterate them while other threads register or unregister.
+     */
+    private final Map<Class<?>, ListenerHolder[]> methodMap = new ConcurrentHashMap<>();
+
+    /**
+     * Listeners of every supertype and interface, flattened per concrete event class.
+     * Replaced with an empty map whenever {@link #methodMap} changes.
+     */
+    private volatile Map<Class<?>, Dispatch> resolved = new ConcurrentHashMap<>();
+    private final Object lock = new Object();
+    private long sequence;
+
+    /**
+     * Listener holders per registered object, for unregistering without scanning every event type.
+     * Guarded by {@link #lock}.
+     */
+    private final Map<ListenerKey, List<ListenerHolder>> registrations = new HashMap<>();
+    private final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+    private final EventExceptionHandler exceptionHandler;
+    private final boolean ownsExecutor;
+    private volatile Executor service;
+    private volatile boolean shutdown;
+
+    /**
+     * Latest event per coalescing key, in order of first arrival, waiting for {@link #flush()}.
+     */
+    private Map<CoalesceKey, Object> pending = new LinkedHashMap<>();
+    private final Object pendingLock = new Object();
+    private final ScheduledExecutorService flushTimer;
+
+    /**
+     * Events waiting for {@link #drain()} or the dispatcher thread, or null if events are dispatched on post.
+     */
+    private final MpscRingBuffer<Object> queue;
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final Thread dispatcher;
+    private volatile boolean dispatcherWaiting;
+
+    /**
+     * Metrics per listener method and per posted event class, only filled if metrics are enabled.
+     */
+    private final boolean metricsEnabled;
+    private final Map<Method, DispatchMetrics> listenerMetrics = new ConcurrentHashMap<>();
+    private final Map<Class<?>, DispatchMetrics> eventMetrics = new ConcurrentHashMap<>();
+
+    /**
+     * Creates an event bus whose parallel listeners run on a lazily created pool of up to 16 daemon threads.
+     */
+    public EventBus() {
+        this(builder());
+    }
+
+    private EventBus(Builder builder) {
+        this.service = builder.executor;
+        this.ownsExecutor = builder.executor == null || builder.ownsExecutor;
+        this.exceptionHandler = builder.exceptionHandler;
+        this.metricsEnabled = builder.metrics;
+        if (builder.flushInterval > 0) {
+            this.flushTimer = Executors.newSingleThreadScheduledExecutor(EventExecutors.daemonThreadFactory("EventBus-flush"));
+            this.flushTimer.scheduleWithFixedDelay(this::timedFlush, builder.flushInterval, builder.flushInterval, TimeUnit.NANOSECONDS);
+        } else {
+            this.flushTimer = null;
+        }
+        this.queue = builder.queueCapacity > 0 ? new MpscRingBuffer<>(builder.queueCapacity) : null;
+        if (queue != null && builder.dispatcherThread) {
+            this.dispatcher = EventExecutors.daemonThreadFactory("EventBus-dispatcher").newThread(this::runDispatcher);
+            this.dispatcher.start();
+        } else {
+            this.dispatcher = null;
+        }
+    }
+
+    /**
+     * Returns a new Builder instance for constructing an EventBus.
+     *
+     * @return a new Builder instance
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Registers every {@link Listener} method of the given object.
+     *
+     * @param o the listener object
+     */
     public void register(Object o) {
-        Arrays.stream(o.getClass().getDeclaredMethods())
-                .filter(m -> m.isAnnotationPresent(Listener.class))
-                .filter(m -> m.getParameterCount() == 1)
-                .peek(m -> m.setAccessible(true))
-                .forEach(m -> {
-                    Class<?> paramType = m.getParameterTypes()[0];
-                    methodMap.computeIfAbsent(paramType, k -> new ArrayList<>())
-                            .add(new ListenerHolder(o, m, m.getAnnotation(Listener.class).parallel() || ParallelEvent.class.isAssignableFrom(paramType)));
-                });
-
-        methodMap.replaceAll((key, list) ->
-                list.stream()
-                        .sorted(Comparator.comparing(h -> h.method.getAnnotation(Listener.class).priority()))
-                        .collect(Collectors.toList()));
+        register(o, false);
+    }
+
+    /**
+     * Registers every {@link Listener} method of the given object without keeping it reachable.
+     * Once the object has been garbage collected its listeners are no longer called and are removed
+     * during a later post or registration.
+     *
+     * @param o the listener object
+     */
+    public void registerWeak(Object o) {
+        register(o, true);
     }
 
+    private void register(Object o, boolean weak) {
+        ListenerKey key = new ListenerKey(o, weak ? collected : null);
+        List<ListenerHolder> added = new ArrayList<>();
+        for (Method m : o.getClass().getDeclaredMethods()) {
+            if (!m.isAnnotationPresent(Listener.class) || m.getParameterCount() != 1) continue;
+            Listener listener = m.getAnnotation(Listener.class);
+            Class<?> paramType = listener.batch() ? batchElementType(m) : m.getParameterTypes()[0];
+            added.add(new ListenerHolder(weak ? null : o, key, paramType, m, ListenerInvokers.create(m), listener.priority(), listener.parallel() || ParallelEvent.class.isAssignableFrom(paramType), listener.batch(), listener.ignoreCancelled(),
+                    metricsEnabled ? listenerMetrics.computeIfAbsent(m, EventBus::listenerName) : null));
+        }
+        if (added.isEmpty()) return;
+
+        synchronized (lock) {
+            expungeCollected();
+            Map<Class<?>, List<ListenerHolder>> byType = new HashMap<>();
+            for (ListenerHolder holder : added) {
+                holder.sequence = sequence++;
+                byType.computeIfAbsent(holder.type, k -> new ArrayList<>()).add(holder);
+            }
+            byType.forEach((type, holders) -> {
+                ListenerHolder[] current = methodMap.getOrDefault(type, NO_LISTENERS);
+                ListenerHolder[] next = Arrays.copyOf(current, current.length + holders.size());
+                for (int i = 0; i < holders.size(); i++) {
+                    next[current.length + i] = holders.get(i);
+                }
+                // stable, so listeners with equal priority keep registration order
+                Arrays.sort(next, ORDER);
+                methodMap.put(type, next);
+            });
+            registrations.computeIfAbsent(key, k -> new ArrayList<>()).addAll(added);
+            resolved = new ConcurrentHashMap<>();
+        }
+    }
+
+    /**
+     * Unregisters every listener method of the given object, matched by identity.
+     * Only the event types the object listens to are touched.
+     *
+     * @param o the listener object
+     */
     public void unregister(Object o) {
-        methodMap.replaceAll((key, list) ->
-                list.stream()
-                        .filter(holder -> !holder.instance.equals(o))
-                        .collect(Collectors.toList()));
+        synchronized (lock) {
+            expungeCollected();
+            List<ListenerHolder> holders = registrations.remove(new ListenerKey(o, null));
+            if (holders != null) remove(holders);
+        }
+    }
+
+    /**
+     * Removes the listeners of weakly registered objects that have been garbage collected.
+     * Costs a single queue poll when nothing was collected. Callers must hold {@link #lock}.
+     */
+    private void expungeCollected() {
+        Reference<?> reference;
+        while ((reference = collected.poll()) != null) {
+            List<ListenerHolder> holders = registrations.remove(reference);
+            if (holders != null) remove(holders);
+        }
+    }
+
+    private void remove(List<ListenerHolder> holders) {
+        Map<Class<?>, Set<ListenerHolder>> byType = new HashMap<>();
+        for (ListenerHolder holder : holders) {
+            byType.computeIfAbsent(holder.type, k -> Collections.newSetFromMap(new IdentityHashMap<>())).add(holder);
+        }
+        byType.forEach((type, removed) -> {
+            ListenerHolder[] current = methodMap.get(type);
+            if (current == null) return;
+            int remaining = 0;
+            for (ListenerHolder holder : current) {
+                if (!removed.contains(holder)) remaining++;
+            }
+            if (remaining == 0) {
+                methodMap.remove(type);
+                return;
+            }
+            ListenerHolder[] next = new ListenerHolder[remaining];
+            int i = 0;
+            for (ListenerHolder holder : current) {
+                if (!removed.contains(holder)) next[i++] = holder;
+            }
+            methodMap.put(type, next);
+        });
+        resolved = new ConcurrentHashMap<>();
     }
 
+    /**
+     * Posts an event to every listener of its class, superclasses and interfaces.
+     * {@link Listener#batch() Batch} listeners receive it as a single-element list.
+     * <p>
+     * If the bus was built with {@link Builder#queue(int)}, the event is only enqueued and delivered later
+     * by {@link #drain()} or the dispatcher thread.
+     *
+     * @param event the event to post
+     */
     public void post(Object event) {
-        List<ListenerHolder> listeners = methodMap.get(event.getClass());
-        if (listeners == null) return;
+        purgeCollected();
+        if (queue != null) {
+            enqueue(event);
+            return;
+        }
+        dispatch(event);
+    }
+
+    /**
+     * Posts an event like {@link #post(Object)} and returns a future that completes once every listener,
+     * synchronous and parallel, has finished.
+     * <p>
+     * Listener exceptions do not stop the remaining listeners; the future then completes exceptionally with an
+     * {@link EventDispatchException} carrying all of them. On a queued bus the future completes when the event
+     * has been drained, or exceptionally with a {@link RejectedExecutionException} if the queue was full.
+     * A parallel listener that the executor rejects, for example after {@link #shutdown()}, fails the future the same
+     * way. An executor of your own must reject such tasks rather than drop them, or the future never completes.
+     *
+     * @param event the event to post
+     * @return a future completing when the event has been handled
+     */
+    public CompletableFuture<Void> postAsync(Object event) {
+        purgeCollected();
+        Completion completion = new Completion(event);
+        if (queue != null) {
+            if (!enqueue(new QueuedPost(event, completion))) {
+                completion.future.completeExceptionally(new RejectedExecutionException("EventBus queue is full"));
+            }
+            return completion.future;
+        }
+        try {
+            dispatch(event, completion);
+        } catch (Throwable t) {
+            completion.fail(t);
+        }
+        completion.leave();
+        return completion.future;
+    }
+
+    private void dispatch(Object event) {
+        dispatch(event, null);
+    }
+
+    /**
+     * Removes collected weak listeners. Only a single queue poll unless something was collected.
+     */
+    private void purgeCollected() {
+        Reference<?> reference = collected.poll();
+        if (reference == null) return;
+        synchronized (lock) {
+            List<ListenerHolder> holders = registrations.remove(reference);
+            if (holders != null) remove(holders);
+            expungeCollected();
+        }
+    }
+
+    private void dispatch(Object event, Completion completion) {
+        Dispatch dispatch = resolve(event.getClass());
+        DispatchMetrics metrics = dispatch.metrics;
+        if (metrics == null) {
+            deliver(dispatch, event, completion);
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            deliver(dispatch, event, completion);
+        } catch (Throwable t) {
+            metrics.recordException();
+            throw t;
+        } finally {
+            metrics.record(System.nanoTime() - start);
+        }
+    }
+
+    private void deliver(Dispatch dispatch, Object event, Completion completion) {
+        ListenerHolder[] listeners = dispatch.listeners;
+        for (int i = 0; i < listeners.length; i++) {
+            ListenerHolder listener = listeners[i];
+            if (dispatch.cancellable && ((Cancellable) event).isCancelled()) {
+                // nothing after this point wants cancelled events
+                if (i > dispatch.lastReceivingCancelled) return;
+                if (listener.ignoreCancelled) continue;
+            }
+            Object argument = listener.batch ? Collections.singletonList(event) : event;
+            if (dispatch.parallel || listener.parallel) {
+                submit(listener, argument, completion);
+            } else if (completion == null) {
+                invoke(listener, argument);
+            } else {
+                try {
+                    invoke(listener, argument);
+                } catch (Throwable t) {
+                    completion.fail(t);
+                }
+            }
+        }
+    }
+
+    /**
+     * Posts several events at once, see {@link #postAll(Collection)}.
+     *
+     * @param event the events to post
+     */
+    public void post(Object... event) {
+        postAll(Arrays.asList(event));
+    }
+
+    /**
+     * Posts a batch of events.
+     * <p>
+     * Events are grouped by class. For each group, listeners run in priority order: a
+     * {@link Listener#batch() batch} listener is called once with the whole group, any other listener is
+     * called once per event before the next listener runs.
+     *
+     * @param events the events to post
+     */
+    public void postAll(Collection<?> events) {
+        if (events.isEmpty()) return;
+        purgeCollected();
+        if (queue != null) {
+            enqueue(new QueuedBatch(new ArrayList<>(events)));
+            return;
+        }
+        dispatchAll(events);
+    }
+
+    private void dispatchAll(Collection<?> events) {
+        Class<?> first = events.iterator().next().getClass();
+        boolean uniform = true;
+        for (Object event : events) {
+            if (event.getClass() != first) {
+                uniform = false;
+                break;
+            }
+        }
+        if (uniform) {
+            dispatchAll(first, events instanceof List ? (List<?>) events : new ArrayList<>(events));
+            return;
+        }
+
+        Map<Class<?>, List<Object>> groups = new LinkedHashMap<>();
+        for (Object event : events) {
+            groups.computeIfAbsent(event.getClass(), k -> new ArrayList<>()).add(event);
+        }
+        groups.forEach(this::dispatchAll);
+    }
+
+    /**
+     * Queues an event that supersedes any earlier event of the same class posted with an equal key.
+     * Queued events are delivered as a batch by {@link #flush()}, or periodically if the bus was built with
+     * {@link Builder#flushInterval(long, TimeUnit)}.
+     *
+     * @param key identifies what the event is about, e.g. an entity id
+     * @param event the event to post
+     */
+    public void postCoalesced(Object key, Object event) {
+        CoalesceKey coalesceKey = new CoalesceKey(event.getClass(), key);
+        synchronized (pendingLock) {
+            pending.put(coalesceKey, event);
+        }
+    }
+
+    /**
+     * Delivers all events queued by {@link #postCoalesced(Object, Object)}, latest per key, on the calling thread.
+     *
+     * @return the number of events delivered
+     */
+    public int flush() {
+        Map<CoalesceKey, Object> events;
+        synchronized (pendingLock) {
+            if (pending.isEmpty()) return 0;
+            events = pending;
+            pending = new LinkedHashMap<>();
+        }
+        postAll(events.values());
+        return events.size();
+    }
+
+    /**
+     * Delivers every queued event on the calling thread, in the order they were posted.
+     * Exceptions thrown by listeners are passed to the exception handler so one failing event does not
+     * hold up the rest of the queue.
+     *
+     * @return the number of queue entries delivered
+     * @throws IllegalStateException if the bus is not queued, has a dispatcher thread, or another thread is draining
+     */
+    public int drain() {
+        return drain(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Delivers up to {@code max} queued events on the calling thread, see {@link #drain()}.
+     *
+     * @param max the maximum number of queue entries to deliver
+     * @return the number of queue entries delivered
+     * @throws IllegalStateException if the bus is not queued, has a dispatcher thread, or another thread is draining
+     */
+    public int drain(int max) {
+        if (queue == null) throw new IllegalStateException("EventBus is not queued");
+        if (dispatcher != null && Thread.currentThread() != dispatcher) throw new IllegalStateException("EventBus is drained by its dispatcher thread");
+        if (!draining.compareAndSet(false, true)) throw new IllegalStateException("EventBus is already being drained");
+        try {
+            int count = 0;
+            Object element;
+            while (count < max && (element = queue.poll()) != null) {
+                count++;
+                try {
+                    if (element instanceof QueuedBatch) {
+                        dispatchAll(((QueuedBatch) element).events);
+                    } else if (element instanceof QueuedPost) {
+                        deliverQueued((QueuedPost) element);
+                    } else {
+                        dispatch(element);
+                    }
+                } catch (Throwable t) {
+                    exceptionHandler.handleException(t, element);
+                }
+            }
+            return count;
+        } finally {
+            draining.set(false);
+        }
+    }
+
+    /**
+     * Returns the number of events waiting in the queue.
+     *
+     * @return the queue depth, or 0 if the bus is not queued
+     */
+    public int getQueueDepth() {
+        return queue == null ? 0 : queue.size();
+    }
+
+    /**
+     * Returns the number of events dropped because the queue was full.
+     *
+     * @return the number of dropped events
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    private boolean enqueue(Object element) {
+        if (!queue.offer(element)) {
+            dropped.increment();
+            return false;
+        }
+        if (dispatcherWaiting) LockSupport.unpark(dispatcher);
+        return true;
+    }
+
+    private void deliverQueued(QueuedPost post) {
+        try {
+            dispatch(post.event, post.completion);
+        } catch (Throwable t) {
+            post.completion.fail(t);
+        }
+        post.completion.leave();
+    }
+
+    private void runDispatcher() {
+        while (true) {
+            if (drain() > 0) continue;
+            if (shutdown) return;
+
+            dispatcherWaiting = true;
+            // re-check after publishing the flag, so a producer either sees it or we see its event
+            if (queue.isEmpty() && !shutdown) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(100));
+            }
+            dispatcherWaiting = false;
+        }
+    }
+
+    private void timedFlush() {
+        try {
+            flush();
+        } catch (Throwable t) {
+            exceptionHandler.handleException(t, null);
+        }
+    }
+
+    private void dispatchAll(Class<?> eventClass, List<?> events) {
+        Dispatch dispatch = resolve(eventClass);
+        DispatchMetrics metrics = dispatch.metrics;
+        if (metrics == null) {
+            deliverAll(dispatch, events);
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            deliverAll(dispatch, events);
+        } catch (Throwable t) {
+            metrics.recordException();
+            throw t;
+        } finally {
+            metrics.record(System.nanoTime() - start);
+        }
+    }
+
+    private void deliverAll(Dispatch dispatch, List<?> events) {
+        List<?> batch = Collections.unmodifiableList(events);
+        ListenerHolder[] listeners = dispatch.listeners;
+        for (int i = 0; i < listeners.length; i++) {
+            ListenerHolder listener = listeners[i];
+            boolean skipCancelled = dispatch.cancellable && listener.ignoreCancelled;
+            if (dispatch.cancellable && i > dispatch.lastReceivingCancelled && allCancelled(events)) return;
+
+            boolean parallel = dispatch.parallel || listener.parallel;
+            if (listener.batch) {
+                List<?> argument = skipCancelled ? uncancelled(batch) : batch;
+                if (argument.isEmpty()) continue;
+                if (parallel) submit(listener, argument, null);
+                else invoke(listener, argument);
+                continue;
+            }
+            for (Object event : events) {
+                if (skipCancelled && ((Cancellable) event).isCancelled()) continue;
+                if (parallel) submit(listener, event, null);
+                else invoke(listener, event);
+            }
+        }
+    }
+
+    private static boolean allCancelled(List<?> events) {
+        for (Object event : events) {
+            if (!((Cancellable) event).isCancelled()) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the events that are not cancelled, or the list itself if none are.
+     */
+    private static List<?> uncancelled(List<?> events) {
+        List<Object> result = null;
+        for (int i = 0; i < events.size(); i++) {
+            Object event = events.get(i);
+            boolean cancelled = ((Cancellable) event).isCancelled();
+            if (cancelled && result == null) {
+                result = new ArrayList<>(events.subList(0, i));
+            } else if (!cancelled && result != null) {
+                result.add(event);
+            }
+        }
+        return result == null ? events : Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Returns the metrics of every listener method, keyed by {@code Class#method(Event)}.
+     *
+     * @return the listener metrics, empty unless the bus was built with {@link Builder#metrics(boolean)}
+     */
+    public Map<String, MetricsSnapshot> getListenerMetrics() {
+        return snapshot(listenerMetrics);
+    }
+
+    /**
+     * Returns the metrics of every posted event class, keyed by class name.
+     * The time of an event covers all of its synchronous listeners.
+     *
+     * @return the event metrics, empty unless the bus was built with {@link Builder#metrics(boolean)}
+     */
+    public Map<String, MetricsSnapshot> getEventMetrics() {
+        return snapshot(eventMetrics);
+    }
+
+    /**
+     * Clears all recorded metrics.
+     */
+    public void resetMetrics() {
+        listenerMetrics.values().forEach(DispatchMetrics::reset);
+        eventMetrics.values().forEach(DispatchMetrics::reset);
+    }
+
+    /**
+     * Registers the metrics of this bus with the platform MBean server.
+     *
+     * @param name the object name, e.g. {@code dev.yuzuki:type=EventBus,name=main}
+     * @throws IllegalArgumentException if the name is malformed or already registered
+     */
+    public void registerMBean(String name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMXBean(), new ObjectName(name));
+        } catch (JMException e) {
+            throw new IllegalArgumentException("Cannot register MBean " + name, e);
+        }
+    }
+
+    private static Map<String, MetricsSnapshot> snapshot(Map<?, DispatchMetrics> metrics) {
+        Map<String, MetricsSnapshot> result = new TreeMap<>();
+        for (DispatchMetrics value : metrics.values()) {
+            MetricsSnapshot snapshot = value.snapshot();
+            result.put(snapshot.getName(), snapshot);
+        }
+        return result;
+    }
+
+    private static DispatchMetrics listenerName(Method method) {
+        return new DispatchMetrics(method.getDeclaringClass().getName() + "#" + method.getName() + "(" + method.getParameterTypes()[0].getSimpleName() + ")");
+    }
+
+    /**
+     * Stops running parallel listeners and the periodic flush. Synchronous listeners are still called.
+     * The dispatcher thread delivers whatever is still queued and then exits.
+     * An executor passed to {@link Builder#sharedExecutor(Executor)} is left running.
+     */
+    public void shutdown() {
+        if (flushTimer != null) flushTimer.shutdown();
+        if (dispatcher != null) {
+            shutdown = true;
+            LockSupport.unpark(dispatcher);
+        }
+        synchronized (lock) {
+            shutdown = true;
+            Executor executor = service;
+            if (ownsExecutor && executor instanceof ExecutorService) {
+                ((ExecutorService) executor).shutdown();
+            }
+        }
+    }
 
-        listeners.forEach(listener -> {
-            listener.method.setAccessible(true);
-            Runnable task = () -> {
+    /**
+     * Waits for parallel listeners that were already submitted to finish after {@link #shutdown()}.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout
+     * @return true if the executor terminated, false if the timeout elapsed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        Executor executor = service;
+        if (!ownsExecutor || !(executor instanceof ExecutorService)) return true;
+        return ((ExecutorService) executor).awaitTermination(timeout, unit);
+    }
+
+    /**
+     * Returns whether {@link #shutdown()} has been called.
+     *
+     * @return true if the bus has been shut down
+     */
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    /**
+     * Same as {@link #shutdown()}.
+     */
+    @Override
+    public void close() {
+        shutdown();
+    }
+
+    private void submit(ListenerHolder listener, Object event, Completion completion) {
+        DispatchMetrics metrics = listener.metrics;
+        long queued = metrics != null ? System.nanoTime() : 0;
+        Runnable task;
+        if (completion != null) {
+            completion.enter();
+            task = (EventExecutors.AwaitedTask) () -> {
+                if (metrics != null) metrics.recordQueueWait(System.nanoTime() - queued);
                 try {
-                    listener.method.invoke(listener.instance, event);
-                } catch (IllegalAccessException | InvocationTargetException e) {
-                    throw new RuntimeException(e);
+                    invoke(listener, event);
+                } catch (Throwable t) {
+                    completion.fail(t);
+                } finally {
+                    completion.leave();
                 }
             };
-            if (listener.parallel) {
-                service.submit(task);
+        } else {
+            task = () -> {
+                if (metrics != null) metrics.recordQueueWait(System.nanoTime() - queued);
+                try {
+                    invoke(listener, event);
+                } catch (Throwable t) {
+                    exceptionHandler.handleException(t, event);
+                }
+            };
+        }
+        try {
+            executor().execute(task);
+        } catch (RejectedExecutionException e) {
+            if (completion != null) {
+                completion.fail(e);
+                completion.leave();
             } else {
-                task.run();
+                exceptionHandler.handleException(e, event);
             }
-        });
+        }
     }
 
-    public void post(Object... event) {
-        for (Object o : event) {
-            post(o);
+    private Executor executor() {
+        Executor executor = service;
+        if (executor == null) {
+            synchronized (lock) {
+                executor = service;
+                if (executor == null) {
+                    if (shutdown) throw new RejectedExecutionException("EventBus has been shut down");
+                    service = executor = EventExecutors.unbounded(16);
+                }
+            }
+        }
+        return executor;
+    }
+
+    private Dispatch resolve(Class<?> eventClass) {
+        // read the cache before methodMap, so a concurrent change can only land a stale entry in a discarded cache
+        Map<Class<?>, Dispatch> cache = resolved;
+        Dispatch dispatch = cache.get(eventClass);
+        if (dispatch != null) return dispatch;
+
+        List<ListenerHolder> listeners = new ArrayList<>();
+        for (Class<?> type : hierarchy(eventClass)) {
+            ListenerHolder[] holders = methodMap.get(type);
+            if (holders != null) Collections.addAll(listeners, holders);
+        }
+        ListenerHolder[] sorted = listeners.toArray(NO_LISTENERS);
+        Arrays.sort(sorted, ORDER);
+
+        DispatchMetrics metrics = metricsEnabled ? eventMetrics.computeIfAbsent(eventClass, type -> new DispatchMetrics(type.getName())) : null;
+        dispatch = new Dispatch(sorted, ParallelEvent.class.isAssignableFrom(eventClass), Cancellable.class.isAssignableFrom(eventClass), metrics);
+        Dispatch previous = cache.putIfAbsent(eventClass, dispatch);
+        return previous != null ? previous : dispatch;
+    }
+
+    /**
+     * Returns the given class, all of its superclasses and all interfaces they implement.
+     */
+    private static Set<Class<?>> hierarchy(Class<?> eventClass) {
+        Set<Class<?>> types = new LinkedHashSet<>();
+        Deque<Class<?>> pending = new ArrayDeque<>();
+        pending.add(eventClass);
+        while (!pending.isEmpty()) {
+            Class<?> type = pending.poll();
+            if (!types.add(type)) continue;
+            if (type.getSuperclass() != null) pending.add(type.getSuperclass());
+            Collections.addAll(pending, type.getInterfaces());
+        }
+        return types;
+    }
+
+    /**
+     * Returns the element type of a batch listener's {@code List<E>} parameter.
+     */
+    private static Class<?> batchElementType(Method method) {
+        if (method.getParameterTypes()[0] != List.class) {
+            throw new IllegalArgumentException("Batch listener " + method + " must take a List");
+        }
+        Type type = method.getGenericParameterTypes()[0];
+        if (type instanceof ParameterizedType) {
+            Type element = ((ParameterizedType) type).getActualTypeArguments()[0];
+            if (element instanceof WildcardType) element = ((WildcardType) element).getUpperBounds()[0];
+            if (element instanceof ParameterizedType) element = ((ParameterizedType) element).getRawType();
+            if (element instanceof Class) return (Class<?>) element;
+        }
+        throw new IllegalArgumentException("Cannot determine the event type of batch listener " + method);
+    }
+
+    private static void invoke(ListenerHolder listener, Object event) {
+        DispatchMetrics metrics = listener.metrics;
+        if (metrics == null) {
+            call(listener, event);
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            call(listener, event);
+        } catch (Throwable t) {
+            metrics.recordException();
+            throw t;
+        } finally {
+            metrics.record(System.nanoTime() - start);
+        }
+    }
+
+    private static void call(ListenerHolder listener, Object event) {
+        Object target = listener.instance != null ? listener.instance : listener.key.get();
+        // a weakly registered listener that was collected but not purged yet
+        if (target == null) return;
+        try {
+            listener.invoker.invoke(target, event);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
         }
     }
 
     private static class ListenerHolder {
+        /**
+         * The listener object, or null if it was registered weakly and is only reachable through {@link #key}.
+         */
         final Object instance;
+        final ListenerKey key;
+        final Class<?> type;
         final Method method;
+        final ListenerInvoker invoker;
+        final int priority;
         final boolean parallel;
+        final boolean batch;
+        final boolean ignoreCancelled;
+        final DispatchMetrics metrics;
+        long sequence;
 
-        ListenerHolder(Object instance, Method method, boolean parallel) {
+        ListenerHolder(Object instance, ListenerKey key, Class<?> type, Method method, ListenerInvoker invoker, int priority, boolean parallel, boolean batch, boolean ignoreCancelled, DispatchMetrics metrics) {
             this.instance = instance;
+            this.key = key;
+            this.type = type;
             this.method = method;
+            this.invoker = invoker;
+            this.priority = priority;
             this.parallel = parallel;
+            this.batch = batch;
+            this.ignoreCancelled = ignoreCancelled;
+            this.metrics = metrics;
+        }
+    }
+
+    /**
+     * Identifies a registered object by identity, without keeping it reachable.
+     */
+    private static class ListenerKey extends WeakReference<Object> {
+        final int hash;
+
+        ListenerKey(Object referent, ReferenceQueue<Object> queue) {
+            super(referent, queue);
+            this.hash = System.identityHashCode(referent);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ListenerKey)) return false;
+            Object referent = get();
+            return referent != null && referent == ((ListenerKey) o).get();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * The resolved listeners for one concrete event class.
+     */
+    private static class Dispatch {
+        final ListenerHolder[] listeners;
+        final boolean parallel;
+        final boolean cancellable;
+
+        /**
+         * Index of the last listener that still runs for cancelled events, or -1 if there is none.
+         */
+        final int lastReceivingCancelled;
+        final DispatchMetrics metrics;
+
+        Dispatch(ListenerHolder[] listeners, boolean parallel, boolean cancellable, DispatchMetrics metrics) {
+            this.listeners = listeners;
+            this.parallel = parallel;
+            this.cancellable = cancellable;
+            this.metrics = metrics;
+            int last = -1;
+            for (int i = 0; i < listeners.length; i++) {
+                if (!listeners[i].ignoreCancelled) last = i;
+            }
+            this.lastReceivingCancelled = last;
+        }
+    }
+
+    private class MetricsMXBean implements EventBusMetricsMXBean {
+        @Override
+        public Map<String, MetricsSnapshot> getListenerMetrics() {
+            return EventBus.this.getListenerMetrics();
+        }
+
+        @Override
+        public Map<String, MetricsSnapshot> getEventMetrics() {
+            return EventBus.this.getEventMetrics();
+        }
+
+        @Override
+        public int getQueueDepth() {
+            return EventBus.this.getQueueDepth();
+        }
+
+        @Override
+        public long getDroppedCount() {
+            return EventBus.this.getDroppedCount();
+        }
+
+        @Override
+        public void resetMetrics() {
+            EventBus.this.resetMetrics();
+        }
+    }
+
+    /**
+     * A {@link #postAll(Collection)} call waiting in the queue.
+     */
+    private static class QueuedBatch {
+        final List<Object> events;
+
+        QueuedBatch(List<Object> events) {
+            this.events = events;
+        }
+    }
+
+    /**
+     * A {@link #postAsync(Object)} call waiting in the queue.
+     */
+    private static class QueuedPost {
+        final Object event;
+        final Completion completion;
+
+        QueuedPost(Object event, Completion completion) {
+            this.event = event;
+            this.completion = completion;
+        }
+    }
+
+    /**
+     * Tracks the outstanding listeners of one {@link #postAsync(Object)} call.
+     * Starts with one party for the posting thread, which leaves once every listener has been started.
+     */
+    private static class Completion {
+        final Object event;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        final AtomicInteger pending = new AtomicInteger(1);
+        final Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+
+        Completion(Object event) {
+            this.event = event;
+        }
+
+        void enter() {
+            pending.incrementAndGet();
+        }
+
+        void fail(Throwable t) {
+            failures.add(t);
+        }
+
+        void leave() {
+            if (pending.decrementAndGet() != 0) return;
+            if (failures.isEmpty()) {
+                future.complete(null);
+            } else {
+                future.completeExceptionally(new EventDispatchException(event, new ArrayList<>(failures)));
+            }
+        }
+    }
+
+    private static class CoalesceKey {
+        final Class<?> type;
+        final Object key;
+
+        CoalesceKey(Class<?> type, Object key) {
+            this.type = type;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof CoalesceKey)) return false;
+            CoalesceKey other = (CoalesceKey) o;
+            return type == other.type && Objects.equals(key, other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * type.hashCode() + Objects.hashCode(key);
+        }
+    }
+
+    /**
+     * A builder class for constructing EventBus objects.
+     */
+    public static class Builder {
+        private Executor executor;
+        private boolean ownsExecutor;
+        private EventExceptionHandler exceptionHandler = EventExceptionHandler.PRINT;
+        private long flushInterval;
+        private int queueCapacity;
+        private boolean dispatcherThread;
+        private boolean metrics;
+
+        /**
+         * Sets the executor parallel listeners run on. It is shut down together with the bus.
+         *
+         * @param executor the executor to use, see {@link EventExecutors}
+         * @return the Builder instance
+         */
+        public Builder executor(ExecutorService executor) {
+            this.executor = executor;
+            this.ownsExecutor = true;
+            return this;
+        }
+
+        /**
+         * Sets an executor that is shared with other code and is not shut down together with the bus.
+         *
+         * @param executor the executor to use
+         * @return the Builder instance
+         */
+        public Builder sharedExecutor(Executor executor) {
+            this.executor = executor;
+            this.ownsExecutor = false;
+            return this;
+        }
+
+        /**
+         * Sets the handler for exceptions thrown by parallel listeners. Defaults to {@link EventExceptionHandler#PRINT}.
+         *
+         * @param exceptionHandler the handler
+         * @return the Builder instance
+         */
+        public Builder exceptionHandler(EventExceptionHandler exceptionHandler) {
+            this.exceptionHandler = exceptionHandler;
+            return this;
+        }
+
+        /**
+         * Flushes events queued by {@link EventBus#postCoalesced(Object, Object)} periodically on a daemon thread.
+         * Without this, coalesced events are only delivered by explicit {@link EventBus#flush()} calls.
+         *
+         * @param interval the time between flushes
+         * @param unit the unit of the interval
+         * @return the Builder instance
+         */
+        public Builder flushInterval(long interval, TimeUnit unit) {
+            this.flushInterval = unit.toNanos(interval);
+            return this;
+        }
+
+        /**
+         * Makes {@link EventBus#post(Object)} only enqueue events onto a lock-free ring buffer, so producers never block.
+         * Events are delivered in order by {@link EventBus#drain()}, or by a dedicated thread if
+         * {@link #dispatcherThread()} is also set. When the queue is full, new events are dropped and counted.
+         *
+         * @param capacity the queue capacity, rounded up to a power of two
+         * @return the Builder instance
+         */
+        public Builder queue(int capacity) {
+            this.queueCapacity = capacity;
+            return this;
+        }
+
+        /**
+         * Delivers queued events on a dedicated daemon thread instead of requiring {@link EventBus#drain()} calls.
+         * Requires {@link #queue(int)}.
+         *
+         * @return the Builder instance
+         */
+        public Builder dispatcherThread() {
+            this.dispatcherThread = true;
+            return this;
+        }
+
+        /**
+         * Records invocation counts, latency histograms, exceptions and executor queue wait per listener method
+         * and per event class. Disabled by default; a disabled bus only pays for a null check per listener.
+         *
+         * @param metrics true to record metrics
+         * @return the Builder instance
+         */
+        public Builder metrics(boolean metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * Builds and returns the EventBus object.
+         *
+         * @return the constructed EventBus object
+         */
+        public EventBus build() {
+            if (dispatcherThread && queueCapacity <= 0) throw new IllegalArgumentException("Dispatcher thread requires a queue");
+            return new EventBus(this);
         }
     }
-}
\ No newline at end of file
+}
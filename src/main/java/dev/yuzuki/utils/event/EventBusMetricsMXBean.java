@@ -0,0 +1,42 @@
+package dev.yuzuki.utils.event;
+
+import java.util.Map;
+
+/**
+ * JMX view of an {@link EventBus}'s dispatch metrics, see {@link EventBus#registerMBean(String)}.
+ */
+public interface EventBusMetricsMXBean {
+
+    /**
+     * Returns the metrics of every listener method, keyed by {@code Class#method(Event)}.
+     *
+     * @return the listener metrics
+     */
+    Map<String, MetricsSnapshot> getListenerMetrics();
+
+    /**
+     * Returns the metrics of every posted event class, keyed by class name.
+     *
+     * @return the event metrics
+     */
+    Map<String, MetricsSnapshot> getEventMetrics();
+
+    /**
+     * Returns the number of events waiting in the queue of a queued bus.
+     *
+     * @return the queue depth
+     */
+    int getQueueDepth();
+
+    /**
+     * Returns the number of events a queued bus dropped because its queue was full.
+     *
+     * @return the dropped event count
+     */
+    long getDroppedCount();
+
+    /**
+     * Clears all recorded metrics.
+     */
+    void resetMetrics();
+}
@@ -0,0 +1,36 @@
+package dev.yuzuki.utils.event;
+
+import java.util.List;
+
+/**
+ * Thrown when one or more listeners failed while handling an event posted with {@link EventBus#postAsync(Object)}.
+ * The first failure is the cause, any further failures are attached as suppressed exceptions.
+ */
+public class EventDispatchException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final transient Object event;
+
+    /**
+     * Constructs a new EventDispatchException.
+     *
+     * @param event the event that was being delivered
+     * @param failures the exceptions thrown by listeners, at least one
+     */
+    public EventDispatchException(Object event, List<Throwable> failures) {
+        super(failures.size() + " listener(s) failed handling " + event.getClass().getName(), failures.get(0));
+        this.event = event;
+        for (int i = 1; i < failures.size(); i++) {
+            addSuppressed(failures.get(i));
+        }
+    }
+
+    /**
+     * Returns the event that was being delivered.
+     *
+     * @return the event
+     */
+    public Object getEvent() {
+        return event;
+    }
+}
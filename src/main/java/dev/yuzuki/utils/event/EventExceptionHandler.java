@@ -0,0 +1,22 @@
+package dev.yuzuki.utils.event;
+
+/**
+ * Receives exceptions thrown by listeners that run on the bus's executor.
+ * Exceptions from synchronous listeners are still thrown to the caller of {@link EventBus#post(Object)}.
+ */
+@FunctionalInterface
+public interface EventExceptionHandler {
+
+    /**
+     * Prints the stack trace to {@code System.err}.
+     */
+    EventExceptionHandler PRINT = (exception, event) -> exception.printStackTrace();
+
+    /**
+     * Handles an exception.
+     *
+     * @param exception the exception thrown by the listener or by the executor
+     * @param event the event that was being delivered
+     */
+    void handleException(Throwable exception, Object event);
+}
@@ -0,0 +1,222 @@
+package dev.yuzuki.utils.event;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Factory methods for the executors used to run parallel listeners.
+ * <p>
+ * Usage:
+ * <pre>
+ *     {@code
+ *     EventBus bus = EventBus.builder()
+ *             .executor(EventExecutors.bounded(4, 1024, EventExecutors.Overflow.CALLER_RUNS))
+ *             .build();
+ *     }
+ * </pre>
+ * All threads created here are daemon threads, so an event bus never keeps the JVM alive.
+ */
+public final class EventExecutors {
+    private static final AtomicInteger POOL_COUNTER = new AtomicInteger();
+    private static final Method VIRTUAL_THREAD_EXECUTOR = findVirtualThreadExecutor();
+
+    private EventExecutors() {
+    }
+
+    /**
+     * What a bounded executor does when its queue is full.
+     */
+    public enum Overflow {
+        /**
+         * Block the posting thread until there is room in the queue.
+         */
+        BLOCK,
+        /**
+         * Run the listener on the posting thread.
+         */
+        CALLER_RUNS,
+        /**
+         * Silently drop the listener invocation. An invocation whose outcome a {@link EventBus#postAsync(Object)}
+         * future waits for is rejected instead, so that the future fails rather than never completing, and so is
+         * every invocation once the executor has been shut down.
+         */
+        DISCARD,
+        /**
+         * Throw a {@link RejectedExecutionException}, which is passed to the bus's exception handler.
+         */
+        ABORT
+    }
+
+    /**
+     * Creates a fixed pool with a bounded queue.
+     * Idle threads time out, so an unused bus holds no threads.
+     *
+     * @param threads the maximum number of threads
+     * @param queueCapacity the maximum number of queued listener invocations
+     * @param overflow what to do when the queue is full
+     * @return the executor
+     */
+    public static ExecutorService bounded(int threads, int queueCapacity, Overflow overflow) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                threads, threads, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                daemonThreadFactory("EventBus-async"),
+                rejectionHandler(overflow)
+        );
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Creates a fixed pool with an unbounded queue, whose idle threads time out.
+     *
+     * @param threads the maximum number of threads
+     * @return the executor
+     */
+    public static ExecutorService unbounded(int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                threads, threads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                daemonThreadFactory("EventBus-async")
+        );
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Creates a work-stealing {@link ForkJoinPool}.
+     *
+     * @param parallelism the target parallelism level
+     * @return the executor
+     */
+    public static ExecutorService forkJoin(int parallelism) {
+        return new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+    }
+
+    /**
+     * Creates an executor that runs every task on the posting thread.
+     * Parallel listeners then behave like synchronous ones, except that their exceptions go to the exception handler.
+     *
+     * @return the executor
+     */
+    public static ExecutorService callerRuns() {
+        return new CallerRunsExecutor();
+    }
+
+    /**
+     * Returns whether virtual threads are available, i.e. the library runs on Java 21 or later.
+     *
+     * @return true if {@link #virtualThreads()} creates a virtual-thread-per-task executor
+     */
+    public static boolean isVirtualThreadsSupported() {
+        return VIRTUAL_THREAD_EXECUTOR != null;
+    }
+
+    /**
+     * Creates an executor that starts a virtual thread per task when running on Java 21 or later,
+     * and an unbounded pool of daemon threads sized to the available processors otherwise.
+     *
+     * @return the executor
+     */
+    public static ExecutorService virtualThreads() {
+        if (VIRTUAL_THREAD_EXECUTOR != null) {
+            try {
+                return (ExecutorService) VIRTUAL_THREAD_EXECUTOR.invoke(null);
+            } catch (ReflectiveOperationException ignored) {
+                // fall through to platform threads
+            }
+        }
+        return unbounded(Runtime.getRuntime().availableProcessors());
+    }
+
+    static ThreadFactory daemonThreadFactory(String prefix) {
+        String name = prefix + "-" + POOL_COUNTER.incrementAndGet() + "-";
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static RejectedExecutionHandler rejectionHandler(Overflow overflow) {
+        switch (overflow) {
+            case BLOCK:
+                return (task, executor) -> {
+                    if (executor.isShutdown()) throw new RejectedExecutionException("Executor has been shut down");
+                    try {
+                        executor.getQueue().put(task);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException(e);
+                    }
+                };
+            case CALLER_RUNS:
+                return (task, executor) -> {
+                    // CallerRunsPolicy drops the task once the pool is shut down
+                    if (executor.isShutdown()) throw new RejectedExecutionException("Executor has been shut down");
+                    task.run();
+                };
+            case DISCARD:
+                return (task, executor) -> {
+                    if (executor.isShutdown()) throw new RejectedExecutionException("Executor has been shut down");
+                    if (task instanceof AwaitedTask) throw new RejectedExecutionException("Listener invocation discarded");
+                };
+            default:
+                return new ThreadPoolExecutor.AbortPolicy();
+        }
+    }
+
+    /**
+     * A task whose completion someone waits for, which must therefore be rejected rather than silently dropped.
+     */
+    interface AwaitedTask extends Runnable {
+    }
+
+    private static Method findVirtualThreadExecutor() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static class CallerRunsExecutor extends AbstractExecutorService {
+        private volatile boolean shutdown;
+
+        @Override
+        public void execute(Runnable command) {
+            if (shutdown) throw new RejectedExecutionException("Executor has been shut down");
+            command.run();
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            shutdown = true;
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return shutdown;
+        }
+    }
+}
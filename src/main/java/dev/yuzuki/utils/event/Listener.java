@@ -7,4 +7,16 @@ import java.lang.annotation.RetentionPolicy;
 public @interface Listener {
     int priority() default 0;
     boolean parallel() default false;
+
+    /**
+     * Receive events as a {@code List<E>} instead of one at a time.
+     * A batch listener is called once per {@link EventBus#postAll(java.util.Collection)} group,
+     * and with a single-element list for {@link EventBus#post(Object)}.
+     */
+    boolean batch() default false;
+
+    /**
+     * Skip this listener once a {@link Cancellable} event has been cancelled by an earlier listener.
+     */
+    boolean ignoreCancelled() default false;
 }
@@ -0,0 +1,21 @@
+package dev.yuzuki.utils.event;
+
+/**
+ * A direct call site for a single {@link Listener} method.
+ * <p>
+ * Invokers are created once when a listener is registered, so posting an event is a plain
+ * interface call instead of a reflective {@link java.lang.reflect.Method#invoke}.
+ * This type is public only so that generated implementations can be defined next to the listener class.
+ */
+@FunctionalInterface
+public interface ListenerInvoker {
+
+    /**
+     * Invokes the listener method.
+     *
+     * @param listener the listener instance, ignored for static methods
+     * @param event the event to deliver
+     * @throws Throwable anything thrown by the listener method
+     */
+    void invoke(Object listener, Object event) throws Throwable;
+}
@@ -0,0 +1,141 @@
+package dev.yuzuki.utils.event;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaConversionException;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Factory for {@link ListenerInvoker} instances.
+ * <p>
+ * Instance methods are bound through {@link LambdaMetafactory}, which spins a small class that calls the
+ * listener method directly. When that is not possible (static methods, inaccessible classes on Java 8,
+ * listeners loaded by an unrelated class loader) a {@link MethodHandle} is used instead.
+ * <p>
+ * Invokers take the listener instance as an argument, so one invoker per method is shared by every registration.
+ * They are cached on the listener's class, which lets the cache go away with its class loader.
+ */
+final class ListenerInvokers {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final MethodType INVOKE_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+    private static final MethodType FACTORY_TYPE = MethodType.methodType(ListenerInvoker.class);
+
+    /**
+     * {@code MethodHandles.privateLookupIn}, available on Java 9 and later.
+     */
+    private static final Method PRIVATE_LOOKUP_IN = findPrivateLookupIn();
+
+    private static final ClassValue<Map<Method, ListenerInvoker>> INVOKERS = new ClassValue<Map<Method, ListenerInvoker>>() {
+        @Override
+        protected Map<Method, ListenerInvoker> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    private ListenerInvokers() {
+    }
+
+    /**
+     * Returns the invoker for the given listener method, creating it on first use.
+     *
+     * @param method a method taking exactly one parameter
+     * @return the invoker
+     * @throws IllegalArgumentException if the method cannot be accessed
+     */
+    static ListenerInvoker create(Method method) {
+        return INVOKERS.get(method.getDeclaringClass()).computeIfAbsent(method, ListenerInvokers::newInvoker);
+    }
+
+    private static ListenerInvoker newInvoker(Method method) {
+        method.setAccessible(true);
+        if (!Modifier.isStatic(method.getModifiers())) {
+            try {
+                ListenerInvoker invoker = generate(method);
+                if (invoker != null) return invoker;
+            } catch (ReflectiveOperationException | LambdaConversionException | LinkageError | SecurityException ignored) {
+                // fall back to a method handle below
+            }
+        }
+        return handle(method);
+    }
+
+    private static ListenerInvoker generate(Method method) throws ReflectiveOperationException, LambdaConversionException {
+        Class<?> owner = method.getDeclaringClass();
+        MethodHandles.Lookup lookup = lookupFor(method);
+        if (lookup == null) return null;
+
+        CallSite site = LambdaMetafactory.metafactory(
+                lookup,
+                "invoke",
+                FACTORY_TYPE,
+                INVOKE_TYPE,
+                lookup.unreflect(method),
+                MethodType.methodType(void.class, owner, method.getParameterTypes()[0])
+        );
+        try {
+            return (ListenerInvoker) site.getTarget().invokeExact();
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable e) {
+            // the factory of a non-capturing lambda only returns the instance
+            throw new LinkageError("Cannot create an invoker for " + method, e);
+        }
+    }
+
+    /**
+     * Returns a lookup the generated class can be defined with, or {@code null} if none is usable.
+     */
+    private static MethodHandles.Lookup lookupFor(Method method) throws ReflectiveOperationException {
+        Class<?> owner = method.getDeclaringClass();
+        if (PRIVATE_LOOKUP_IN != null) {
+            // The class is defined alongside the listener, so it has to see our interface.
+            if (!isVisible(ListenerInvoker.class, owner.getClassLoader())) return null;
+            return (MethodHandles.Lookup) PRIVATE_LOOKUP_IN.invoke(null, owner, LOOKUP);
+        }
+
+        // Java 8: the class is defined alongside this one, so it can only link against public members it can see.
+        ClassLoader loader = ListenerInvokers.class.getClassLoader();
+        if (!Modifier.isPublic(owner.getModifiers()) || !Modifier.isPublic(method.getModifiers())) return null;
+        if (!isVisible(owner, loader) || !isVisible(method.getParameterTypes()[0], loader)) return null;
+        return LOOKUP;
+    }
+
+    private static ListenerInvoker handle(Method method) {
+        MethodHandle handle;
+        try {
+            handle = LOOKUP.unreflect(method);
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Cannot access listener method " + method, e);
+        }
+        if (Modifier.isStatic(method.getModifiers())) {
+            handle = MethodHandles.dropArguments(handle, 0, Object.class);
+        }
+        MethodHandle target = handle.asType(INVOKE_TYPE);
+        return (listener, event) -> {
+            target.invokeExact(listener, event);
+        };
+    }
+
+    private static boolean isVisible(Class<?> type, ClassLoader loader) {
+        if (type.isPrimitive()) return true;
+        try {
+            return Class.forName(type.getName(), false, loader) == type;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    private static Method findPrivateLookupIn() {
+        try {
+            return MethodHandles.class.getMethod("privateLookupIn", Class.class, MethodHandles.Lookup.class);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
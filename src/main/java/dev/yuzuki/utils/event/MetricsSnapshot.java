@@ -0,0 +1,171 @@
+package dev.yuzuki.utils.event;
+
+/**
+ * A point-in-time copy of the dispatch metrics of one listener method or one event class.
+ * Latencies are in nanoseconds; percentiles are accurate to within 12.5%.
+ */
+public class MetricsSnapshot {
+    private final String name;
+    private final long invocations;
+    private final long exceptions;
+    private final long totalNanos;
+    private final long maxNanos;
+    private final long p50Nanos;
+    private final long p90Nanos;
+    private final long p99Nanos;
+    private final long p999Nanos;
+    private final long queuedInvocations;
+    private final long maxQueueWaitNanos;
+    private final long p50QueueWaitNanos;
+    private final long p99QueueWaitNanos;
+
+    MetricsSnapshot(String name, long invocations, long exceptions, long totalNanos, long maxNanos,
+                    long p50Nanos, long p90Nanos, long p99Nanos, long p999Nanos,
+                    long queuedInvocations, long maxQueueWaitNanos, long p50QueueWaitNanos, long p99QueueWaitNanos) {
+        this.name = name;
+        this.invocations = invocations;
+        this.exceptions = exceptions;
+        this.totalNanos = totalNanos;
+        this.maxNanos = maxNanos;
+        this.p50Nanos = p50Nanos;
+        this.p90Nanos = p90Nanos;
+        this.p99Nanos = p99Nanos;
+        this.p999Nanos = p999Nanos;
+        this.queuedInvocations = queuedInvocations;
+        this.maxQueueWaitNanos = maxQueueWaitNanos;
+        this.p50QueueWaitNanos = p50QueueWaitNanos;
+        this.p99QueueWaitNanos = p99QueueWaitNanos;
+    }
+
+    /**
+     * Returns the listener method ({@code Class#method(Event)}) or event class name.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the number of completed invocations, including those that threw.
+     *
+     * @return the invocation count
+     */
+    public long getInvocations() {
+        return invocations;
+    }
+
+    /**
+     * Returns the number of invocations that threw an exception.
+     *
+     * @return the exception count
+     */
+    public long getExceptions() {
+        return exceptions;
+    }
+
+    /**
+     * Returns the total time spent in invocations.
+     *
+     * @return the total time in nanoseconds
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * Returns the mean invocation time.
+     *
+     * @return the mean time in nanoseconds, or 0 if there were no invocations
+     */
+    public long getMeanNanos() {
+        return invocations == 0 ? 0 : totalNanos / invocations;
+    }
+
+    /**
+     * Returns the longest invocation time.
+     *
+     * @return the maximum time in nanoseconds
+     */
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * Returns the median invocation time.
+     *
+     * @return the 50th percentile in nanoseconds
+     */
+    public long getP50Nanos() {
+        return p50Nanos;
+    }
+
+    /**
+     * Returns the 90th percentile invocation time.
+     *
+     * @return the 90th percentile in nanoseconds
+     */
+    public long getP90Nanos() {
+        return p90Nanos;
+    }
+
+    /**
+     * Returns the 99th percentile invocation time.
+     *
+     * @return the 99th percentile in nanoseconds
+     */
+    public long getP99Nanos() {
+        return p99Nanos;
+    }
+
+    /**
+     * Returns the 99.9th percentile invocation time.
+     *
+     * @return the 99.9th percentile in nanoseconds
+     */
+    public long getP999Nanos() {
+        return p999Nanos;
+    }
+
+    /**
+     * Returns the number of invocations that went through the bus's executor.
+     *
+     * @return the number of parallel invocations
+     */
+    public long getQueuedInvocations() {
+        return queuedInvocations;
+    }
+
+    /**
+     * Returns the longest time a parallel invocation waited for an executor thread.
+     *
+     * @return the maximum queue wait in nanoseconds
+     */
+    public long getMaxQueueWaitNanos() {
+        return maxQueueWaitNanos;
+    }
+
+    /**
+     * Returns the median time parallel invocations waited for an executor thread.
+     *
+     * @return the 50th percentile queue wait in nanoseconds
+     */
+    public long getP50QueueWaitNanos() {
+        return p50QueueWaitNanos;
+    }
+
+    /**
+     * Returns the 99th percentile time parallel invocations waited for an executor thread.
+     *
+     * @return the 99th percentile queue wait in nanoseconds
+     */
+    public long getP99QueueWaitNanos() {
+        return p99QueueWaitNanos;
+    }
+
+    @Override
+    public String toString() {
+        return name + ": invocations=" + invocations + ", exceptions=" + exceptions
+                + ", mean=" + getMeanNanos() + "ns, p50=" + p50Nanos + "ns, p99=" + p99Nanos + "ns, max=" + maxNanos + "ns";
+    }
+}
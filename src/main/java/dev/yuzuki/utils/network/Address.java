@@ -0,0 +1,91 @@
+package dev.yuzuki.utils.network;
+
+import java.net.Proxy;
+import java.net.URL;
+import java.util.Locale;
+
+/**
+ * The scheme, host and port a connection is made to, and the proxy it goes through. Connections are only reused for
+ * equal addresses.
+ */
+final class Address {
+    final boolean secure;
+    final String host;
+    final int port;
+    final Proxy proxy;
+
+    Address(boolean secure, String host, int port) {
+        this(secure, host, port, Proxy.NO_PROXY);
+    }
+
+    Address(boolean secure, String host, int port, Proxy proxy) {
+        this.secure = secure;
+        this.host = host.toLowerCase(Locale.ROOT);
+        this.port = port;
+        this.proxy = proxy;
+    }
+
+    /**
+     * Returns the address of the given URL.
+     *
+     * @param url an http or https URL
+     * @return the address
+     * @throws IllegalArgumentException if the URL is neither http nor https
+     */
+    static Address of(URL url) {
+        String protocol = url.getProtocol().toLowerCase(Locale.ROOT);
+        if (!protocol.equals("http") && !protocol.equals("https")) {
+            throw new IllegalArgumentException("Unsupported protocol: " + protocol);
+        }
+        boolean secure = protocol.equals("https");
+        int port = url.getPort() != -1 ? url.getPort() : secure ? 443 : 80;
+        return new Address(secure, url.getHost(), port);
+    }
+
+    /**
+     * Returns the same address reached through a proxy.
+     *
+     * @param proxy the proxy, {@link Proxy#NO_PROXY} for a direct connection
+     * @return the address
+     */
+    Address via(Proxy proxy) {
+        return proxy.equals(this.proxy) ? this : new Address(secure, host, port, proxy);
+    }
+
+    /**
+     * Returns whether requests are sent to an HTTP proxy that forwards them, rather than through a tunnel.
+     *
+     * @return true for plain http through an HTTP proxy
+     */
+    boolean isForwarded() {
+        return !secure && proxy.type() == Proxy.Type.HTTP;
+    }
+
+    /**
+     * Returns the value of the Host header, which omits the default port.
+     *
+     * @return the host header value
+     */
+    String hostHeader() {
+        // IPv6 literals keep the brackets URL.getHost() returns them with
+        return port == (secure ? 443 : 80) ? host : host + ":" + port;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Address)) return false;
+        Address other = (Address) o;
+        return secure == other.secure && port == other.port && host.equals(other.host) && proxy.equals(other.proxy);
+    }
+
+    @Override
+    public int hashCode() {
+        return ((host.hashCode() * 31 + port) * 31 + (secure ? 1 : 0)) * 31 + proxy.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        String url = (secure ? "https://" : "http://") + hostHeader();
+        return proxy.type() == Proxy.Type.DIRECT ? url : url + " via " + proxy;
+    }
+}
@@ -0,0 +1,316 @@
+package dev.yuzuki.utils.network;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+
+/**
+ * A cached response together with what is needed to decide whether it is still fresh.
+ */
+final class CacheEntry {
+    private static final int FORMAT_VERSION = 1;
+
+    final String url;
+    final int code;
+    final Map<String, List<String>> headers;
+    final byte[] body;
+
+    /**
+     * The request headers named by the response's Vary header, with null for absent ones.
+     */
+    final Map<String, String> varyHeaders;
+
+    /**
+     * When the request was sent and when the response was received, in epoch milliseconds.
+     */
+    final long sentAt;
+    final long receivedAt;
+
+    CacheEntry(String url, int code, Map<String, List<String>> headers, byte[] body,
+               Map<String, String> varyHeaders, long sentAt, long receivedAt) {
+        this.url = url;
+        this.code = code;
+        this.headers = headers;
+        this.body = body;
+        this.varyHeaders = varyHeaders;
+        this.sentAt = sentAt;
+        this.receivedAt = receivedAt;
+    }
+
+    /**
+     * Returns whether a response may be stored, looking at its status and Cache-Control and Vary headers.
+     *
+     * @param code the status code
+     * @param headers the response headers
+     * @return true if the response can be cached
+     */
+    static boolean isCacheable(int code, Map<String, List<String>> headers) {
+        switch (code) {
+            case 200:
+            case 203:
+            case 300:
+            case 301:
+            case 404:
+            case 410:
+                break;
+            default:
+                return false;
+        }
+        if (directives(headers).containsKey("no-store")) return false;
+        String vary = first(headers, "Vary");
+        return vary == null || !vary.trim().equals("*");
+    }
+
+    /**
+     * Returns the request header values a response varies on.
+     *
+     * @param responseHeaders the response headers
+     * @param requestHeaders the request headers
+     * @return the values keyed by lower-case header name
+     */
+    static Map<String, String> varyHeaders(Map<String, List<String>> responseHeaders, Map<String, String> requestHeaders) {
+        String vary = first(responseHeaders, "Vary");
+        if (vary == null) return Collections.emptyMap();
+        Map<String, String> values = new TreeMap<>();
+        for (String name : vary.split(",")) {
+            name = name.trim().toLowerCase(Locale.ROOT);
+            if (name.isEmpty()) continue;
+            values.put(name, headerValue(requestHeaders, name));
+        }
+        return values;
+    }
+
+    /**
+     * Returns whether the entry was stored for a request with the same values of the headers it varies on.
+     *
+     * @param requestHeaders the headers of the new request
+     * @return true if the entry can answer the request
+     */
+    boolean matches(Map<String, String> requestHeaders) {
+        for (Map.Entry<String, String> vary : varyHeaders.entrySet()) {
+            if (!Objects.equals(vary.getValue(), headerValue(requestHeaders, vary.getKey()))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether the entry can be served without asking the server.
+     *
+     * @param now the current time in epoch milliseconds
+     * @return true if the entry is fresh and does not require revalidation
+     */
+    boolean isFresh(long now) {
+        if (directives(headers).containsKey("no-cache")) return false;
+        return age(now) < freshnessLifetime();
+    }
+
+    /**
+     * Returns whether storing the entry can save a request, because it has a freshness lifetime or validators.
+     *
+     * @return true if the entry is worth storing
+     */
+    boolean isUseful() {
+        return freshnessLifetime() > 0 || hasValidators();
+    }
+
+    /**
+     * Returns whether the server can be asked if the entry is still valid.
+     *
+     * @return true if the entry has an ETag or a Last-Modified date
+     */
+    boolean hasValidators() {
+        return first(headers, "ETag") != null || first(headers, "Last-Modified") != null;
+    }
+
+    /**
+     * Returns the headers that make a request conditional on the entry having changed.
+     *
+     * @return the If-None-Match and If-Modified-Since headers
+     */
+    Map<String, String> conditionalHeaders() {
+        Map<String, String> conditional = new LinkedHashMap<>();
+        String etag = first(headers, "ETag");
+        if (etag != null) conditional.put("If-None-Match", etag);
+        String lastModified = first(headers, "Last-Modified");
+        if (lastModified != null) conditional.put("If-Modified-Since", lastModified);
+        return conditional;
+    }
+
+    /**
+     * Returns a copy of the entry updated with the headers of a 304 response, which revalidated it.
+     *
+     * @param notModifiedHeaders the headers of the 304 response
+     * @param sentAt when the conditional request was sent
+     * @param receivedAt when the 304 response was received
+     * @return the updated entry
+     */
+    CacheEntry revalidated(Map<String, List<String>> notModifiedHeaders, long sentAt, long receivedAt) {
+        Map<String, List<String>> merged = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        merged.putAll(headers);
+        for (Map.Entry<String, List<String>> header : notModifiedHeaders.entrySet()) {
+            String name = header.getKey();
+            // these describe the (empty) 304 body rather than the cached one
+            if (name.equalsIgnoreCase("Content-Length") || name.equalsIgnoreCase("Content-Encoding")
+                    || name.equalsIgnoreCase("Transfer-Encoding")) continue;
+            merged.put(name, header.getValue());
+        }
+        return new CacheEntry(url, code, merged, body, varyHeaders, sentAt, receivedAt);
+    }
+
+    /**
+     * Returns an estimate of the memory the entry occupies.
+     *
+     * @return the size in bytes
+     */
+    long size() {
+        long size = body.length + 2L * url.length() + 128;
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            size += 2L * header.getKey().length() + 32;
+            for (String value : header.getValue()) size += 2L * value.length() + 16;
+        }
+        return size;
+    }
+
+    private long age(long now) {
+        // RFC 9111 section 4.2.3
+        long dateValue = date(first(headers, "Date"), receivedAt);
+        long apparentAge = Math.max(0, receivedAt - dateValue);
+        long ageValue = seconds(first(headers, "Age")) * 1000;
+        long correctedInitialAge = Math.max(apparentAge, ageValue + (receivedAt - sentAt));
+        return correctedInitialAge + (now - receivedAt);
+    }
+
+    private long freshnessLifetime() {
+        Map<String, String> directives = directives(headers);
+        String maxAge = directives.get("max-age");
+        if (maxAge != null) return seconds(maxAge) * 1000;
+
+        long dateValue = date(first(headers, "Date"), receivedAt);
+        String expires = first(headers, "Expires");
+        if (expires != null) return Math.max(0, date(expires, 0) - dateValue);
+
+        String lastModified = first(headers, "Last-Modified");
+        if (lastModified != null && !url.contains("?")) {
+            // heuristic freshness: a tenth of the time since the resource last changed
+            long modified = date(lastModified, dateValue);
+            return Math.max(0, (dateValue - modified) / 10);
+        }
+        return 0;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        out.writeUTF(url);
+        out.writeInt(code);
+        out.writeLong(sentAt);
+        out.writeLong(receivedAt);
+        out.writeInt(headers.size());
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            out.writeUTF(header.getKey());
+            out.writeInt(header.getValue().size());
+            for (String value : header.getValue()) out.writeUTF(value);
+        }
+        out.writeInt(varyHeaders.size());
+        for (Map.Entry<String, String> vary : varyHeaders.entrySet()) {
+            out.writeUTF(vary.getKey());
+            out.writeBoolean(vary.getValue() != null);
+            if (vary.getValue() != null) out.writeUTF(vary.getValue());
+        }
+        out.writeInt(body.length);
+        out.write(body);
+    }
+
+    static CacheEntry readFrom(DataInputStream in) throws IOException {
+        if (in.readInt() != FORMAT_VERSION) throw new IOException("Unknown cache entry format");
+        String url = in.readUTF();
+        int code = in.readInt();
+        long sentAt = in.readLong();
+        long receivedAt = in.readLong();
+        Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (int i = in.readInt(); i > 0; i--) {
+            String name = in.readUTF();
+            int count = in.readInt();
+            List<String> values = new ArrayList<>(count);
+            for (int j = 0; j < count; j++) values.add(in.readUTF());
+            headers.put(name, values);
+        }
+        Map<String, String> varyHeaders = new TreeMap<>();
+        for (int i = in.readInt(); i > 0; i--) {
+            String name = in.readUTF();
+            varyHeaders.put(name, in.readBoolean() ? in.readUTF() : null);
+        }
+        byte[] body = new byte[in.readInt()];
+        in.readFully(body);
+        return new CacheEntry(url, code, headers, body, varyHeaders, sentAt, receivedAt);
+    }
+
+    /**
+     * Parses the Cache-Control directives of a response.
+     *
+     * @param headers the headers
+     * @return the directives keyed by lower-case name, with null values for directives without an argument
+     */
+    static Map<String, String> directives(Map<String, List<String>> headers) {
+        List<String> values = headers.get("Cache-Control");
+        if (values == null) return Collections.emptyMap();
+        Map<String, String> directives = new HashMap<>();
+        for (String value : values) parseDirectives(value, directives);
+        return directives;
+    }
+
+    /**
+     * Parses Cache-Control directives.
+     *
+     * @param value the header value
+     * @param directives the map to add the directives to
+     */
+    static void parseDirectives(String value, Map<String, String> directives) {
+        for (String directive : value.split(",")) {
+            int equals = directive.indexOf('=');
+            if (equals == -1) {
+                String name = directive.trim().toLowerCase(Locale.ROOT);
+                if (!name.isEmpty()) directives.put(name, null);
+            } else {
+                String argument = directive.substring(equals + 1).trim();
+                if (argument.length() >= 2 && argument.startsWith("\"") && argument.endsWith("\"")) {
+                    argument = argument.substring(1, argument.length() - 1);
+                }
+                directives.put(directive.substring(0, equals).trim().toLowerCase(Locale.ROOT), argument);
+            }
+        }
+    }
+
+    private static String headerValue(Map<String, String> headers, String name) {
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (header.getKey().equalsIgnoreCase(name)) return header.getValue();
+        }
+        return null;
+    }
+
+    private static String first(Map<String, List<String>> headers, String name) {
+        List<String> values = headers.get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    private static long seconds(String value) {
+        if (value == null) return 0;
+        try {
+            return Math.max(0, Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static long date(String value, long fallback) {
+        if (value == null) return fallback;
+        try {
+            return ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return fallback;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package dev.yuzuki.utils.network;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One execution of a request, which can be aborted from another thread by closing the socket it is using.
+ */
+final class Call {
+    private Closeable socket;
+    private boolean canceled;
+    private boolean timedOut;
+    private long timeoutMillis;
+    private long deadline;
+    private boolean hasDeadline;
+
+    // phase durations in nanoseconds, added up over every exchange by the thread running it
+    private final long startedAt = System.nanoTime();
+    long dnsNanos;
+    long connectNanos;
+    long tlsNanos;
+    long poolWaitNanos;
+    long sendNanos;
+    long timeToFirstByteNanos;
+    long downloadNanos;
+    long bytesSent;
+    long bytesReceived;
+    int exchanges;
+
+    /**
+     * When the first byte of the latest response arrived, in System.nanoTime().
+     */
+    long respondedAt;
+
+    /**
+     * Attaches the socket the call is currently using, closing it right away if the call was already aborted.
+     *
+     * @param socket the socket or connection
+     * @throws IOException if the call was aborted
+     */
+    synchronized void attach(Closeable socket) throws IOException {
+        if (canceled) {
+            close(socket);
+            throw abortedException();
+        }
+        this.socket = socket;
+    }
+
+    /**
+     * Detaches a socket before it is handed back to the pool, so that aborting the call cannot close it anymore.
+     *
+     * @param socket the socket or connection
+     */
+    synchronized void detach(Closeable socket) {
+        if (this.socket == socket) this.socket = null;
+    }
+
+    /**
+     * Aborts the call, closing its socket if one is attached.
+     */
+    synchronized void cancel() {
+        if (canceled) return;
+        canceled = true;
+        if (socket != null) close(socket);
+        socket = null;
+        notifyAll();
+    }
+
+    /**
+     * Waits between two attempts, returning early with an exception if the call is aborted meanwhile.
+     *
+     * @param millis the time to wait
+     * @throws IOException if the call was aborted or the thread interrupted
+     */
+    synchronized void sleep(long millis) throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        try {
+            while (!canceled) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) return;
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry");
+        }
+        throw abortedException();
+    }
+
+    /**
+     * Records when the call's timeout fires, so that waits can be cut short instead of running into it.
+     *
+     * @param timeoutMillis the timeout, counted from now
+     */
+    synchronized void deadline(long timeoutMillis) {
+        this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        this.hasDeadline = true;
+    }
+
+    /**
+     * Returns the time left until the call times out.
+     *
+     * @return the remaining nanoseconds, at least 0, or Long.MAX_VALUE if the call has no timeout
+     */
+    synchronized long remainingNanos() {
+        return hasDeadline ? Math.max(0, deadline - System.nanoTime()) : Long.MAX_VALUE;
+    }
+
+    /**
+     * Aborts the call because it ran out of time.
+     *
+     * @param timeoutMillis the timeout that elapsed, for the exception message
+     */
+    synchronized void timeout(long timeoutMillis) {
+        if (canceled) return;
+        this.timedOut = true;
+        this.timeoutMillis = timeoutMillis;
+        cancel();
+    }
+
+    synchronized boolean isCanceled() {
+        return canceled;
+    }
+
+    /**
+     * Returns the exception describing why the call was aborted.
+     *
+     * @return a SocketTimeoutException if the call timed out, otherwise an InterruptedIOException
+     */
+    synchronized IOException abortedException() {
+        return timedOut
+                ? new SocketTimeoutException("Request timed out after " + timeoutMillis + " ms")
+                : new InterruptedIOException("Request canceled");
+    }
+
+    /**
+     * Records that the body of the latest response has been read.
+     */
+    void downloaded() {
+        if (respondedAt != 0) downloadNanos += System.nanoTime() - respondedAt;
+        respondedAt = 0;
+    }
+
+    /**
+     * Returns the timings of the call so far.
+     *
+     * @return the timings
+     */
+    RequestTimings timings() {
+        return new RequestTimings(dnsNanos, connectNanos, tlsNanos, poolWaitNanos, sendNanos, timeToFirstByteNanos,
+                downloadNanos, 0, System.nanoTime() - startedAt, bytesSent, bytesReceived, exchanges);
+    }
+
+    private static void close(Closeable socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // the exchange fails with its own exception
+        }
+    }
+}
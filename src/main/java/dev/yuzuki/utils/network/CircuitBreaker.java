@@ -0,0 +1,220 @@
+package dev.yuzuki.utils.network;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stops sending requests to a host that keeps failing, so that callers fail in microseconds instead of each waiting
+ * for a timeout. <br>
+ * Usage:
+ * <pre>
+ *     {@code
+ *     CircuitBreaker breaker = CircuitBreaker.builder()
+ *             .failureThreshold(5)
+ *             .openDuration(30, TimeUnit.SECONDS)
+ *             .build();
+ *     HttpClient client = HttpClient.builder().circuitBreaker(breaker).build();
+ *     }
+ * </pre>
+ *
+ * Each host has its own circuit. After the given number of consecutive failures (I/O errors and, by default, 5xx
+ * responses) the circuit opens and requests fail with a {@link CircuitOpenException}. Once the open duration has
+ * passed, a single trial request is let through: its success closes the circuit, its failure opens it again.
+ */
+public class CircuitBreaker {
+    private final int failureThreshold;
+    private final long openNanos;
+    private final boolean countServerErrors;
+    private final Map<String, Circuit> circuits = new ConcurrentHashMap<>();
+
+    private CircuitBreaker(Builder builder) {
+        this.failureThreshold = builder.failureThreshold;
+        this.openNanos = builder.openNanos;
+        this.countServerErrors = builder.countServerErrors;
+    }
+
+    /**
+     * Returns a new Builder instance for constructing a CircuitBreaker.
+     *
+     * @return a new Builder instance
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * The state of a host's circuit.
+     */
+    public enum State {
+        /**
+         * Requests are sent.
+         */
+        CLOSED,
+        /**
+         * Requests fail without being sent.
+         */
+        OPEN,
+        /**
+         * A trial request is in flight and other requests fail without being sent.
+         */
+        HALF_OPEN
+    }
+
+    /**
+     * Returns the state of a host's circuit.
+     *
+     * @param host the host, with the port if it is not the default one
+     * @return the state
+     */
+    public State getState(String host) {
+        Circuit circuit = circuits.get(host);
+        return circuit == null ? State.CLOSED : State.values()[circuit.state.get()];
+    }
+
+    /**
+     * Closes all circuits.
+     */
+    public void reset() {
+        circuits.clear();
+    }
+
+    /**
+     * Checks that a request may be sent to the host.
+     *
+     * @param host the host key
+     * @return true if the request is the trial of a half-open circuit, whose outcome has to be recorded or abandoned
+     * @throws CircuitOpenException if the circuit is open
+     */
+    boolean acquire(String host) throws CircuitOpenException {
+        Circuit circuit = circuits.computeIfAbsent(host, k -> new Circuit());
+        while (true) {
+            int state = circuit.state.get();
+            if (state == Circuit.CLOSED) return false;
+
+            long now = System.nanoTime();
+            long waited = now - circuit.openedAt.get();
+            if (waited < openNanos) {
+                throw new CircuitOpenException(host, TimeUnit.NANOSECONDS.toMillis(openNanos - waited) + 1);
+            }
+            // OPEN past its duration, or HALF_OPEN whose trial never reported back: let one trial through
+            long openedAt = circuit.openedAt.get();
+            if (circuit.openedAt.compareAndSet(openedAt, now)) {
+                circuit.state.set(Circuit.HALF_OPEN);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Lets the next request be the trial, after a trial that ended without an outcome, such as a canceled request.
+     *
+     * @param host the host key
+     */
+    void abandonTrial(String host) {
+        Circuit circuit = circuits.get(host);
+        if (circuit != null && circuit.state.get() == Circuit.HALF_OPEN) {
+            circuit.openedAt.set(System.nanoTime() - openNanos);
+        }
+    }
+
+    /**
+     * Records the outcome of a request that received a response.
+     *
+     * @param host the host key
+     * @param code the status code
+     */
+    void record(String host, int code) {
+        if (countServerErrors && code >= 500) {
+            recordFailure(host);
+        } else {
+            recordSuccess(host);
+        }
+    }
+
+    /**
+     * Records a request that failed with an I/O error.
+     *
+     * @param host the host key
+     */
+    void recordFailure(String host) {
+        Circuit circuit = circuits.computeIfAbsent(host, k -> new Circuit());
+        int state = circuit.state.get();
+        if (state == Circuit.HALF_OPEN || circuit.failures.incrementAndGet() >= failureThreshold) {
+            circuit.openedAt.set(System.nanoTime());
+            circuit.state.set(Circuit.OPEN);
+        }
+    }
+
+    private void recordSuccess(String host) {
+        Circuit circuit = circuits.get(host);
+        if (circuit == null) return;
+        if (circuit.failures.get() != 0) circuit.failures.set(0);
+        if (circuit.state.get() != Circuit.CLOSED) circuit.state.set(Circuit.CLOSED);
+    }
+
+    private static final class Circuit {
+        static final int CLOSED = 0;
+        static final int OPEN = 1;
+        static final int HALF_OPEN = 2;
+
+        final AtomicInteger state = new AtomicInteger(CLOSED);
+        final AtomicInteger failures = new AtomicInteger();
+        final AtomicLong openedAt = new AtomicLong();
+    }
+
+    /**
+     * A builder class for constructing CircuitBreaker objects.
+     */
+    public static class Builder {
+        private int failureThreshold = 5;
+        private long openNanos = TimeUnit.SECONDS.toNanos(30);
+        private boolean countServerErrors = true;
+
+        /**
+         * Sets the number of consecutive failures that open a circuit. 5 by default.
+         *
+         * @param failureThreshold the number of failures
+         * @return the Builder instance
+         */
+        public Builder failureThreshold(int failureThreshold) {
+            if (failureThreshold < 1) throw new IllegalArgumentException("failureThreshold must be at least 1");
+            this.failureThreshold = failureThreshold;
+            return this;
+        }
+
+        /**
+         * Sets how long a circuit stays open before a trial request is let through. 30 seconds by default.
+         *
+         * @param duration the duration
+         * @param unit the unit of duration
+         * @return the Builder instance
+         */
+        public Builder openDuration(long duration, TimeUnit unit) {
+            this.openNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * Sets whether 5xx responses count as failures. Enabled by default.
+         *
+         * @param countServerErrors whether server errors count
+         * @return the Builder instance
+         */
+        public Builder countServerErrors(boolean countServerErrors) {
+            this.countServerErrors = countServerErrors;
+            return this;
+        }
+
+        /**
+         * Builds and returns the CircuitBreaker.
+         *
+         * @return the constructed CircuitBreaker
+         */
+        public CircuitBreaker build() {
+            return new CircuitBreaker(this);
+        }
+    }
+}
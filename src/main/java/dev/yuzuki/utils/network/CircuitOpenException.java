@@ -0,0 +1,43 @@
+package dev.yuzuki.utils.network;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of sending a request to a host whose {@link CircuitBreaker} is open.
+ */
+public class CircuitOpenException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final String host;
+    private final long retryAfterMillis;
+
+    /**
+     * Constructs a new CircuitOpenException.
+     *
+     * @param host the host requests are currently not sent to
+     * @param retryAfterMillis how long until the breaker lets a trial request through
+     */
+    public CircuitOpenException(String host, long retryAfterMillis) {
+        super("Circuit breaker for " + host + " is open, retry in " + retryAfterMillis + " ms");
+        this.host = host;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * Returns the host requests are currently not sent to.
+     *
+     * @return the host and port
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * Returns how long until the breaker lets a trial request through.
+     *
+     * @return the time in milliseconds
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
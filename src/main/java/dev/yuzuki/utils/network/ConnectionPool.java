@@ -0,0 +1,306 @@
+package dev.yuzuki.utils.network;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps idle keep-alive connections per host so that requests skip the TCP and TLS handshakes. <br>
+ * Usage:
+ * <pre>
+ *     {@code
+ *     ConnectionPool pool = new ConnectionPool(8, 30, TimeUnit.SECONDS);
+ *     HttpClient client = HttpClient.builder().connectionPool(pool).build();
+ *     }
+ * </pre>
+ *
+ * A pool may be shared between clients. Idle connections are closed once they have been unused for the
+ * keep-alive time; expired connections are swept lazily while the pool is in use, so no thread is needed.
+ */
+public class ConnectionPool {
+    private static final long MAX_WAIT_SLICE = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final int maxConnectionsPerHost;
+    private final long keepAliveNanos;
+    private final Map<Address, HostPool> hosts = new ConcurrentHashMap<>();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder reused = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    private final LongAdder waits = new LongAdder();
+    private volatile long nextSweep;
+
+    /**
+     * Creates a pool allowing 16 connections per host, which are kept alive for 60 seconds.
+     */
+    public ConnectionPool() {
+        this(16, 60, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Creates a pool.
+     *
+     * @param maxConnectionsPerHost the maximum number of open connections per host, idle or in use
+     * @param keepAlive how long an idle connection is kept
+     * @param unit the unit of keepAlive
+     */
+    public ConnectionPool(int maxConnectionsPerHost, long keepAlive, TimeUnit unit) {
+        if (maxConnectionsPerHost <= 0) throw new IllegalArgumentException("maxConnectionsPerHost must be positive");
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.keepAliveNanos = unit.toNanos(keepAlive);
+        this.nextSweep = System.nanoTime();
+    }
+
+    /**
+     * Returns an idle connection to the address, or opens a new one if the host is below its limit.
+     * Otherwise waits for a connection to be released.
+     *
+     * @param address the address to connect to
+     * @param timeoutMillis how long to wait for a free connection, 0 to wait forever
+     * @param call the call the connection is for, which stops waiting once it is aborted
+     * @param connector opens a new connection
+     * @return a connection leased to the caller, which must be passed to {@link #release(HttpConnection, boolean)}
+     * @throws IOException if connecting fails, no connection became free in time or the call was aborted
+     */
+    HttpConnection acquire(Address address, long timeoutMillis, Call call, Connector connector) throws IOException {
+        sweepIfDue();
+        HostPool pool = hosts.computeIfAbsent(address, k -> new HostPool());
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        boolean waited = false;
+        synchronized (pool) {
+            while (true) {
+                HttpConnection idle;
+                while ((idle = pool.idle.pollFirst()) != null) {
+                    if (idle.isOpen() && System.nanoTime() - idle.idleSince < keepAliveNanos) {
+                        pool.leased++;
+                        reused.increment();
+                        return idle;
+                    }
+                    pool.total--;
+                    evicted.increment();
+                    idle.close();
+                }
+                if (pool.total < maxConnectionsPerHost) {
+                    pool.total++;
+                    pool.leased++;
+                    break;
+                }
+
+                if (!waited) {
+                    waited = true;
+                    waits.increment();
+                }
+                if (call.isCanceled()) throw call.abortedException();
+                long remaining = deadline - System.nanoTime();
+                if (timeoutMillis > 0 && remaining <= 0) {
+                    throw new SocketTimeoutException("Timed out waiting for a connection to " + address);
+                }
+                try {
+                    // in slices, so that a canceled or timed out call stops queueing
+                    long slice = Math.min(MAX_WAIT_SLICE, Math.max(1, call.remainingNanos()));
+                    TimeUnit.NANOSECONDS.timedWait(pool, timeoutMillis > 0 ? Math.min(remaining, slice) : slice);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted waiting for a connection to " + address, e);
+                }
+            }
+        }
+
+        try {
+            HttpConnection connection = connector.connect(address);
+            created.increment();
+            return connection;
+        } catch (IOException | RuntimeException e) {
+            synchronized (pool) {
+                pool.total--;
+                pool.leased--;
+                pool.notify();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a leased connection to the pool.
+     *
+     * @param connection the connection
+     * @param reusable whether the exchange left the connection in a state where it can carry another request
+     */
+    void release(HttpConnection connection, boolean reusable) {
+        HostPool pool = hosts.get(connection.address);
+        synchronized (pool) {
+            pool.leased--;
+            if (reusable && connection.isOpen()) {
+                connection.idleSince = System.nanoTime();
+                pool.idle.addFirst(connection);
+            } else {
+                pool.total--;
+                connection.close();
+            }
+            pool.notify();
+        }
+    }
+
+    /**
+     * Closes idle connections that have exceeded the keep-alive time.
+     */
+    public void evictExpired() {
+        long now = System.nanoTime();
+        for (HostPool pool : hosts.values()) {
+            synchronized (pool) {
+                // most recently used connections are at the front
+                Iterator<HttpConnection> iterator = pool.idle.descendingIterator();
+                while (iterator.hasNext()) {
+                    HttpConnection connection = iterator.next();
+                    if (now - connection.idleSince < keepAliveNanos && connection.isOpen()) break;
+                    iterator.remove();
+                    pool.total--;
+                    evicted.increment();
+                    connection.close();
+                }
+                if (pool.total < maxConnectionsPerHost) pool.notify();
+            }
+        }
+    }
+
+    /**
+     * Closes all idle connections.
+     */
+    public void evictAll() {
+        for (HostPool pool : hosts.values()) {
+            synchronized (pool) {
+                HttpConnection connection;
+                while ((connection = pool.idle.pollFirst()) != null) {
+                    pool.total--;
+                    evicted.increment();
+                    connection.close();
+                }
+                pool.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Returns the pool statistics.
+     *
+     * @return a snapshot of the statistics
+     */
+    public Stats getStats() {
+        int idle = 0;
+        int leased = 0;
+        for (HostPool pool : hosts.values()) {
+            synchronized (pool) {
+                idle += pool.idle.size();
+                leased += pool.leased;
+            }
+        }
+        return new Stats(created.sum(), reused.sum(), evicted.sum(), waits.sum(), idle, leased);
+    }
+
+    private void sweepIfDue() {
+        long now = System.nanoTime();
+        if (now - nextSweep < 0) return;
+        nextSweep = now + Math.min(keepAliveNanos, TimeUnit.SECONDS.toNanos(1));
+        evictExpired();
+    }
+
+    /**
+     * Opens a new connection.
+     */
+    @FunctionalInterface
+    interface Connector {
+        HttpConnection connect(Address address) throws IOException;
+    }
+
+    private static class HostPool {
+        final Deque<HttpConnection> idle = new ArrayDeque<>();
+        int total;
+        int leased;
+    }
+
+    /**
+     * A snapshot of the pool statistics.
+     */
+    public static class Stats {
+        private final long created;
+        private final long reused;
+        private final long evicted;
+        private final long waits;
+        private final int idle;
+        private final int leased;
+
+        Stats(long created, long reused, long evicted, long waits, int idle, int leased) {
+            this.created = created;
+            this.reused = reused;
+            this.evicted = evicted;
+            this.waits = waits;
+            this.idle = idle;
+            this.leased = leased;
+        }
+
+        /**
+         * Returns the number of connections opened, each costing a TCP (and TLS) handshake.
+         *
+         * @return the number of connections created
+         */
+        public long getCreated() {
+            return created;
+        }
+
+        /**
+         * Returns the number of requests that were sent on an already open connection.
+         *
+         * @return the number of reuses
+         */
+        public long getReused() {
+            return reused;
+        }
+
+        /**
+         * Returns the number of idle connections closed because they expired or went stale.
+         *
+         * @return the number of evictions
+         */
+        public long getEvicted() {
+            return evicted;
+        }
+
+        /**
+         * Returns the number of requests that had to wait for a host's connection limit.
+         *
+         * @return the number of waits
+         */
+        public long getWaits() {
+            return waits;
+        }
+
+        /**
+         * Returns the number of idle connections currently kept.
+         *
+         * @return the number of idle connections
+         */
+        public int getIdle() {
+            return idle;
+        }
+
+        /**
+         * Returns the number of connections currently carrying a request.
+         *
+         * @return the number of leased connections
+         */
+        public int getLeased() {
+            return leased;
+        }
+
+        @Override
+        public String toString() {
+            return "created=" + created + ", reused=" + reused + ", evicted=" + evicted
+                    + ", waits=" + waits + ", idle=" + idle + ", leased=" + leased;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package dev.yuzuki.utils.network;
+
+import java.io.*;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compression of request bodies and decompression of response bodies.
+ */
+final class ContentEncoding {
+    static final String ACCEPT_ENCODING = "gzip, deflate";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private ContentEncoding() {
+    }
+
+    /**
+     * Wraps the body of a gzip or deflate encoded response in a decompressing stream. The Content-Encoding and
+     * Content-Length headers, which describe the compressed body, are removed.
+     *
+     * @param response the response
+     * @return the decoded response, or the response itself if its body is not compressed
+     * @throws IOException if the compressed body is malformed
+     */
+    static RawResponse decode(RawResponse response) throws IOException {
+        String encoding = response.header("Content-Encoding");
+        if (encoding == null) return response;
+        encoding = encoding.trim().toLowerCase(Locale.ROOT);
+        boolean gzip = encoding.equals("gzip") || encoding.equals("x-gzip");
+        if (!gzip && !encoding.equals("deflate")) return response;
+
+        Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        headers.putAll(response.headers);
+        headers.remove("Content-Encoding");
+        headers.remove("Content-Length");
+
+        PushbackInputStream raw = new PushbackInputStream(response.body, 2);
+        int first = raw.read();
+        if (first == -1) {
+            // a HEAD or 304 response has no body to decode
+            return new RawResponse(response.code, response.message, headers, raw);
+        }
+        int second = raw.read();
+        if (second != -1) raw.unread(second);
+        raw.unread(first);
+
+        InputStream decoder;
+        try {
+            if (gzip) {
+                decoder = new GZIPInputStream(raw, BUFFER_SIZE);
+            } else {
+                // deflate is meant to be zlib-wrapped, but some servers send raw deflate data
+                boolean zlib = second != -1 && (first & 0x0f) == 8 && ((first << 8) | second) % 31 == 0;
+                decoder = new InflaterInputStream(raw, new Inflater(!zlib), BUFFER_SIZE);
+            }
+        } catch (IOException | RuntimeException e) {
+            raw.close();
+            throw e;
+        }
+        return new RawResponse(response.code, response.message, headers, new DecodedInputStream(decoder, raw));
+    }
+
+    /**
+     * Returns a body that gzips the given body while it is written. The compressed length is unknown,
+     * so the body is sent chunked.
+     *
+     * @param body the body to compress
+     * @return the compressed body
+     */
+    static RequestBody gzip(RequestBody body) {
+        return new RequestBody() {
+            @Override
+            public String contentType() {
+                return body.contentType();
+            }
+
+            @Override
+            public long contentLength() {
+                return -1;
+            }
+
+            @Override
+            public boolean isRepeatable() {
+                return body.isRepeatable();
+            }
+
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                // closing releases the deflater's native memory but must leave the connection open
+                try (GZIPOutputStream gzip = new GZIPOutputStream(new FilterOutputStream(out) {
+                    @Override
+                    public void write(byte[] buffer, int offset, int length) throws IOException {
+                        out.write(buffer, offset, length);
+                    }
+
+                    @Override
+                    public void close() {
+                    }
+                }, BUFFER_SIZE)) {
+                    body.writeTo(gzip);
+                }
+            }
+        };
+    }
+
+    /**
+     * A decompressed body. Once the compressed data ends, the rest of the raw body is read so that the connection
+     * can be reused.
+     */
+    private static final class DecodedInputStream extends FilterInputStream {
+        private final InputStream raw;
+
+        DecodedInputStream(InputStream decoder, InputStream raw) {
+            super(decoder);
+            this.raw = raw;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b == -1) drainRaw();
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read == -1) drainRaw();
+            return read;
+        }
+
+        private void drainRaw() throws IOException {
+            byte[] buffer = new byte[512];
+            while (raw.read(buffer) != -1) {
+                // normally only the end of the framing, such as the last chunk, is left
+            }
+        }
+    }
+}
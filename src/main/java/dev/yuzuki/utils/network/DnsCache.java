@@ -0,0 +1,366 @@
+package dev.yuzuki.utils.network;
+
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caches host name lookups for {@link HttpClient}, independently of the JVM's own DNS cache, whose lifetime depends
+ * on security properties. <br>
+ * Usage:
+ * <pre>
+ *     {@code
+ *     DnsCache dns = DnsCache.builder()
+ *             .ttl(5, TimeUnit.MINUTES)
+ *             .negativeTtl(10, TimeUnit.SECONDS)
+ *             .build();
+ *     dns.prewarm("api.example.com", "cdn.example.com");
+ *     HttpClient client = HttpClient.builder().dnsCache(dns).build();
+ *     }
+ * </pre>
+ *
+ * Addresses are kept for the TTL. Once most of it has passed, the next lookup still returns the cached addresses and
+ * refreshes them in the background, so requests to busy hosts never wait for DNS. A failed refresh is not retried,
+ * and the addresses are used until they expire. Failed lookups are remembered for the negative TTL, so that a missing
+ * host does not cost a lookup per request. Concurrent lookups of the same host share one resolution.
+ * <p>
+ * The cache is used for HTTP/1.1 connections. The HTTP/2 transport resolves through the JDK's client.
+ */
+public class DnsCache {
+    private static final AtomicInteger THREADS = new AtomicInteger();
+
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final long refreshAheadNanos;
+    private final int maxEntries;
+    private final Resolver resolver;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Entry>> lookups = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+
+    private DnsCache(Builder builder) {
+        this.ttlNanos = builder.ttlNanos;
+        this.negativeTtlNanos = builder.negativeTtlNanos;
+        this.refreshAheadNanos = (long) (builder.ttlNanos * builder.refreshAhead);
+        this.maxEntries = builder.maxEntries;
+        this.resolver = builder.resolver;
+    }
+
+    /**
+     * Returns a new Builder instance for constructing a DnsCache.
+     *
+     * @return a new Builder instance
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Resolves a host name, from the cache if possible.
+     *
+     * @param host the host name or IP literal
+     * @return the addresses of the host
+     * @throws UnknownHostException if the host could not be resolved, now or within the negative TTL
+     * @throws InterruptedIOException if the thread was interrupted waiting for another thread's lookup
+     */
+    public InetAddress[] resolve(String host) throws UnknownHostException, InterruptedIOException {
+        long now = System.nanoTime();
+        Entry entry = entries.get(host);
+        if (entry != null && now - entry.expiresAt < 0) {
+            hits.increment();
+            if (entry.addresses == null) throw new UnknownHostException(host + " (cached)");
+            if (now - entry.resolvedAt >= refreshAheadNanos && entry.refreshing.compareAndSet(false, true)) {
+                refreshLater(host, entry);
+            }
+            return entry.addresses.clone();
+        }
+
+        misses.increment();
+        entry = lookup(host);
+        if (entry.addresses == null) throw new UnknownHostException(host);
+        return entry.addresses.clone();
+    }
+
+    /**
+     * Resolves hosts in the background, so that the first requests to them find their addresses cached.
+     *
+     * @param hosts the host names
+     * @return a future completed once every host was looked up, whether it could be resolved or not
+     */
+    public CompletableFuture<Void> prewarm(String... hosts) {
+        return prewarm(Arrays.asList(hosts));
+    }
+
+    /**
+     * Resolves hosts in the background, so that the first requests to them find their addresses cached.
+     *
+     * @param hosts the host names
+     * @return a future completed once every host was looked up, whether it could be resolved or not
+     */
+    public CompletableFuture<Void> prewarm(Collection<String> hosts) {
+        List<CompletableFuture<?>> futures = new ArrayList<>(hosts.size());
+        for (String host : hosts) {
+            futures.add(CompletableFuture.runAsync(() -> {
+                try {
+                    lookup(host);
+                } catch (InterruptedIOException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, Refresher.EXECUTOR));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * Forgets the addresses of a host.
+     *
+     * @param host the host name
+     */
+    public void invalidate(String host) {
+        entries.remove(host);
+    }
+
+    /**
+     * Forgets all addresses.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Returns the number of lookups answered from the cache, including failed ones.
+     *
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of lookups that had to wait for a resolution.
+     *
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of resolutions made in the background ahead of expiry.
+     *
+     * @return the refresh count
+     */
+    public long getRefreshCount() {
+        return refreshes.sum();
+    }
+
+    /**
+     * Resolves a host and caches the outcome, sharing the resolution with concurrent lookups of the same host.
+     */
+    private Entry lookup(String host) throws InterruptedIOException {
+        CompletableFuture<Entry> mine = new CompletableFuture<>();
+        CompletableFuture<Entry> running = lookups.putIfAbsent(host, mine);
+        if (running != null) {
+            try {
+                return running.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted resolving " + host);
+            } catch (ExecutionException e) {
+                // resolve() never completes exceptionally, so only errors end up here
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        try {
+            Entry entry = resolveNow(host);
+            store(host, entry);
+            mine.complete(entry);
+            return entry;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            lookups.remove(host, mine);
+        }
+    }
+
+    private void refreshLater(String host, Entry stale) {
+        try {
+            Refresher.EXECUTOR.execute(() -> {
+                Entry entry = resolveNow(host);
+                refreshes.increment();
+                // a failed refresh keeps the old addresses until they expire, and refreshing stays set so that a
+                // resolver outage costs one background lookup per entry rather than one per request
+                if (entry.addresses != null) store(host, entry);
+            });
+        } catch (RejectedExecutionException e) {
+            stale.refreshing.set(false);
+        }
+    }
+
+    private Entry resolveNow(String host) {
+        InetAddress[] addresses;
+        try {
+            addresses = resolver.resolve(host);
+            if (addresses != null && addresses.length == 0) addresses = null;
+        } catch (UnknownHostException e) {
+            addresses = null;
+        }
+        long now = System.nanoTime();
+        return new Entry(addresses, now, now + (addresses != null ? ttlNanos : negativeTtlNanos));
+    }
+
+    private void store(String host, Entry entry) {
+        entries.put(host, entry);
+        if (entries.size() > maxEntries) {
+            long now = System.nanoTime();
+            entries.values().removeIf(e -> now - e.expiresAt >= 0);
+            // still full of live entries: drop some rather than grow without bound
+            for (String key : entries.keySet()) {
+                if (entries.size() <= maxEntries) break;
+                if (!key.equals(host)) entries.remove(key);
+            }
+        }
+    }
+
+    private static final class Entry {
+        /**
+         * The addresses, or null if the lookup failed.
+         */
+        final InetAddress[] addresses;
+        final long resolvedAt;
+        final long expiresAt;
+        final AtomicBoolean refreshing = new AtomicBoolean();
+
+        Entry(InetAddress[] addresses, long resolvedAt, long expiresAt) {
+            this.addresses = addresses;
+            this.resolvedAt = resolvedAt;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * Holds the threads that resolve in the background, which are only started once needed.
+     */
+    private static class Refresher {
+        static final ThreadPoolExecutor EXECUTOR;
+
+        static {
+            EXECUTOR = new ThreadPoolExecutor(4, 4, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "DnsCache-" + THREADS.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            EXECUTOR.allowCoreThreadTimeOut(true);
+        }
+    }
+
+    /**
+     * Looks up the addresses of a host.
+     */
+    @FunctionalInterface
+    public interface Resolver {
+
+        /**
+         * Returns the addresses of a host.
+         *
+         * @param host the host name
+         * @return the addresses, in the order they should be tried
+         * @throws UnknownHostException if the host could not be resolved
+         */
+        InetAddress[] resolve(String host) throws UnknownHostException;
+    }
+
+    /**
+     * A builder class for constructing DnsCache objects.
+     */
+    public static class Builder {
+        private long ttlNanos = TimeUnit.SECONDS.toNanos(60);
+        private long negativeTtlNanos = TimeUnit.SECONDS.toNanos(10);
+        private double refreshAhead = 0.75;
+        private int maxEntries = 1024;
+        private Resolver resolver = InetAddress::getAllByName;
+
+        /**
+         * Sets how long resolved addresses are kept. One minute by default.
+         *
+         * @param ttl the time to live
+         * @param unit the unit of ttl
+         * @return the Builder instance
+         */
+        public Builder ttl(long ttl, TimeUnit unit) {
+            if (ttl <= 0) throw new IllegalArgumentException("ttl must be positive");
+            this.ttlNanos = unit.toNanos(ttl);
+            return this;
+        }
+
+        /**
+         * Sets how long failed lookups are remembered. 10 seconds by default.
+         *
+         * @param negativeTtl the time to live, 0 to not cache failures
+         * @param unit the unit of negativeTtl
+         * @return the Builder instance
+         */
+        public Builder negativeTtl(long negativeTtl, TimeUnit unit) {
+            if (negativeTtl < 0) throw new IllegalArgumentException("negativeTtl must not be negative");
+            this.negativeTtlNanos = unit.toNanos(negativeTtl);
+            return this;
+        }
+
+        /**
+         * Sets the fraction of the TTL after which a lookup refreshes the addresses in the background. 0.75 by
+         * default; 1 disables refreshing ahead of expiry.
+         *
+         * @param refreshAhead the fraction, between 0 and 1
+         * @return the Builder instance
+         */
+        public Builder refreshAhead(double refreshAhead) {
+            if (refreshAhead < 0 || refreshAhead > 1) throw new IllegalArgumentException("refreshAhead must be between 0 and 1");
+            this.refreshAhead = refreshAhead;
+            return this;
+        }
+
+        /**
+         * Sets the number of hosts kept. 1024 by default.
+         *
+         * @param maxEntries the maximum number of hosts
+         * @return the Builder instance
+         */
+        public Builder maxEntries(int maxEntries) {
+            if (maxEntries < 1) throw new IllegalArgumentException("maxEntries must be at least 1");
+            this.maxEntries = maxEntries;
+            return this;
+        }
+
+        /**
+         * Sets how host names are resolved. {@link InetAddress#getAllByName(String)} by default.
+         *
+         * @param resolver the resolver
+         * @return the Builder instance
+         */
+        public Builder resolver(Resolver resolver) {
+            this.resolver = resolver;
+            return this;
+        }
+
+        /**
+         * Builds and returns the DnsCache.
+         *
+         * @return the constructed DnsCache
+         */
+        public DnsCache build() {
+            return new DnsCache(this);
+        }
+    }
+}
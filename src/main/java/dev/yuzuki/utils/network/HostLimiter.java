@@ -0,0 +1,280 @@
+package dev.yuzuki.utils.network;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits the requests a client sends to each host, so that bursts are smoothed out on this side instead of being
+ * answered with 429 responses. <br>
+ * Usage:
+ * <pre>
+ *     {@code
+ *     HostLimiter limiter = HostLimiter.builder()
+ *             .rate(20, 5)
+ *             .maxConcurrentRequests(8)
+ *             .maxWait(2, TimeUnit.SECONDS)
+ *             .build();
+ *     HttpClient client = HttpClient.builder().hostLimiter(limiter).build();
+ *     }
+ * </pre>
+ *
+ * Each host has a token bucket refilled at the given rate and a number of requests that may be in flight at once.
+ * A request that finds no token or no free slot waits, unless the wait would outlast its
+ * {@linkplain Request#getTimeout() timeout} or the limiter's maximum wait, in which case it fails right away with a
+ * {@link LimitExceededException} rather than after waiting for nothing.
+ * <p>
+ * The bucket is a single atomic timestamp (the generic cell rate algorithm), and the in-flight limit a semaphore,
+ * so neither takes a lock while requests get through.
+ */
+public class HostLimiter {
+    private static final long MAX_QUEUE_SLICE = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final int maxConcurrentRequests;
+    private final long maxWaitNanos;
+    private final Map<String, Host> hosts = new ConcurrentHashMap<>();
+    private final LongAdder delayed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    private HostLimiter(Builder builder) {
+        this.intervalNanos = builder.rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / builder.rate) : 0;
+        this.toleranceNanos = (builder.burst - 1) * intervalNanos;
+        this.maxConcurrentRequests = builder.maxConcurrentRequests;
+        this.maxWaitNanos = builder.maxWaitNanos;
+    }
+
+    /**
+     * Returns a new Builder instance for constructing a HostLimiter.
+     *
+     * @return a new Builder instance
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns the number of requests to a host that are currently in flight.
+     *
+     * @param host the host, with the port if it is not the default one
+     * @return the number of requests holding a slot
+     */
+    public int getInFlight(String host) {
+        Host state = hosts.get(host);
+        return state == null || state.slots == null ? 0 : maxConcurrentRequests - state.slots.availablePermits();
+    }
+
+    /**
+     * Returns the number of requests that had to wait for a token or a slot.
+     *
+     * @return the number of delayed requests
+     */
+    public long getDelayedCount() {
+        return delayed.sum();
+    }
+
+    /**
+     * Returns the number of requests that failed with a {@link LimitExceededException}.
+     *
+     * @return the number of rejected requests
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * Waits until a request may be sent to the host.
+     *
+     * @param host the host key
+     * @param call the call, whose deadline bounds the wait and whose cancellation ends it
+     * @return the permit, to be released once the response has been read
+     * @throws LimitExceededException if the request cannot be sent in time
+     * @throws IOException if the call was aborted while waiting
+     */
+    Permit acquire(String host, Call call) throws IOException {
+        Host state = hosts.computeIfAbsent(host, k -> new Host(maxConcurrentRequests));
+        long maxWait = Math.min(maxWaitNanos, call.remainingNanos());
+
+        if (intervalNanos > 0) {
+            long wait = reserve(state, maxWait);
+            if (wait < 0) throw reject(host, "Rate limit for " + host + " exceeded");
+            if (wait > 0) {
+                delayed.increment();
+                try {
+                    call.sleep(TimeUnit.NANOSECONDS.toMillis(wait) + 1);
+                } catch (IOException e) {
+                    state.refund(intervalNanos);
+                    throw e;
+                }
+            }
+        }
+        if (state.slots == null) return intervalNanos > 0 ? new Permit(state, false, intervalNanos) : Permit.NONE;
+        if (state.slots.tryAcquire()) return new Permit(state, true, intervalNanos);
+
+        delayed.increment();
+        long deadline = maxWait == Long.MAX_VALUE ? Long.MAX_VALUE : System.nanoTime() + maxWait;
+        try {
+            // in slices, so that a canceled call stops queueing
+            while (!call.isCanceled()) {
+                long remaining = deadline == Long.MAX_VALUE ? MAX_QUEUE_SLICE : deadline - System.nanoTime();
+                if (remaining <= 0) break;
+                if (state.slots.tryAcquire(Math.min(remaining, MAX_QUEUE_SLICE), TimeUnit.NANOSECONDS)) {
+                    return new Permit(state, true, intervalNanos);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            state.refund(intervalNanos);
+            throw new InterruptedIOException("Interrupted waiting for a request slot");
+        }
+        // the request is not sent, so its token goes back for the next one
+        state.refund(intervalNanos);
+        if (call.isCanceled()) throw call.abortedException();
+        throw reject(host, "Too many requests in flight to " + host);
+    }
+
+    /**
+     * Takes a token, returning how long to wait for it, or -1 without taking it if that is longer than maxWait.
+     */
+    private long reserve(Host state, long maxWait) {
+        while (true) {
+            long now = System.nanoTime();
+            long tat = state.theoreticalArrival.get();
+            long start = tat - now > 0 ? tat : now;
+            long wait = start - toleranceNanos - now;
+            if (wait > maxWait) return -1;
+            if (state.theoreticalArrival.compareAndSet(tat, start + intervalNanos)) return Math.max(0, wait);
+        }
+    }
+
+    private LimitExceededException reject(String host, String message) {
+        rejected.increment();
+        return new LimitExceededException(host, message);
+    }
+
+    private static final class Host {
+        final AtomicLong theoreticalArrival = new AtomicLong(System.nanoTime());
+        final Semaphore slots;
+
+        Host(int maxConcurrentRequests) {
+            this.slots = maxConcurrentRequests > 0 ? new Semaphore(maxConcurrentRequests) : null;
+        }
+
+        /**
+         * Gives back a token taken by {@link #reserve}, moving the next arrival time back by one interval.
+         */
+        void refund(long intervalNanos) {
+            if (intervalNanos > 0) theoreticalArrival.addAndGet(-intervalNanos);
+        }
+    }
+
+    /**
+     * The token and slot taken by a request.
+     */
+    static final class Permit {
+        static final Permit NONE = new Permit(null, false, 0);
+
+        private final Host host;
+        private final boolean holdsSlot;
+        private final long tokenNanos;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(Host host, boolean holdsSlot, long tokenNanos) {
+            this.host = host;
+            this.holdsSlot = holdsSlot;
+            this.tokenNanos = tokenNanos;
+        }
+
+        /**
+         * Returns whether the permit holds a slot, which has to be released once the response has been read.
+         */
+        boolean holdsSlot() {
+            return holdsSlot;
+        }
+
+        /**
+         * Frees the slot of a request that was sent. Only the first call to this or {@link #refund()} has an effect.
+         */
+        void release() {
+            if (holdsSlot && released.compareAndSet(false, true)) host.slots.release();
+        }
+
+        /**
+         * Frees the slot and gives back the token of a request that was not sent after all.
+         */
+        void refund() {
+            if (host != null && released.compareAndSet(false, true)) {
+                if (holdsSlot) host.slots.release();
+                host.refund(tokenNanos);
+            }
+        }
+    }
+
+    /**
+     * A builder class for constructing HostLimiter objects.
+     */
+    public static class Builder {
+        private double rate;
+        private int burst = 1;
+        private int maxConcurrentRequests;
+        private long maxWaitNanos = Long.MAX_VALUE;
+
+        /**
+         * Sets the number of requests per second each host receives on average, and how many may be sent at once
+         * after a quiet period. Unlimited by default.
+         *
+         * @param requestsPerSecond the rate, or 0 for no limit
+         * @param burst the size of the bucket, at least 1
+         * @return the Builder instance
+         */
+        public Builder rate(double requestsPerSecond, int burst) {
+            if (requestsPerSecond < 0) throw new IllegalArgumentException("rate must not be negative");
+            if (burst < 1) throw new IllegalArgumentException("burst must be at least 1");
+            this.rate = requestsPerSecond;
+            this.burst = burst;
+            return this;
+        }
+
+        /**
+         * Sets the number of requests to one host that may be in flight at once. A request holds its slot until its
+         * response has been read or closed. Unlimited by default.
+         *
+         * @param maxConcurrentRequests the limit, or 0 for none
+         * @return the Builder instance
+         */
+        public Builder maxConcurrentRequests(int maxConcurrentRequests) {
+            if (maxConcurrentRequests < 0) throw new IllegalArgumentException("maxConcurrentRequests must not be negative");
+            this.maxConcurrentRequests = maxConcurrentRequests;
+            return this;
+        }
+
+        /**
+         * Sets the longest a request waits for a token or a slot. By default only the request's timeout bounds it.
+         *
+         * @param maxWait the longest wait, 0 to never wait
+         * @param unit the unit of maxWait
+         * @return the Builder instance
+         */
+        public Builder maxWait(long maxWait, TimeUnit unit) {
+            if (maxWait < 0) throw new IllegalArgumentException("maxWait must not be negative");
+            this.maxWaitNanos = unit.toNanos(maxWait);
+            return this;
+        }
+
+        /**
+         * Builds and returns the HostLimiter.
+         *
+         * @return the constructed HostLimiter
+         */
+        public HostLimiter build() {
+            return new HostLimiter(this);
+        }
+    }
+}
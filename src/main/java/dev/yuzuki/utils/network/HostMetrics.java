@@ -0,0 +1,107 @@
+package dev.yuzuki.utils.network;
+
+import dev.yuzuki.utils.LatencyHistogram;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live counters for the requests to one host.
+ */
+final class HostMetrics {
+    private final String host;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LatencyHistogram timeToFirstByte = new LatencyHistogram();
+    private final LongAdder poolWaits = new LongAdder();
+    private final AtomicLong maxPoolWaitNanos = new AtomicLong();
+    private final LatencyHistogram poolWait = new LatencyHistogram();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LatencyHistogram responseSize = new LatencyHistogram();
+    private final Map<Integer, LongAdder> statusCodes = new ConcurrentHashMap<>();
+    private final LongAdder decodes = new LongAdder();
+    private final LongAdder decodeNanos = new LongAdder();
+    private final LatencyHistogram decode = new LatencyHistogram();
+
+    HostMetrics(String host) {
+        this.host = host;
+    }
+
+    void record(int code, RequestTimings timings, boolean failed) {
+        requests.increment();
+        if (failed) {
+            failures.increment();
+        } else {
+            statusCodes.computeIfAbsent(code, k -> new LongAdder()).increment();
+            responseSize.record(timings.getBytesReceived());
+        }
+        long nanos = timings.getTotalNanos();
+        totalNanos.add(nanos);
+        latency.record(nanos);
+        updateMax(maxNanos, nanos);
+        if (timings.getExchanges() > 0) timeToFirstByte.record(timings.getTimeToFirstByteNanos());
+        long waited = timings.getPoolWaitNanos();
+        if (waited > 0) {
+            poolWaits.increment();
+            poolWait.record(waited);
+            updateMax(maxPoolWaitNanos, waited);
+        }
+        bytesSent.add(timings.getBytesSent());
+        bytesReceived.add(timings.getBytesReceived());
+    }
+
+    /**
+     * Records a response body being converted, which happens after the request was recorded as finished.
+     */
+    void recordDecode(long nanos) {
+        decodes.increment();
+        decodeNanos.add(nanos);
+        decode.record(nanos);
+    }
+
+    HostMetricsSnapshot snapshot() {
+        // percentiles report the top of their bucket, which may lie above the largest recorded value
+        long max = maxNanos.get();
+        long maxPoolWait = maxPoolWaitNanos.get();
+        Map<Integer, Long> codes = new TreeMap<>();
+        for (Map.Entry<Integer, LongAdder> code : statusCodes.entrySet()) codes.put(code.getKey(), code.getValue().sum());
+        return new HostMetricsSnapshot(
+                host,
+                requests.sum(),
+                failures.sum(),
+                totalNanos.sum(),
+                max,
+                Math.min(max, latency.percentile(50)),
+                Math.min(max, latency.percentile(90)),
+                Math.min(max, latency.percentile(99)),
+                timeToFirstByte.percentile(50),
+                timeToFirstByte.percentile(99),
+                poolWaits.sum(),
+                maxPoolWait,
+                Math.min(maxPoolWait, poolWait.percentile(99)),
+                bytesSent.sum(),
+                bytesReceived.sum(),
+                responseSize.percentile(50),
+                responseSize.percentile(99),
+                codes,
+                decodes.sum(),
+                decodeNanos.sum(),
+                decode.percentile(50),
+                decode.percentile(99)
+        );
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) return;
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package dev.yuzuki.utils.network;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A point-in-time copy of the request metrics of one host.
+ * Latencies are in nanoseconds and sizes in bytes; percentiles are accurate to within 12.5%.
+ */
+public class HostMetricsSnapshot {
+    private final String host;
+    private final long requests;
+    private final long failures;
+    private final long totalNanos;
+    private final long maxNanos;
+    private final long p50Nanos;
+    private final long p90Nanos;
+    private final long p99Nanos;
+    private final long p50TimeToFirstByteNanos;
+    private final long p99TimeToFirstByteNanos;
+    private final long poolWaits;
+    private final long maxPoolWaitNanos;
+    private final long p99PoolWaitNanos;
+    private final long bytesSent;
+    private final long bytesReceived;
+    private final long p50ResponseBytes;
+    private final long p99ResponseBytes;
+    private final Map<Integer, Long> statusCodes;
+    private final long decodes;
+    private final long totalDecodeNanos;
+    private final long p50DecodeNanos;
+    private final long p99DecodeNanos;
+
+    HostMetricsSnapshot(String host, long requests, long failures, long totalNanos, long maxNanos,
+                        long p50Nanos, long p90Nanos, long p99Nanos,
+                        long p50TimeToFirstByteNanos, long p99TimeToFirstByteNanos,
+                        long poolWaits, long maxPoolWaitNanos, long p99PoolWaitNanos,
+                        long bytesSent, long bytesReceived, long p50ResponseBytes, long p99ResponseBytes,
+                        Map<Integer, Long> statusCodes,
+                        long decodes, long totalDecodeNanos, long p50DecodeNanos, long p99DecodeNanos) {
+        this.host = host;
+        this.requests = requests;
+        this.failures = failures;
+        this.totalNanos = totalNanos;
+        this.maxNanos = maxNanos;
+        this.p50Nanos = p50Nanos;
+        this.p90Nanos = p90Nanos;
+        this.p99Nanos = p99Nanos;
+        this.p50TimeToFirstByteNanos = p50TimeToFirstByteNanos;
+        this.p99TimeToFirstByteNanos = p99TimeToFirstByteNanos;
+        this.poolWaits = poolWaits;
+        this.maxPoolWaitNanos = maxPoolWaitNanos;
+        this.p99PoolWaitNanos = p99PoolWaitNanos;
+        this.bytesSent = bytesSent;
+        this.bytesReceived = bytesReceived;
+        this.p50ResponseBytes = p50ResponseBytes;
+        this.p99ResponseBytes = p99ResponseBytes;
+        this.statusCodes = Collections.unmodifiableMap(statusCodes);
+        this.decodes = decodes;
+        this.totalDecodeNanos = totalDecodeNanos;
+        this.p50DecodeNanos = p50DecodeNanos;
+        this.p99DecodeNanos = p99DecodeNanos;
+    }
+
+    /**
+     * Returns the host, with the port if it is not the default one.
+     *
+     * @return the host
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * Returns the number of finished requests, including failed ones.
+     *
+     * @return the request count
+     */
+    public long getRequests() {
+        return requests;
+    }
+
+    /**
+     * Returns the number of requests that failed without a response.
+     *
+     * @return the failure count
+     */
+    public long getFailures() {
+        return failures;
+    }
+
+    /**
+     * Returns the mean request time.
+     *
+     * @return the mean time in nanoseconds, or 0 if there were no requests
+     */
+    public long getMeanNanos() {
+        return requests == 0 ? 0 : totalNanos / requests;
+    }
+
+    /**
+     * Returns the longest request time.
+     *
+     * @return the maximum time in nanoseconds
+     */
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * Returns the median request time.
+     *
+     * @return the 50th percentile in nanoseconds
+     */
+    public long getP50Nanos() {
+        return p50Nanos;
+    }
+
+    /**
+     * Returns the 90th percentile request time.
+     *
+     * @return the 90th percentile in nanoseconds
+     */
+    public long getP90Nanos() {
+        return p90Nanos;
+    }
+
+    /**
+     * Returns the 99th percentile request time.
+     *
+     * @return the 99th percentile in nanoseconds
+     */
+    public long getP99Nanos() {
+        return p99Nanos;
+    }
+
+    /**
+     * Returns the median time the server took to start answering.
+     *
+     * @return the 50th percentile time to first byte in nanoseconds
+     */
+    public long getP50TimeToFirstByteNanos() {
+        return p50TimeToFirstByteNanos;
+    }
+
+    /**
+     * Returns the 99th percentile time the server took to start answering.
+     *
+     * @return the 99th percentile time to first byte in nanoseconds
+     */
+    public long getP99TimeToFirstByteNanos() {
+        return p99TimeToFirstByteNanos;
+    }
+
+    /**
+     * Returns the number of requests that waited for a pooled connection.
+     *
+     * @return the number of requests that waited
+     */
+    public long getPoolWaits() {
+        return poolWaits;
+    }
+
+    /**
+     * Returns the longest time a request waited for a pooled connection.
+     *
+     * @return the maximum pool wait in nanoseconds
+     */
+    public long getMaxPoolWaitNanos() {
+        return maxPoolWaitNanos;
+    }
+
+    /**
+     * Returns the 99th percentile time requests that waited for a pooled connection waited.
+     *
+     * @return the 99th percentile pool wait in nanoseconds
+     */
+    public long getP99PoolWaitNanos() {
+        return p99PoolWaitNanos;
+    }
+
+    /**
+     * Returns the number of bytes sent in request heads and bodies.
+     *
+     * @return the bytes sent
+     */
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * Returns the number of response body bytes received, before decompression.
+     *
+     * @return the bytes received
+     */
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /**
+     * Returns the median response body size.
+     *
+     * @return the 50th percentile size in bytes
+     */
+    public long getP50ResponseBytes() {
+        return p50ResponseBytes;
+    }
+
+    /**
+     * Returns the 99th percentile response body size.
+     *
+     * @return the 99th percentile size in bytes
+     */
+    public long getP99ResponseBytes() {
+        return p99ResponseBytes;
+    }
+
+    /**
+     * Returns how many responses had each status code.
+     *
+     * @return an unmodifiable map of status codes to counts, in ascending order of code
+     */
+    public Map<Integer, Long> getStatusCodes() {
+        return statusCodes;
+    }
+
+    /**
+     * Returns how many response bodies were converted, such as to text or an image. A response converted twice
+     * counts twice, and one never converted not at all.
+     *
+     * @return the number of conversions
+     */
+    public long getDecodes() {
+        return decodes;
+    }
+
+    /**
+     * Returns the mean time a conversion took.
+     *
+     * @return the mean decode time in nanoseconds, or 0 if nothing was converted
+     */
+    public long getMeanDecodeNanos() {
+        return decodes == 0 ? 0 : totalDecodeNanos / decodes;
+    }
+
+    /**
+     * Returns the median time a conversion took.
+     *
+     * @return the median decode time in nanoseconds
+     */
+    public long getP50DecodeNanos() {
+        return p50DecodeNanos;
+    }
+
+    /**
+     * Returns the 99th percentile of the time a conversion took.
+     *
+     * @return the 99th percentile decode time in nanoseconds
+     */
+    public long getP99DecodeNanos() {
+        return p99DecodeNanos;
+    }
+
+    @Override
+    public String toString() {
+        return host + ": requests=" + requests + ", failures=" + failures + ", mean=" + getMeanNanos()
+                + "ns, p50=" + p50Nanos + "ns, p99=" + p99Nanos + "ns, max=" + maxNanos + "ns, meanDecode=" + getMeanDecodeNanos() + "ns, statusCodes=" + statusCodes;
+    }
+}
@@ -0,0 +1,765 @@
+package dev.yuzuki.utils.network;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.*;
+import java.net.Authenticator;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.PasswordAuthentication;
+import java.net.ProtocolException;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sends HTTP/1.1 requests over pooled keep-alive connections.
+ * <p>
+ * Requests go through the proxy the {@link ProxySelector} picks, as HttpURLConnection's did: plain HTTP requests are
+ * forwarded by an HTTP proxy, HTTPS requests are tunneled through it with CONNECT, and SOCKS proxies relay the
+ * connection. A proxy asking for Basic credentials gets them from the default {@link Authenticator}.
+ */
+final class Http1Transport implements HttpTransport {
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+    private static final int MAX_HEADER_COUNT = 256;
+    // the schemes HttpURLConnection refuses to answer on a CONNECT tunnel, set in the JDK's net.properties
+    private static final String TUNNELING_DISABLED_SCHEMES = "jdk.http.auth.tunneling.disabledSchemes";
+
+    private final ConnectionPool pool;
+    private final SSLSocketFactory sslSocketFactory;
+    private final ProxySelector proxySelector;
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final DnsCache dnsCache;
+    // Proxy-Authorization values that were accepted, sent up front on later requests to the same proxy
+    private final Map<InetSocketAddress, String> proxyAuthorizations = new ConcurrentHashMap<>();
+
+    Http1Transport(ConnectionPool pool, SSLSocketFactory sslSocketFactory, ProxySelector proxySelector, DnsCache dnsCache,
+                   int connectTimeout, int readTimeout) {
+        this.pool = pool;
+        this.sslSocketFactory = sslSocketFactory;
+        this.proxySelector = proxySelector;
+        this.dnsCache = dnsCache;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * Sends a request and reads the response head. The body is left on the connection, which goes back to the pool
+     * once the body has been read to the end or closed.
+     */
+    @Override
+    public RawResponse execute(Call call, String method, URL url, Map<String, String> headers, RequestBody body) throws IOException {
+        Address address = Address.of(url);
+        address = address.via(selectProxy(address));
+        InetSocketAddress proxyAddress = address.isForwarded() ? (InetSocketAddress) address.proxy.address() : null;
+        String proxyAuthorization = proxyAddress != null ? proxyAuthorizations.get(proxyAddress) : null;
+        byte[] head = encodeHead(method, url, address, headers, body, proxyAuthorization);
+        boolean closeRequested = "close".equalsIgnoreCase(headers.get("Connection"));
+        boolean proxyAuthenticated = false;
+
+        while (true) {
+            if (call.isCanceled()) throw call.abortedException();
+            HttpConnection connection;
+            long acquireStart = System.nanoTime();
+            long connecting = call.dnsNanos + call.connectNanos + call.tlsNanos;
+            try {
+                connection = pool.acquire(address, connectTimeout, call, a -> connect(a, call));
+            } catch (IOException e) {
+                throw aborted(call, e);
+            }
+            // opening a new connection is accounted to its own phases
+            call.poolWaitNanos += System.nanoTime() - acquireStart - (call.dnsNanos + call.connectNanos + call.tlsNanos - connecting);
+            boolean reused = connection.exchanges > 0;
+            boolean responded = false;
+            try {
+                call.attach(connection);
+                connection.setReadTimeout(readTimeout);
+                long sendStart = System.nanoTime();
+                connection.out.write(head);
+                long sent = head.length;
+                if (body != null) sent += writeBody(body, connection.out);
+                connection.out.flush();
+                long sentAt = System.nanoTime();
+                call.sendNanos += sentAt - sendStart;
+                call.bytesSent += sent;
+
+                // a reused connection the server closed while idle fails here, before any response byte
+                connection.in.mark(1);
+                if (connection.in.read() == -1) throw new EOFException("Connection closed by " + address);
+                connection.in.reset();
+                responded = true;
+                call.respondedAt = System.nanoTime();
+                call.timeToFirstByteNanos += call.respondedAt - sentAt;
+                call.exchanges++;
+            } catch (IOException e) {
+                call.detach(connection);
+                pool.release(connection, false);
+                if (reused && !responded && isStale(e) && !call.isCanceled() && Request.isIdempotent(method)
+                        && (body == null || body.isRepeatable())) {
+                    continue;
+                }
+                throw aborted(call, e);
+            }
+
+            RawResponse response;
+            try {
+                response = readResponse(call, connection, method, closeRequested);
+            } catch (IOException e) {
+                call.detach(connection);
+                pool.release(connection, false);
+                throw aborted(call, e);
+            } catch (RuntimeException e) {
+                call.detach(connection);
+                pool.release(connection, false);
+                throw e;
+            }
+            if (proxyAddress != null && proxyAuthorization != null) {
+                if (response.code != 407) proxyAuthorizations.put(proxyAddress, proxyAuthorization);
+                else proxyAuthorizations.remove(proxyAddress, proxyAuthorization);
+            }
+            if (response.code == 407 && proxyAddress != null && !proxyAuthenticated
+                    && (body == null || body.isRepeatable()) && !containsHeader(headers, "Proxy-Authorization")) {
+                proxyAuthorization = authenticate(response.headers, proxyAddress, url, false);
+                if (proxyAuthorization != null) {
+                    response.discard();
+                    proxyAuthenticated = true;
+                    head = encodeHead(method, url, address, headers, body, proxyAuthorization);
+                    continue;
+                }
+            }
+            return response;
+        }
+    }
+
+    /**
+     * Picks the proxy for an address, {@link Proxy#NO_PROXY} if the selector has none or picks a direct connection.
+     */
+    private Proxy selectProxy(Address address) throws IOException {
+        ProxySelector selector = proxySelector();
+        if (selector == null) return Proxy.NO_PROXY;
+        List<Proxy> proxies = selector.select(uri(address));
+        if (proxies == null || proxies.isEmpty()) return Proxy.NO_PROXY;
+        Proxy proxy = proxies.get(0);
+        // a proxy needs an InetSocketAddress to be connected to
+        if (proxy.type() == Proxy.Type.DIRECT || !(proxy.address() instanceof InetSocketAddress)) return Proxy.NO_PROXY;
+        return proxy;
+    }
+
+    private ProxySelector proxySelector() {
+        return proxySelector != null ? proxySelector : ProxySelector.getDefault();
+    }
+
+    private static URI uri(Address address) throws IOException {
+        String host = address.host.startsWith("[") ? address.host.substring(1, address.host.length() - 1) : address.host;
+        try {
+            return new URI(address.secure ? "https" : "http", null, host, address.port, null, null, null);
+        } catch (URISyntaxException e) {
+            throw new IOException("Invalid host: " + address.host, e);
+        }
+    }
+
+    private static boolean containsHeader(Map<String, String> headers, String name) {
+        for (String key : headers.keySet()) {
+            if (name.equalsIgnoreCase(key)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Asks the default {@link Authenticator} for Basic credentials to answer a proxy's 407 challenge.
+     *
+     * @return the Proxy-Authorization value, or null if the proxy does not accept Basic or there are no credentials
+     */
+    private static String authenticate(Map<String, List<String>> headers, InetSocketAddress proxyAddress, URL url, boolean tunnel) {
+        if (tunnel) {
+            String disabled = System.getProperty(TUNNELING_DISABLED_SCHEMES, "Basic");
+            for (String scheme : disabled.split(",")) {
+                if (scheme.trim().equalsIgnoreCase("Basic")) return null;
+            }
+        }
+        List<String> challenges = headers.get("Proxy-Authenticate");
+        if (challenges == null) return null;
+        for (String challenge : challenges) {
+            if (!challenge.regionMatches(true, 0, "Basic", 0, 5)) continue;
+            PasswordAuthentication credentials = Authenticator.requestPasswordAuthentication(
+                    proxyAddress.getHostString(), proxyAddress.getAddress(), proxyAddress.getPort(), url.getProtocol(),
+                    realm(challenge), "Basic", url, Authenticator.RequestorType.PROXY);
+            if (credentials == null) return null;
+            String userPass = credentials.getUserName() + ":" + new String(credentials.getPassword());
+            return "Basic " + Base64.getEncoder().encodeToString(userPass.getBytes(StandardCharsets.UTF_8));
+        }
+        return null;
+    }
+
+    private static String realm(String challenge) {
+        int start = challenge.toLowerCase(Locale.ROOT).indexOf("realm=");
+        if (start < 0) return "";
+        start += 6;
+        if (start < challenge.length() && challenge.charAt(start) == '"') {
+            int end = challenge.indexOf('"', start + 1);
+            return end < 0 ? challenge.substring(start + 1) : challenge.substring(start + 1, end);
+        }
+        int end = challenge.indexOf(',', start);
+        return (end < 0 ? challenge.substring(start) : challenge.substring(start, end)).trim();
+    }
+
+    /**
+     * Returns whether an exception is how a connection the server closed while it was idle fails: end of stream or a
+     * reset, but not a timeout, which means the server may still be working on the request.
+     */
+    private static boolean isStale(IOException e) {
+        return e instanceof EOFException || e instanceof SocketException;
+    }
+
+    /**
+     * Replaces the exception caused by closing the socket of an aborted call with one that says why it was aborted.
+     */
+    static IOException aborted(Call call, IOException e) {
+        if (!call.isCanceled()) return e;
+        IOException aborted = call.abortedException();
+        aborted.initCause(e);
+        return aborted;
+    }
+
+    private RawResponse readResponse(Call call, HttpConnection connection, String method, boolean closeRequested) throws IOException {
+        String statusLine;
+        int code;
+        do {
+            statusLine = readLine(connection.in);
+            code = parseCode(statusLine);
+            if (code >= 200 || code == 101) break;
+            // skip interim responses such as 100 Continue
+            readHeaders(connection.in);
+        } while (true);
+
+        String message = statusLine.length() > 13 ? statusLine.substring(13) : "";
+        Map<String, List<String>> headers = readHeaders(connection.in);
+        boolean keepAlive = !closeRequested && keepAlive(statusLine, headers);
+
+        InputStream body;
+        String transferEncoding = first(headers, "Transfer-Encoding");
+        String contentLength = first(headers, "Content-Length");
+        if (method.equals("HEAD") || code == 204 || code == 304 || code == 101) {
+            body = new FixedLengthInputStream(call, connection, keepAlive && code != 101, 0);
+        } else if (transferEncoding != null && transferEncoding.toLowerCase(Locale.ROOT).endsWith("chunked")) {
+            body = new ChunkedInputStream(call, connection, keepAlive);
+        } else if (contentLength != null) {
+            long length;
+            try {
+                length = Long.parseLong(contentLength.trim());
+            } catch (NumberFormatException e) {
+                throw new ProtocolException("Invalid Content-Length: " + contentLength);
+            }
+            if (length < 0) throw new ProtocolException("Invalid Content-Length: " + contentLength);
+            body = new FixedLengthInputStream(call, connection, keepAlive, length);
+        } else {
+            body = new UntilCloseInputStream(call, connection);
+        }
+        return new RawResponse(code, message, headers, body);
+    }
+
+    private HttpConnection connect(Address address, Call call) throws IOException {
+        String host = address.host.startsWith("[") ? address.host.substring(1, address.host.length() - 1) : address.host;
+        Proxy proxy = address.proxy;
+        Socket socket;
+        if (proxy.type() == Proxy.Type.HTTP) {
+            InetSocketAddress proxyAddress = (InetSocketAddress) proxy.address();
+            socket = connectToProxy(address, proxyAddress.getHostString(), proxyAddress.getPort(), call);
+            if (address.secure) socket = tunnel(address, socket, call);
+        } else if (proxy.type() == Proxy.Type.SOCKS) {
+            // the proxy resolves the host, so an unresolved address is passed on
+            long start = System.nanoTime();
+            socket = new Socket(proxy);
+            try {
+                call.attach(socket);
+                socket.setTcpNoDelay(true);
+                socket.connect(InetSocketAddress.createUnresolved(host, address.port), connectTimeout);
+            } catch (IOException | RuntimeException e) {
+                call.detach(socket);
+                socket.close();
+                if (e instanceof IOException && !call.isCanceled()) connectFailed(address, (IOException) e);
+                throw e;
+            } finally {
+                call.connectNanos += System.nanoTime() - start;
+            }
+        } else {
+            socket = openSocket(host, address.port, call);
+        }
+        long connected = System.nanoTime();
+        try {
+            if (address.secure) {
+                SSLSocket ssl = (SSLSocket) sslSocketFactory.createSocket(socket, host, address.port, true);
+                SSLParameters parameters = ssl.getSSLParameters();
+                parameters.setEndpointIdentificationAlgorithm("HTTPS");
+                ssl.setSSLParameters(parameters);
+                ssl.setSoTimeout(readTimeout);
+                socket = ssl;
+                call.attach(socket);
+                ssl.startHandshake();
+                call.tlsNanos += System.nanoTime() - connected;
+            }
+            return new HttpConnection(address, socket);
+        } catch (IOException | RuntimeException e) {
+            call.detach(socket);
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Connects to a host, trying each of its addresses in turn.
+     */
+    private Socket openSocket(String host, int port, Call call) throws IOException {
+        long start = System.nanoTime();
+        InetAddress[] addresses = dnsCache != null ? dnsCache.resolve(host) : InetAddress.getAllByName(host);
+        long resolved = System.nanoTime();
+        call.dnsNanos += resolved - start;
+
+        for (int i = 0; ; i++) {
+            Socket attempt = new Socket();
+            try {
+                call.attach(attempt);
+                attempt.setTcpNoDelay(true);
+                attempt.connect(new InetSocketAddress(addresses[i], port), connectTimeout);
+                call.connectNanos += System.nanoTime() - resolved;
+                return attempt;
+            } catch (IOException | RuntimeException e) {
+                call.detach(attempt);
+                attempt.close();
+                // a host with several addresses is tried on the next one, unless the call was aborted
+                if (i + 1 == addresses.length || call.isCanceled() || !(e instanceof IOException)) {
+                    call.connectNanos += System.nanoTime() - resolved;
+                    // none of the cached addresses answers, so the host may have moved
+                    if (dnsCache != null && !call.isCanceled()) dnsCache.invalidate(host);
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private Socket connectToProxy(Address address, String proxyHost, int proxyPort, Call call) throws IOException {
+        try {
+            return openSocket(proxyHost, proxyPort, call);
+        } catch (IOException e) {
+            if (!call.isCanceled()) connectFailed(address, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Tells the selector that the proxy it picked for an address cannot be reached.
+     */
+    private void connectFailed(Address address, IOException e) {
+        ProxySelector selector = proxySelector();
+        if (selector == null) return;
+        try {
+            selector.connectFailed(uri(address), address.proxy.address(), e);
+        } catch (IOException | RuntimeException ignored) {
+            // the selector only learns from this, the request fails with the original exception either way
+        }
+    }
+
+    /**
+     * Opens a CONNECT tunnel through an HTTP proxy, over which the TLS session is then set up with the host.
+     * If the proxy asks for credentials, the tunnel is requested once more on a new connection.
+     */
+    private Socket tunnel(Address address, Socket socket, Call call) throws IOException {
+        InetSocketAddress proxyAddress = (InetSocketAddress) address.proxy.address();
+        String target = address.host + ":" + address.port;
+        String authorization = proxyAuthorizations.get(proxyAddress);
+        boolean authenticated = false;
+        long start = System.nanoTime();
+        try {
+            while (true) {
+                StringBuilder request = new StringBuilder(128)
+                        .append("CONNECT ").append(target).append(" HTTP/1.1\r\n")
+                        .append("Host: ").append(target).append("\r\n");
+                if (authorization != null) request.append("Proxy-Authorization: ").append(authorization).append("\r\n");
+                request.append("\r\n");
+                socket.setSoTimeout(readTimeout);
+                OutputStream out = socket.getOutputStream();
+                out.write(request.toString().getBytes(StandardCharsets.ISO_8859_1));
+                out.flush();
+
+                // read unbuffered, since whatever follows the response belongs to the TLS handshake
+                InputStream in = socket.getInputStream();
+                String statusLine = readLine(in);
+                int code = parseCode(statusLine);
+                Map<String, List<String>> headers = readHeaders(in);
+                if (code == 200) {
+                    if (in.available() > 0) throw new ProtocolException("Proxy sent data after its CONNECT response");
+                    if (authenticated) proxyAuthorizations.put(proxyAddress, authorization);
+                    return socket;
+                }
+                if (code == 407 && !authenticated) {
+                    URL url = uri(address).toURL();
+                    authorization = authenticate(headers, proxyAddress, url, true);
+                    if (authorization != null) {
+                        authenticated = true;
+                        call.detach(socket);
+                        socket.close();
+                        socket = connectToProxy(address, proxyAddress.getHostString(), proxyAddress.getPort(), call);
+                        continue;
+                    }
+                }
+                throw new IOException("Unable to tunnel through proxy. Proxy returns \"" + statusLine + "\"");
+            }
+        } catch (IOException | RuntimeException e) {
+            call.detach(socket);
+            socket.close();
+            throw e;
+        } finally {
+            call.connectNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Writes the body, returning the number of body bytes written.
+     */
+    private static long writeBody(RequestBody body, OutputStream out) throws IOException {
+        long length = body.contentLength();
+        if (length < 0) {
+            ChunkedOutputStream chunked = new ChunkedOutputStream(out);
+            body.writeTo(chunked);
+            chunked.finish();
+            return chunked.written;
+        } else {
+            FixedLengthOutputStream fixed = new FixedLengthOutputStream(out, length);
+            body.writeTo(fixed);
+            if (fixed.remaining != 0) {
+                throw new ProtocolException("Request body is " + fixed.remaining + " bytes shorter than its Content-Length");
+            }
+            return length;
+        }
+    }
+
+    private static byte[] encodeHead(String method, URL url, Address address, Map<String, String> headers, RequestBody body,
+                                     String proxyAuthorization) {
+        String target = url.getFile().isEmpty() ? "/" : url.getFile();
+        // a proxy that forwards the request needs to know where to, so it gets the absolute form
+        if (address.isForwarded()) target = "http://" + address.hostHeader() + target;
+        if (!isToken(method)) throw new IllegalArgumentException("Invalid method: " + method);
+        checkValue("request target", target);
+        StringBuilder head = new StringBuilder(256);
+        head.append(method).append(' ').append(target).append(" HTTP/1.1\r\n");
+        boolean hostSet = false;
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            String name = header.getKey();
+            if (name == null || !isToken(name)) throw new IllegalArgumentException("Invalid header name: " + name);
+            checkValue(name + " header", header.getValue());
+            if (name.equalsIgnoreCase("Content-Length") || name.equalsIgnoreCase("Transfer-Encoding")) continue;
+            if (name.equalsIgnoreCase("Host")) hostSet = true;
+            head.append(name).append(": ").append(header.getValue()).append("\r\n");
+        }
+        if (!hostSet) head.append("Host: ").append(address.hostHeader()).append("\r\n");
+        if (proxyAuthorization != null && !containsHeader(headers, "Proxy-Authorization")) {
+            head.append("Proxy-Authorization: ").append(proxyAuthorization).append("\r\n");
+        }
+        if (body != null) {
+            long length = body.contentLength();
+            if (length < 0) head.append("Transfer-Encoding: chunked\r\n");
+            else head.append("Content-Length: ").append(length).append("\r\n");
+        }
+        head.append("\r\n");
+        return head.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Returns whether a method or header name is an RFC 9110 token, which cannot end the line it is written on.
+     */
+    private static boolean isToken(String value) {
+        if (value == null || value.isEmpty()) return false;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            boolean valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || "!#$%&'*+-.^_`|~".indexOf(c) >= 0;
+            if (!valid) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Rejects a value that would end the line it is written on, smuggling in more headers or a whole request, or that
+     * cannot be sent as ISO-8859-1.
+     */
+    private static void checkValue(String what, String value) {
+        if (value == null) return;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\r' || c == '\n' || c == 0) {
+                throw new IllegalArgumentException("Invalid " + what + ": contains a line break or NUL character");
+            }
+            if (c > 0xFF) {
+                throw new IllegalArgumentException("Invalid " + what + ": contains a character outside ISO-8859-1");
+            }
+        }
+    }
+
+    private static int parseCode(String statusLine) throws ProtocolException {
+        if (!statusLine.startsWith("HTTP/1.") || statusLine.length() < 12) {
+            throw new ProtocolException("Unexpected status line: " + statusLine);
+        }
+        try {
+            return Integer.parseInt(statusLine.substring(9, 12));
+        } catch (NumberFormatException e) {
+            throw new ProtocolException("Unexpected status line: " + statusLine);
+        }
+    }
+
+    private static boolean keepAlive(String statusLine, Map<String, List<String>> headers) {
+        String connection = first(headers, "Connection");
+        if (statusLine.startsWith("HTTP/1.0")) {
+            return connection != null && connection.toLowerCase(Locale.ROOT).contains("keep-alive");
+        }
+        return connection == null || !connection.toLowerCase(Locale.ROOT).contains("close");
+    }
+
+    private static Map<String, List<String>> readHeaders(InputStream in) throws IOException {
+        Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        String line;
+        int count = 0;
+        while (!(line = readLine(in)).isEmpty()) {
+            if (++count > MAX_HEADER_COUNT) throw new ProtocolException("Too many response headers");
+            int colon = line.indexOf(':');
+            if (colon <= 0) throw new ProtocolException("Malformed header: " + line);
+            headers.computeIfAbsent(line.substring(0, colon).trim(), k -> new ArrayList<>(1))
+                    .add(line.substring(colon + 1).trim());
+        }
+        return headers;
+    }
+
+    private static String first(Map<String, List<String>> headers, String name) {
+        List<String> values = headers.get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    /**
+     * Reads a CRLF (or bare LF) terminated line of ISO-8859-1 text.
+     */
+    static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder(64);
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b == -1) throw new EOFException("Unexpected end of stream");
+            if (line.length() >= MAX_LINE_LENGTH) throw new ProtocolException("Line too long");
+            line.append((char) b);
+        }
+        int length = line.length();
+        if (length > 0 && line.charAt(length - 1) == '\r') line.setLength(length - 1);
+        return line.toString();
+    }
+
+    /**
+     * Passes a request body through to the connection, making sure it matches the announced Content-Length.
+     */
+    private static final class FixedLengthOutputStream extends OutputStream {
+        private final OutputStream out;
+        long remaining;
+
+        FixedLengthOutputStream(OutputStream out, long length) {
+            this.out = out;
+            this.remaining = length;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (remaining == 0) throw new ProtocolException("Request body is longer than its Content-Length");
+            out.write(b);
+            remaining--;
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            if (length > remaining) throw new ProtocolException("Request body is longer than its Content-Length");
+            out.write(buffer, offset, length);
+            remaining -= length;
+        }
+    }
+
+    /**
+     * Writes a request body of unknown length with chunked transfer encoding.
+     */
+    private static final class ChunkedOutputStream extends OutputStream {
+        private static final byte[] CRLF = {'\r', '\n'};
+        private static final byte[] LAST_CHUNK = {'0', '\r', '\n', '\r', '\n'};
+
+        private final OutputStream out;
+        long written;
+
+        ChunkedOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) return;
+            out.write(Integer.toHexString(length).getBytes(StandardCharsets.US_ASCII));
+            out.write(CRLF);
+            out.write(buffer, offset, length);
+            out.write(CRLF);
+            written += length;
+        }
+
+        void finish() throws IOException {
+            out.write(LAST_CHUNK);
+        }
+    }
+
+    /**
+     * A response body read straight from the connection. The connection is returned to the pool for reuse when the
+     * body ends and is dropped when the body is closed early.
+     */
+    private abstract class BodyInputStream extends InputStream {
+        final Call call;
+        final HttpConnection connection;
+        final InputStream in;
+        private final boolean keepAlive;
+        private boolean released;
+
+        BodyInputStream(Call call, HttpConnection connection, boolean keepAlive) {
+            this.call = call;
+            this.connection = connection;
+            this.in = connection.in;
+            this.keepAlive = keepAlive;
+        }
+
+        /**
+         * Called once the whole body has been read.
+         */
+        final void endOfBody() {
+            if (released) return;
+            released = true;
+            connection.exchanges++;
+            call.detach(connection);
+            pool.release(connection, keepAlive);
+        }
+
+        final boolean isReleased() {
+            return released;
+        }
+
+        @Override
+        public final int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public final int read(byte[] buffer, int offset, int length) throws IOException {
+            if (released) return -1;
+            if (length == 0) return 0;
+            try {
+                int read = readBody(buffer, offset, length);
+                if (read > 0) call.bytesReceived += read;
+                return read;
+            } catch (IOException e) {
+                close();
+                throw aborted(call, e);
+            } catch (RuntimeException e) {
+                close();
+                throw e;
+            }
+        }
+
+        abstract int readBody(byte[] buffer, int offset, int length) throws IOException;
+
+        @Override
+        public void close() {
+            if (released) return;
+            released = true;
+            call.detach(connection);
+            pool.release(connection, false);
+        }
+    }
+
+    private final class FixedLengthInputStream extends BodyInputStream {
+        private long remaining;
+
+        FixedLengthInputStream(Call call, HttpConnection connection, boolean keepAlive, long length) {
+            super(call, connection, keepAlive);
+            this.remaining = length;
+            if (length == 0) endOfBody();
+        }
+
+        @Override
+        int readBody(byte[] buffer, int offset, int length) throws IOException {
+            int read = in.read(buffer, offset, (int) Math.min(length, remaining));
+            if (read == -1) throw new EOFException("Connection closed with " + remaining + " bytes of the body left");
+            remaining -= read;
+            if (remaining == 0) endOfBody();
+            return read;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return isReleased() ? 0 : (int) Math.min(in.available(), remaining);
+        }
+    }
+
+    private final class ChunkedInputStream extends BodyInputStream {
+        private long chunkRemaining;
+
+        ChunkedInputStream(Call call, HttpConnection connection, boolean keepAlive) {
+            super(call, connection, keepAlive);
+        }
+
+        @Override
+        int readBody(byte[] buffer, int offset, int length) throws IOException {
+            if (chunkRemaining == 0) {
+                String line = readLine(in);
+                int extension = line.indexOf(';');
+                try {
+                    chunkRemaining = Long.parseLong((extension == -1 ? line : line.substring(0, extension)).trim(), 16);
+                } catch (NumberFormatException e) {
+                    throw new ProtocolException("Invalid chunk size: " + line);
+                }
+                if (chunkRemaining < 0) throw new ProtocolException("Invalid chunk size: " + line);
+                if (chunkRemaining == 0) {
+                    // skip the trailers
+                    while (!readLine(in).isEmpty()) {
+                        // discard
+                    }
+                    endOfBody();
+                    return -1;
+                }
+            }
+            int read = in.read(buffer, offset, (int) Math.min(length, chunkRemaining));
+            if (read == -1) throw new EOFException("Connection closed in the middle of a chunk");
+            chunkRemaining -= read;
+            if (chunkRemaining == 0 && !readLine(in).isEmpty()) throw new ProtocolException("Missing CRLF after chunk");
+            return read;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return isReleased() ? 0 : (int) Math.min(in.available(), chunkRemaining);
+        }
+    }
+
+    private final class UntilCloseInputStream extends BodyInputStream {
+        UntilCloseInputStream(Call call, HttpConnection connection) {
+            super(call, connection, false);
+        }
+
+        @Override
+        int readBody(byte[] buffer, int offset, int length) throws IOException {
+            int read = in.read(buffer, offset, length);
+            if (read == -1) endOfBody();
+            return read;
+        }
+    }
+}
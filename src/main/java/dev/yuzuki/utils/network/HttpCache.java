@@ -0,0 +1,461 @@
+package dev.yuzuki.utils.network;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A cache of GET responses following their Cache-Control, Expires, ETag and Last-Modified headers. <br>
+ * Usage:
+ * <pre>
+ *     {@code
+ *     HttpCache cache = HttpCache.builder()
+ *             .maxMemorySize(32 * 1024 * 1024)
+ *             .directory(Paths.get("cache/http"), 256 * 1024 * 1024)
+ *             .build();
+ *     HttpClient client = HttpClient.builder().cache(cache).build();
+ *     }
+ * </pre>
+ *
+ * Fresh responses are served from memory without touching the network. Stale responses that carry an ETag or a
+ * Last-Modified date are revalidated with a conditional request, and a 304 answer serves the cached body.
+ * <p>
+ * Entries are kept in memory in least-recently-used order up to a total size in bytes. If a directory is set,
+ * entries are also written to disk, which keeps them across restarts and holds entries evicted from memory,
+ * again bounded in size. Only buffered requests ({@link HttpClient#send(Request)} and
+ * {@link HttpClient#sendAsync(Request)}) use the cache.
+ */
+public class HttpCache {
+    private final long maxMemorySize;
+    private final long maxEntrySize;
+    private final Path directory;
+    private final long maxDiskSize;
+
+    private final Object memoryLock = new Object();
+    private final LinkedHashMap<String, CacheEntry> memory = new LinkedHashMap<>(64, 0.75f, true);
+    private long memorySize;
+
+    private final Object diskLock = new Object();
+    private final LinkedHashMap<String, Long> diskIndex = new LinkedHashMap<>(64, 0.75f, true);
+    private long diskSize;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+    private final LongAdder stores = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private HttpCache(Builder builder) {
+        this.maxMemorySize = builder.maxMemorySize;
+        this.maxEntrySize = builder.maxEntrySize > 0 ? builder.maxEntrySize : Math.max(1, builder.maxMemorySize / 8);
+        this.directory = builder.directory;
+        this.maxDiskSize = builder.maxDiskSize;
+        if (directory != null) loadDiskIndex();
+    }
+
+    /**
+     * Returns a new Builder instance for constructing an HttpCache.
+     *
+     * @return a new Builder instance
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns the cached response to a GET request.
+     *
+     * @param url the request URL
+     * @param requestHeaders the request headers, which must match the headers the response varies on
+     * @return the entry, or null if none is cached
+     */
+    CacheEntry get(String url, Map<String, String> requestHeaders) {
+        CacheEntry entry;
+        synchronized (memoryLock) {
+            entry = memory.get(url);
+        }
+        if (entry == null && directory != null) {
+            entry = readFromDisk(url);
+            if (entry != null) putInMemory(entry);
+        }
+        return entry != null && entry.matches(requestHeaders) ? entry : null;
+    }
+
+    /**
+     * Stores an entry if it is cacheable and small enough.
+     *
+     * @param entry the entry
+     */
+    void put(CacheEntry entry) {
+        if (!entry.isUseful() || entry.size() > maxEntrySize) return;
+        stores.increment();
+        putInMemory(entry);
+        if (directory != null) writeToDisk(entry);
+    }
+
+    /**
+     * Counts a response served from the cache.
+     *
+     * @param revalidated whether the server had to confirm the entry first
+     */
+    void recordHit(boolean revalidated) {
+        if (revalidated) revalidations.increment();
+        else hits.increment();
+    }
+
+    /**
+     * Counts a request the cache could not answer.
+     */
+    void recordMiss() {
+        misses.increment();
+    }
+
+    /**
+     * Removes the cached response for a URL, for example after a request that changed the resource.
+     *
+     * @param url the URL
+     */
+    public void remove(String url) {
+        synchronized (memoryLock) {
+            CacheEntry removed = memory.remove(url);
+            if (removed != null) memorySize -= removed.size();
+        }
+        if (directory != null) {
+            String name = fileName(url);
+            synchronized (diskLock) {
+                Long size = diskIndex.remove(name);
+                if (size != null) diskSize -= size;
+            }
+            deleteQuietly(directory.resolve(name));
+        }
+    }
+
+    /**
+     * Removes all cached responses, including those on disk.
+     */
+    public void clear() {
+        synchronized (memoryLock) {
+            memory.clear();
+            memorySize = 0;
+        }
+        if (directory != null) {
+            List<String> names;
+            synchronized (diskLock) {
+                names = new ArrayList<>(diskIndex.keySet());
+                diskIndex.clear();
+                diskSize = 0;
+            }
+            for (String name : names) deleteQuietly(directory.resolve(name));
+        }
+    }
+
+    /**
+     * Returns the cache statistics.
+     *
+     * @return a snapshot of the statistics
+     */
+    public Stats getStats() {
+        long memory;
+        int entries;
+        synchronized (memoryLock) {
+            memory = memorySize;
+            entries = this.memory.size();
+        }
+        long disk;
+        synchronized (diskLock) {
+            disk = diskSize;
+        }
+        return new Stats(hits.sum(), revalidations.sum(), misses.sum(), stores.sum(), evictions.sum(), entries, memory, disk);
+    }
+
+    private void putInMemory(CacheEntry entry) {
+        long size = entry.size();
+        if (size > maxMemorySize) return;
+        synchronized (memoryLock) {
+            CacheEntry previous = memory.put(entry.url, entry);
+            if (previous != null) memorySize -= previous.size();
+            memorySize += size;
+            Iterator<CacheEntry> iterator = memory.values().iterator();
+            while (memorySize > maxMemorySize && iterator.hasNext()) {
+                CacheEntry eldest = iterator.next();
+                iterator.remove();
+                memorySize -= eldest.size();
+                evictions.increment();
+            }
+        }
+    }
+
+    private CacheEntry readFromDisk(String url) {
+        String name = fileName(url);
+        synchronized (diskLock) {
+            if (diskIndex.get(name) == null) return null;
+        }
+        Path file = directory.resolve(name);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            CacheEntry entry = CacheEntry.readFrom(in);
+            if (!entry.url.equals(url)) return null;
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return entry;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void writeToDisk(CacheEntry entry) {
+        String name = fileName(entry.url);
+        Path file = directory.resolve(name);
+        Path temporary = directory.resolve(name + "." + Thread.currentThread().getId() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                entry.writeTo(out);
+            }
+            long size = Files.size(temporary);
+            if (size > maxDiskSize) {
+                Files.delete(temporary);
+                return;
+            }
+            try {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            List<String> evicted = new ArrayList<>();
+            synchronized (diskLock) {
+                Long previous = diskIndex.put(name, size);
+                if (previous != null) diskSize -= previous;
+                diskSize += size;
+                Iterator<Map.Entry<String, Long>> iterator = diskIndex.entrySet().iterator();
+                while (diskSize > maxDiskSize && iterator.hasNext()) {
+                    Map.Entry<String, Long> eldest = iterator.next();
+                    if (eldest.getKey().equals(name)) continue;
+                    iterator.remove();
+                    diskSize -= eldest.getValue();
+                    evicted.add(eldest.getKey());
+                }
+            }
+            for (String old : evicted) deleteQuietly(directory.resolve(old));
+        } catch (IOException e) {
+            deleteQuietly(temporary);
+        }
+    }
+
+    private void loadDiskIndex() {
+        try {
+            Files.createDirectories(directory);
+            List<Path> files = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path file : stream) {
+                    if (file.getFileName().toString().endsWith(".tmp")) deleteQuietly(file);
+                    else if (Files.isRegularFile(file)) files.add(file);
+                }
+            }
+            // least recently used first, which is the iteration order of the index
+            files.sort(Comparator.comparing(file -> {
+                try {
+                    return Files.getLastModifiedTime(file);
+                } catch (IOException e) {
+                    return FileTime.fromMillis(0);
+                }
+            }));
+            synchronized (diskLock) {
+                for (Path file : files) {
+                    long size = Files.size(file);
+                    diskIndex.put(file.getFileName().toString(), size);
+                    diskSize += size;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open the cache directory " + directory, e);
+        }
+    }
+
+    private static String fileName(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder(64);
+            for (byte b : digest) {
+                name.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return name.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+            // removed from the index anyway
+        }
+    }
+
+    /**
+     * A builder class for constructing HttpCache objects.
+     */
+    public static class Builder {
+        private long maxMemorySize = 16 * 1024 * 1024;
+        private long maxEntrySize;
+        private Path directory;
+        private long maxDiskSize;
+
+        /**
+         * Sets the total size of the responses kept in memory. 16 MB by default.
+         *
+         * @param bytes the size in bytes
+         * @return the Builder instance
+         */
+        public Builder maxMemorySize(long bytes) {
+            if (bytes <= 0) throw new IllegalArgumentException("Size must be positive");
+            this.maxMemorySize = bytes;
+            return this;
+        }
+
+        /**
+         * Sets the size of the largest response that is cached. An eighth of the memory size by default.
+         *
+         * @param bytes the size in bytes
+         * @return the Builder instance
+         */
+        public Builder maxEntrySize(long bytes) {
+            if (bytes <= 0) throw new IllegalArgumentException("Size must be positive");
+            this.maxEntrySize = bytes;
+            return this;
+        }
+
+        /**
+         * Keeps responses on disk as well. The directory is created if needed and must not be used for anything else.
+         *
+         * @param directory the cache directory
+         * @param maxSize the total size of the files in bytes
+         * @return the Builder instance
+         */
+        public Builder directory(Path directory, long maxSize) {
+            if (maxSize <= 0) throw new IllegalArgumentException("Size must be positive");
+            this.directory = directory;
+            this.maxDiskSize = maxSize;
+            return this;
+        }
+
+        /**
+         * Builds and returns the HttpCache.
+         *
+         * @return the constructed HttpCache
+         * @throws UncheckedIOException if the directory cannot be read
+         */
+        public HttpCache build() {
+            return new HttpCache(this);
+        }
+    }
+
+    /**
+     * A snapshot of the cache statistics.
+     */
+    public static class Stats {
+        private final long hits;
+        private final long revalidations;
+        private final long misses;
+        private final long stores;
+        private final long evictions;
+        private final int memoryEntries;
+        private final long memorySize;
+        private final long diskSize;
+
+        Stats(long hits, long revalidations, long misses, long stores, long evictions,
+              int memoryEntries, long memorySize, long diskSize) {
+            this.hits = hits;
+            this.revalidations = revalidations;
+            this.misses = misses;
+            this.stores = stores;
+            this.evictions = evictions;
+            this.memoryEntries = memoryEntries;
+            this.memorySize = memorySize;
+            this.diskSize = diskSize;
+        }
+
+        /**
+         * Returns the number of requests served from the cache without contacting the server.
+         *
+         * @return the number of hits
+         */
+        public long getHits() {
+            return hits;
+        }
+
+        /**
+         * Returns the number of requests served from the cache after the server answered 304 Not Modified.
+         *
+         * @return the number of revalidations
+         */
+        public long getRevalidations() {
+            return revalidations;
+        }
+
+        /**
+         * Returns the number of cacheable requests that needed a full response from the server.
+         *
+         * @return the number of misses
+         */
+        public long getMisses() {
+            return misses;
+        }
+
+        /**
+         * Returns the number of responses stored.
+         *
+         * @return the number of stores
+         */
+        public long getStores() {
+            return stores;
+        }
+
+        /**
+         * Returns the number of entries evicted from memory to stay within its size.
+         *
+         * @return the number of evictions
+         */
+        public long getEvictions() {
+            return evictions;
+        }
+
+        /**
+         * Returns the number of entries held in memory.
+         *
+         * @return the number of entries
+         */
+        public int getMemoryEntries() {
+            return memoryEntries;
+        }
+
+        /**
+         * Returns the estimated size of the entries held in memory.
+         *
+         * @return the size in bytes
+         */
+        public long getMemorySize() {
+            return memorySize;
+        }
+
+        /**
+         * Returns the size of the entries on disk.
+         *
+         * @return the size in bytes
+         */
+        public long getDiskSize() {
+            return diskSize;
+        }
+
+        @Override
+        public String toString() {
+            return "hits=" + hits + ", revalidations=" + revalidations + ", misses=" + misses + ", stores=" + stores
+                    + ", evictions=" + evictions + ", memoryEntries=" + memoryEntries + ", memorySize=" + memorySize
+                    + ", diskSize=" + diskSize;
+        }
+    }
+}
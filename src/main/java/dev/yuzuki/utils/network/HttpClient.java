@@ -2,17 +2,84 @@ package dev.yuzuki.utils.network;
 
 import dev.yuzuki.utils.network.response.BinaryResponse;
 import dev.yuzuki.utils.network.response.ImageResponse;
+import dev.yuzuki.utils.network.response.StreamResponse;
 import dev.yuzuki.utils.network.response.TextResponse;
 
 import javax.imageio.ImageIO;
-import java.io.ByteArrayInputStream;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
-import java.net.HttpURLConnection;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.net.CookieHandler;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.ProtocolException;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.TreeMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
 
 /**
- * A utility class for making HTTP requests.
+ * A client for making HTTP requests over pooled keep-alive connections. <br>
+ * Usage:
+ * <pre>
+ *     {@code
+ *     HttpClient client = HttpClient.builder()
+ *             .timeout(3000)
+ *             .connectionPool(new ConnectionPool(8, 30, TimeUnit.SECONDS))
+ *             .build();
+ *     TemporaryResponse response = client.send(Request.builder().url("https://example.com").method(Request.Method.GET).build());
+ *
+ *     client.sendAsync(Request.builder().url("https://example.com").method(Request.Method.GET).timeout(2000).build())
+ *             .thenAccept(r -> System.out.println(r.getCode()));
+ *     }
+ * </pre>
+ *
+ * Clients are thread-safe and meant to be shared. {@link #getDefault()} returns a default client whose connections
+ * are kept in a shared pool.
+ * <p>
+ * With a {@link RetryPolicy}, failed attempts are sent again after a backoff, and with a {@link CircuitBreaker},
+ * requests to a host that keeps failing fail right away with a {@link CircuitOpenException}. A {@link HostLimiter}
+ * caps the rate and concurrency of requests to each host.
+ * <p>
+ * Every response carries {@linkplain Response#getTimings() timings} that split its time into DNS, connecting, TLS,
+ * waiting for the server, downloading and decoding. With {@link Builder#metrics(boolean)} the client also aggregates
+ * them per host, and a {@link RequestListener} receives them for every request. Decoding happens when a response is
+ * converted, after the listener was called, so only the response's own timings and the host metrics include it.
+ * <p>
+ * With {@link Builder#http2(boolean)} on Java 11 and later, HTTPS requests are multiplexed as HTTP/2 streams over
+ * one connection per host, through the JDK's own client. Plain HTTP requests, and all requests on Java 8, keep to
+ * the pooled HTTP/1.1 connections.
+ * <p>
+ * Requests go through the proxy picked by {@link ProxySelector#getDefault()}, or by the one set with
+ * {@link Builder#proxySelector(ProxySelector)} or {@link Builder#proxy(Proxy)}, and a proxy asking for Basic
+ * credentials gets them from the default {@link java.net.Authenticator}. Cookies are sent and stored through
+ * {@link CookieHandler#getDefault()}, or the handler set with {@link Builder#cookieHandler(CookieHandler)}. Unlike
+ * HttpURLConnection, the client does not answer a server's 401 challenge from the Authenticator: such requests set
+ * their own Authorization header.
  */
 public class HttpClient {
 
@@ -23,50 +90,114 @@ public class HttpClient {
 
     private static String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/58.0.3029.110 Safari/537.3";
 
+    private static final int MAX_REDIRECTS = 20;
+    private static final int DEFAULT_ASYNC_THREADS = 64;
+    private static final ConnectionPool DEFAULT_POOL = new ConnectionPool();
+    private static volatile HttpClient defaultClient;
+    private static volatile ExecutorService defaultExecutor;
+
+    private final int timeout;
+    private final String userAgent;
+    private final boolean followRedirects;
+    private final boolean compression;
+    private final long requestCompressionThreshold;
+    private final ConnectionPool connectionPool;
+    private final HttpCache cache;
+    private final Map<String, Flight> inFlight;
+    private final LongAdder coalesced = new LongAdder();
+    private final RetryPolicy retryPolicy;
+    private final CircuitBreaker circuitBreaker;
+    private final HostLimiter hostLimiter;
+    private final Map<String, HostMetrics> metrics;
+    private final RequestListener requestListener;
+    private final Http1Transport transport;
+    private final HttpTransport http2Transport;
+    private final CookieHandler cookieHandler;
+    private final Executor executor;
+
+    private HttpClient(Builder builder) {
+        this.timeout = builder.timeout;
+        this.userAgent = builder.userAgent;
+        this.followRedirects = builder.followRedirects;
+        this.compression = builder.compression;
+        this.requestCompressionThreshold = builder.requestCompressionThreshold;
+        this.connectionPool = builder.connectionPool != null ? builder.connectionPool : new ConnectionPool();
+        this.cache = builder.cache;
+        this.inFlight = builder.coalesceRequests ? new ConcurrentHashMap<>() : null;
+        this.retryPolicy = builder.retryPolicy;
+        this.circuitBreaker = builder.circuitBreaker;
+        this.hostLimiter = builder.hostLimiter;
+        this.metrics = builder.metrics ? new ConcurrentHashMap<>() : null;
+        this.requestListener = builder.requestListener;
+        SSLSocketFactory sslSocketFactory = builder.sslSocketFactory != null ? builder.sslSocketFactory
+                : builder.sslContext != null ? builder.sslContext.getSocketFactory()
+                : (SSLSocketFactory) SSLSocketFactory.getDefault();
+        this.transport = new Http1Transport(connectionPool, sslSocketFactory, builder.proxySelector, builder.dnsCache,
+                timeout, timeout);
+        // a bare socket factory cannot configure the JDK client, and the JDK client cannot use SOCKS proxies,
+        // so either keeps every request on HTTP/1.1
+        boolean socks = builder.proxySelector instanceof FixedProxySelector
+                && ((FixedProxySelector) builder.proxySelector).proxy.type() == Proxy.Type.SOCKS;
+        this.http2Transport = builder.http2 && builder.sslSocketFactory == null && !socks
+                ? loadHttp2Transport(builder.sslContext, builder.proxySelector, timeout) : null;
+        this.cookieHandler = builder.cookieHandler;
+        this.executor = builder.executor;
+    }
+
+    /**
+     * Returns a new Builder instance for constructing an HttpClient.
+     *
+     * @return a new Builder instance
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns the client used by the static methods, built from the current timeout and user agent.
+     *
+     * @return the default client
+     */
+    public static HttpClient getDefault() {
+        HttpClient client = defaultClient;
+        if (client == null) {
+            synchronized (HttpClient.class) {
+                client = defaultClient;
+                if (client == null) {
+                    client = builder().timeout(TIMEOUT).userAgent(USER_AGENT).connectionPool(DEFAULT_POOL).build();
+                    defaultClient = client;
+                }
+            }
+        }
+        return client;
+    }
+
     /**
      * Sets the timeout value for the HTTP connection.
      *
      * @param timeout the timeout value in milliseconds
      */
-    public static void setTimeout(int timeout) {
+    public static synchronized void setTimeout(int timeout) {
         TIMEOUT = timeout;
+        defaultClient = null;
     }
 
-    public static void setUserAgent(String userAgent) {
+    public static synchronized void setUserAgent(String userAgent) {
         USER_AGENT = userAgent;
+        defaultClient = null;
     }
 
     /**
-     * Sends an HTTP request and returns the response code and data.
+     * Sends an HTTP request and returns a TemporaryResponse object.
      *
      * @param request the HTTP request to send
-     * @return a Pair containing the response code and the response data
+     * @return a TemporaryResponse object containing the response data, or null if the request failed
+     * @deprecated the cause of a failure is lost; use {@code getDefault().send(request)}, which throws it
      */
-    private static Pair<Integer, ByteArrayOutputStream> send(Request request) {
+    @Deprecated
+    public static TemporaryResponse sendRequest(Request request) {
         try {
-            URL url = new URL(request.getUrl());
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            connection.setRequestMethod(request.getMethod());
-            connection.setConnectTimeout(TIMEOUT);
-            connection.setReadTimeout(TIMEOUT);
-            connection.setRequestProperty("User-Agent", USER_AGENT);
-            request.getHeaders().forEach(connection::setRequestProperty);
-            if (request.getBody() != null) {
-                connection.setDoOutput(true);
-                connection.getOutputStream().write(request.getBody().getBytes());
-            }
-            if (request.getFile() != null) {
-                connection.setDoOutput(true);
-                connection.getOutputStream().write(request.getFile().toPath().toAbsolutePath().toString().getBytes());
-            }
-            try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
-                byte[] buffer = new byte[1024];
-                int length;
-                while ((length = connection.getInputStream().read(buffer)) != -1) {
-                    outputStream.write(buffer, 0, length);
-                }
-                return new Pair<>(connection.getResponseCode(), outputStream);
-            }
+            return getDefault().send(request);
         } catch (IOException e) {
             System.out.println(e.getMessage());
             return null;
@@ -74,58 +205,1144 @@ public class HttpClient {
     }
 
     /**
-     * Sends an HTTP request and returns a TemporaryResponse object.
+     * Sends an HTTP request with the default client without blocking the calling thread.
+     *
+     * @param request the HTTP request to send
+     * @return a future completed with the response, or exceptionally with the IOException that failed the request
+     * @see #sendAsync(Request)
+     */
+    public static CompletableFuture<TemporaryResponse> sendRequestAsync(Request request) {
+        return getDefault().sendAsync(request);
+    }
+
+    /**
+     * Sends an HTTP request and reads the whole response. Error responses are returned like any other.
      *
      * @param request the HTTP request to send
      * @return a TemporaryResponse object containing the response data
+     * @throws IOException if the request could not be sent or the response could not be read,
+     * a {@link SocketTimeoutException} if the request's timeout elapsed,
+     * a {@link CircuitOpenException} if the host's circuit is open,
+     * or a {@link LimitExceededException} if the host's limits did not let the request through in time
+     * @throws IllegalArgumentException if the method, the URL or a header contains a line break, a NUL character or
+     * a character outside ISO-8859-1, or a header name is not a valid token
      */
-    public static TemporaryResponse sendRequest(Request request) {
+    public TemporaryResponse send(Request request) throws IOException {
+        String key = flightKey(request);
+        if (key == null) return sendNow(request);
+
+        while (true) {
+            Flight flight = new Flight();
+            Flight leader = inFlight.putIfAbsent(key, flight);
+            if (leader != null) {
+                // every waiter of that flight has gone, so it is being aborted and a new one is needed
+                if (!leader.addWaiter()) {
+                    inFlight.remove(key, leader);
+                    continue;
+                }
+                coalesced.increment();
+                return awaitFlight(leader, request.getTimeout());
+            }
+            TemporaryResponse response = null;
+            Throwable failure = null;
+            try {
+                response = sendNow(request);
+                return response;
+            } catch (Throwable e) {
+                failure = e;
+                throw e;
+            } finally {
+                // an Error must not leave the waiters hanging on a flight nobody completes
+                inFlight.remove(key, flight);
+                if (failure != null) flight.completeExceptionally(failure);
+                else flight.complete(response);
+            }
+        }
+    }
+
+    private TemporaryResponse sendNow(Request request) throws IOException {
+        Call call = new Call();
+        ScheduledFuture<?> timeout = scheduleTimeout(request, call, null);
+        try {
+            TemporaryResponse response = executeWithRetries(request, call);
+            finished(request, response.getCode(), response.getTimings(), null);
+            return response;
+        } catch (IOException | RuntimeException e) {
+            finished(request, -1, call.timings(), e);
+            throw e;
+        } finally {
+            if (timeout != null) timeout.cancel(false);
+        }
+    }
+
+    private TemporaryResponse executeWithRetries(Request request, Call call) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            long delay;
+            try {
+                TemporaryResponse response = execute(request, call);
+                delay = retryDelay(request, call, attempt, response, null);
+                if (delay < 0) return response;
+            } catch (IOException e) {
+                delay = retryDelay(request, call, attempt, null, e);
+                if (delay < 0) throw e;
+            }
+            call.sleep(delay);
+        }
+    }
+
+    /**
+     * Sends an HTTP request on the client's I/O executor.
+     * <p>
+     * Cancelling the returned future aborts the request, closing its connection. If the request has a
+     * {@linkplain Request#getTimeout() timeout}, it counts from this call, including time spent waiting for a thread,
+     * and the future fails with a {@link SocketTimeoutException} once it elapses. Retries wait on the timer thread,
+     * without holding an executor thread.
+     * <p>
+     * When {@linkplain Builder#coalesceRequests(boolean) coalescing}, the shared request belongs to none of its
+     * callers: cancelling one caller's future, or its timeout elapsing, only fails that future, and the request is
+     * aborted once every caller has gone.
+     *
+     * @param request the HTTP request to send
+     * @return a future completed with the response, or exceptionally with the IOException that failed the request
+     */
+    public CompletableFuture<TemporaryResponse> sendAsync(Request request) {
+        String key = flightKey(request);
+        if (key == null) return sendAsyncNow(request);
+
+        while (true) {
+            Flight flight = new Flight();
+            Flight leader = inFlight.putIfAbsent(key, flight);
+            if (leader != null) {
+                if (!leader.addWaiter()) {
+                    inFlight.remove(key, leader);
+                    continue;
+                }
+                coalesced.increment();
+                return awaitFlight(leader, request.getTimeout(), true);
+            }
+            // the exchange has no timeout of its own, each waiter times out by itself
+            Call call = new Call();
+            CallFuture exchange = new CallFuture(call);
+            flight.start(call, exchange);
+            exchange.whenComplete((response, throwable) -> {
+                inFlight.remove(key, flight);
+                if (throwable != null) flight.completeExceptionally(throwable);
+                else flight.complete(response);
+            });
+            CompletableFuture<TemporaryResponse> future = awaitFlight(flight, request.getTimeout(), false);
+            sendAsyncNow(request, call, exchange, null);
+            return future;
+        }
+    }
+
+    private CompletableFuture<TemporaryResponse> sendAsyncNow(Request request) {
+        Call call = new Call();
+        CallFuture future = new CallFuture(call);
+        sendAsyncNow(request, call, future, scheduleTimeout(request, call, future));
+        return future;
+    }
+
+    private void sendAsyncNow(Request request, Call call, CallFuture future, ScheduledFuture<?> timeout) {
+        future.whenComplete((response, throwable) -> {
+            if (timeout != null) timeout.cancel(false);
+            if (response != null) finished(request, response.getCode(), response.getTimings(), null);
+            else finished(request, -1, call.timings(), throwable);
+        });
+        executeAsync(request, call, future, 1);
+    }
+
+    private void executeAsync(Request request, Call call, CompletableFuture<TemporaryResponse> future, int attempt) {
+        try {
+            (executor != null ? executor : defaultExecutor()).execute(() -> {
+                if (future.isDone()) return;
+                long delay;
+                try {
+                    TemporaryResponse response = execute(request, call);
+                    delay = retryDelay(request, call, attempt, response, null);
+                    if (delay < 0) {
+                        future.complete(response);
+                        return;
+                    }
+                } catch (IOException e) {
+                    delay = retryDelay(request, call, attempt, null, e);
+                    if (delay < 0) {
+                        future.completeExceptionally(e);
+                        return;
+                    }
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                    return;
+                }
+                ScheduledFuture<?> retry = Timeouts.SCHEDULER.schedule(
+                        () -> executeAsync(request, call, future, attempt + 1), delay, TimeUnit.MILLISECONDS);
+                future.whenComplete((response, throwable) -> retry.cancel(false));
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Returns how long to wait before sending the request again, or -1 if the outcome of the attempt is final.
+     */
+    private long retryDelay(Request request, Call call, int attempt, TemporaryResponse response, IOException failure) {
+        if (retryPolicy == null || call.isCanceled()) return -1;
+        // a body that was consumed by the first attempt cannot be sent again
+        if (!request.isBodyRepeatable()) return -1;
+        return response != null
+                ? retryPolicy.delayAfterResponse(request.getMethod(), attempt, response.getCode(), response.getHeader("Retry-After"))
+                : retryPolicy.delayAfterFailure(request.getMethod(), attempt, failure);
+    }
+
+    /**
+     * Sends an HTTP request and returns as soon as the response headers have arrived, leaving the body to be read
+     * from the returned stream. The response must be closed.
+     * <p>
+     * If the request has a {@linkplain Request#getTimeout() timeout}, it keeps running until the response is closed.
+     * The request counts as finished for metrics and the {@link RequestListener} once the response is closed.
+     *
+     * @param request the HTTP request to send
+     * @return a StreamResponse reading the body from the connection
+     * @throws IOException if the request could not be sent or the response headers could not be read
+     */
+    public StreamResponse stream(Request request) throws IOException {
+        Call call = new Call();
+        ScheduledFuture<?> timeout = scheduleTimeout(request, call, null);
         long start = System.currentTimeMillis();
-        Pair<Integer, ByteArrayOutputStream> data = send(request);
-        long tookTime = System.currentTimeMillis() - start;
-        if (data == null) {
-            return null;
+        RawResponse response;
+        try {
+            response = guardedOpen(request, Collections.emptyMap(), call);
+        } catch (IOException | RuntimeException e) {
+            if (timeout != null) timeout.cancel(false);
+            finished(request, -1, call.timings(), e);
+            throw e;
+        }
+        InputStream body = response.body;
+        if (timeout != null || metrics != null || requestListener != null) {
+            int code = response.code;
+            body = new ClosingInputStream(body, () -> {
+                if (timeout != null) timeout.cancel(false);
+                call.downloaded();
+                finished(request, code, call.timings(), null);
+            });
+        }
+        return new StreamResponse(response.code, System.currentTimeMillis() - start, body, response.headers, call.timings());
+    }
+
+    /**
+     * Downloads the response body straight to a file, so memory use does not grow with its size.
+     * Unsuccessful responses are not written.
+     *
+     * @param request the HTTP request to send
+     * @param file the file to write, replaced if it exists
+     * @return a response holding the file, or null data if the status code is not in the range [200, 300)
+     * @throws IOException if the request failed or the file could not be written
+     * @see StreamResponse#transferTo(Path)
+     */
+    public Response<Path> download(Request request, Path file) throws IOException {
+        long start = System.currentTimeMillis();
+        try (StreamResponse response = stream(request)) {
+            if (!response.isSuccessful()) return new Response<>(response.getCode(), response.getTookTime(), null, response.getHeaders());
+            response.transferTo(file);
+            return new Response<>(response.getCode(), System.currentTimeMillis() - start, file, response.getHeaders());
+        }
+    }
+
+    private TemporaryResponse execute(Request request, Call call) throws IOException {
+        long start = System.currentTimeMillis();
+        boolean cacheable = cache != null && request.getMethod().equals("GET");
+        CacheEntry cached = null;
+        Map<String, String> conditionalHeaders = Collections.emptyMap();
+        if (cacheable) {
+            Map<String, String> directives = new HashMap<>();
+            for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+                if (header.getKey().equalsIgnoreCase("Cache-Control")) CacheEntry.parseDirectives(header.getValue(), directives);
+            }
+            cacheable = !directives.containsKey("no-store");
+            boolean revalidate = directives.containsKey("no-cache") || "0".equals(directives.get("max-age"));
+            cached = cacheable ? cache.get(request.getUrl(), request.getHeaders()) : null;
+            if (cached != null && !revalidate && cached.isFresh(start)) {
+                cache.recordHit(false);
+                return measured(request, fromCache(cached, start, call));
+            }
+            if (cached != null && cached.hasValidators()
+                    && !hasHeader(request, "If-None-Match") && !hasHeader(request, "If-Modified-Since")) {
+                conditionalHeaders = cached.conditionalHeaders();
+            } else {
+                cached = null;
+            }
+        }
+
+        try (RawResponse response = guardedOpen(request, conditionalHeaders, call)) {
+            if (cached != null && response.code == 304) {
+                CacheEntry revalidated = cached.revalidated(response.headers, start, System.currentTimeMillis());
+                cache.put(revalidated);
+                cache.recordHit(true);
+                call.downloaded();
+                return measured(request, fromCache(revalidated, start, call));
+            }
+
+            ResponseBuffer outputStream = new ResponseBuffer(initialBufferSize(response));
+            outputStream.readFrom(response.body);
+            long end = System.currentTimeMillis();
+            call.downloaded();
+
+            if (cacheable) {
+                cache.recordMiss();
+                if (CacheEntry.isCacheable(response.code, response.headers)) {
+                    cache.put(new CacheEntry(request.getUrl(), response.code, response.headers, outputStream.toByteArray(),
+                            CacheEntry.varyHeaders(response.headers, request.getHeaders()), start, end));
+                }
+            } else if (cache != null && response.code < 400 && isUnsafe(request.getMethod())) {
+                cache.remove(request.getUrl());
+            }
+            return measured(request, new TemporaryResponse(response.code, end - start, outputStream, response.headers, call.timings()));
+        }
+    }
+
+    /**
+     * Reports a finished request to the metrics and the listener.
+     */
+    private void finished(Request request, int code, RequestTimings timings, Throwable failure) {
+        if (metrics != null) metrics.computeIfAbsent(hostOf(request), HostMetrics::new).record(code, timings, failure != null);
+        if (requestListener != null) {
+            try {
+                requestListener.onRequestFinished(request, code, timings, failure);
+            } catch (RuntimeException ignored) {
+                // a broken listener must not fail the request
+            }
+        }
+    }
+
+    private static String hostOf(Request request) {
+        try {
+            return Address.of(new URL(request.getUrl())).hostHeader();
+        } catch (MalformedURLException | IllegalArgumentException e) {
+            return request.getUrl();
+        }
+    }
+
+    /**
+     * Returns the request metrics of every host this client sent requests to, keyed by host.
+     *
+     * @return the host metrics, empty unless the client was built with {@link Builder#metrics(boolean)}
+     */
+    public Map<String, HostMetricsSnapshot> getMetrics() {
+        Map<String, HostMetricsSnapshot> result = new TreeMap<>();
+        if (metrics == null) return result;
+        for (HostMetrics value : metrics.values()) {
+            HostMetricsSnapshot snapshot = value.snapshot();
+            result.put(snapshot.getHost(), snapshot);
+        }
+        return result;
+    }
+
+    /**
+     * Clears all recorded metrics.
+     */
+    public void resetMetrics() {
+        if (metrics != null) metrics.clear();
+    }
+
+    /**
+     * Returns the number of requests that were answered by an identical request already in flight.
+     *
+     * @return the number of coalesced requests
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    /**
+     * Returns the key identical requests share, or null if the request must not be coalesced.
+     */
+    private String flightKey(Request request) {
+        if (inFlight == null) return null;
+        String method = request.getMethod();
+        if (!method.equals("GET") && !method.equals("HEAD")) return null;
+        if (request.hasBody()) return null;
+
+        Map<String, String> headers = new TreeMap<>();
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            headers.put(header.getKey().toLowerCase(Locale.ROOT), header.getValue());
+        }
+        // only requests with the same time budget share a flight, so that none ends sooner than it was given
+        StringBuilder key = new StringBuilder(method).append(' ').append(request.getUrl())
+                .append('\n').append(request.getTimeout());
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            key.append('\n').append(header.getKey()).append(':').append(header.getValue());
+        }
+        return key.toString();
+    }
+
+    private static TemporaryResponse awaitFlight(Flight flight, int timeout) throws IOException {
+        boolean timedOut = false;
+        try {
+            return copy(timeout > 0 ? flight.get(timeout, TimeUnit.MILLISECONDS) : flight.get());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IOException(cause);
+        } catch (TimeoutException e) {
+            timedOut = true;
+            throw new SocketTimeoutException("Request timed out after " + timeout + " ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for an identical request");
+        } catch (CancellationException e) {
+            throw new InterruptedIOException("The identical request in flight was canceled");
+        } finally {
+            flight.removeWaiter(timedOut, timeout);
+        }
+    }
+
+    /**
+     * Returns a future for one waiter of a flight, which fails on its own timeout or cancellation without failing
+     * the other waiters.
+     */
+    private static CompletableFuture<TemporaryResponse> awaitFlight(Flight flight, int timeout, boolean copy) {
+        CompletableFuture<TemporaryResponse> waiter = new CompletableFuture<>();
+        flight.whenComplete((response, throwable) -> {
+            if (throwable != null) {
+                waiter.completeExceptionally(throwable);
+                return;
+            }
+            try {
+                waiter.complete(copy ? copy(response) : response);
+            } catch (RuntimeException e) {
+                waiter.completeExceptionally(e);
+            }
+        });
+        ScheduledFuture<?> timer = timeout > 0 ? Timeouts.SCHEDULER.schedule(() -> waiter.completeExceptionally(
+                new SocketTimeoutException("Request timed out after " + timeout + " ms")), timeout, TimeUnit.MILLISECONDS) : null;
+        waiter.whenComplete((response, throwable) -> {
+            if (timer != null) timer.cancel(false);
+            flight.removeWaiter(throwable instanceof SocketTimeoutException, timeout);
+        });
+        return waiter;
+    }
+
+    /**
+     * Lets the response add the time its body takes to convert to the metrics of the request's host.
+     */
+    private TemporaryResponse measured(Request request, TemporaryResponse response) {
+        if (metrics != null) {
+            String host = hostOf(request);
+            // looked up on each conversion, so conversions after resetMetrics() count towards the new metrics
+            response.decodeRecorder = nanos -> metrics.computeIfAbsent(host, HostMetrics::new).recordDecode(nanos);
+        }
+        return response;
+    }
+
+    /**
+     * Returns a response with its own copy of the body, for a caller that shares the response of another request.
+     */
+    private static TemporaryResponse copy(TemporaryResponse response) {
+        ResponseBuffer data = new ResponseBuffer(response.get().size());
+        try {
+            response.get().writeTo(data);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        return new TemporaryResponse(data.getK(), tookTime, data.getV());
+        TemporaryResponse copy = new TemporaryResponse(response.getCode(), response.getTookTime(), data, response.getHeaders(), response.getTimings());
+        copy.decodeRecorder = response.decodeRecorder;
+        return copy;
+    }
+
+    private static TemporaryResponse fromCache(CacheEntry entry, long start, Call call) {
+        ResponseBuffer outputStream = new ResponseBuffer(entry.body.length);
+        outputStream.write(entry.body, 0, entry.body.length);
+        return new TemporaryResponse(entry.code, System.currentTimeMillis() - start, outputStream, entry.headers, call.timings());
+    }
+
+    private static boolean isUnsafe(String method) {
+        return method.equals("POST") || method.equals("PUT") || method.equals("PATCH") || method.equals("DELETE");
+    }
+
+    /**
+     * Returns whether HTTPS requests go through the HTTP/2 transport, which needs {@link Builder#http2(boolean)}
+     * and Java 11 or later.
+     *
+     * @return true if HTTP/2 is used
+     */
+    public boolean isHttp2Enabled() {
+        return http2Transport != null;
     }
 
     /**
-     * A generic pair class to hold two related objects.
+     * Returns the pool holding this client's connections.
      *
-     * @param <K> the type of the first object
-     * @param <V> the type of the second object
+     * @return the connection pool
+     */
+    public ConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
+    /**
+     * Returns the cache this client serves GET responses from.
+     *
+     * @return the cache, or null if responses are not cached
+     */
+    public HttpCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Opens the request through the circuit breaker, which is told whether the host answered, and the host limiter,
+     * whose slot is held until the response is closed.
+     */
+    private RawResponse guardedOpen(Request request, Map<String, String> extraHeaders, Call call) throws IOException {
+        if (circuitBreaker == null && hostLimiter == null) return open(request, extraHeaders, call);
+        String host = Address.of(new URL(request.getUrl())).hostHeader();
+        // the limiter goes first, so a half-open circuit's trial is never taken by a request the limiter then rejects
+        HostLimiter.Permit permit = hostLimiter != null ? hostLimiter.acquire(host, call) : HostLimiter.Permit.NONE;
+        boolean trial;
+        try {
+            trial = circuitBreaker != null && circuitBreaker.acquire(host);
+        } catch (CircuitOpenException e) {
+            permit.refund();
+            throw e;
+        }
+        RawResponse response;
+        try {
+            response = open(request, extraHeaders, call);
+        } catch (IOException | RuntimeException e) {
+            permit.release();
+            // aborting the call says nothing about the host
+            if (circuitBreaker != null && e instanceof IOException && !call.isCanceled()) circuitBreaker.recordFailure(host);
+            else if (trial) circuitBreaker.abandonTrial(host);
+            throw e;
+        }
+        if (circuitBreaker != null) circuitBreaker.record(host, response.code);
+        if (!permit.holdsSlot()) return response;
+        return new RawResponse(response.code, response.message, response.headers, new PermitReleasingInputStream(response.body, permit));
+    }
+
+    private RawResponse open(Request request, Map<String, String> extraHeaders, Call call) throws IOException {
+        URL url = new URL(request.getUrl());
+        String method = request.getMethod();
+        RequestBody body = request.resolveBody();
+        // bodies are only decoded if the caller did not ask for an encoding of their own
+        boolean decode = compression && !hasHeader(request, "Accept-Encoding");
+        boolean compressBody = body != null && requestCompressionThreshold >= 0
+                && body.contentLength() >= requestCompressionThreshold && !hasHeader(request, "Content-Encoding");
+        if (compressBody) body = ContentEncoding.gzip(body);
+
+        // like HttpURLConnection, the default handler is looked up when the request is sent
+        CookieHandler cookieHandler = this.cookieHandler != null ? this.cookieHandler : CookieHandler.getDefault();
+        for (int redirects = 0; ; redirects++) {
+            HttpTransport transport = http2Transport != null && url.getProtocol().equalsIgnoreCase("https")
+                    ? http2Transport : this.transport;
+            Map<String, String> headers = headers(request, extraHeaders, body, decode, compressBody);
+            URI uri = cookieHandler != null ? toUri(url) : null;
+            if (uri != null) addCookies(cookieHandler, uri, headers);
+            RawResponse response = transport.execute(call, method, url, headers, body);
+            if (uri != null) {
+                try {
+                    cookieHandler.put(uri, response.headers);
+                } catch (IOException | RuntimeException e) {
+                    response.close();
+                    throw e;
+                }
+            }
+            if (!followRedirects || !isRedirect(response.code)) return decode ? decode(response) : response;
+
+            String location = response.header("Location");
+            if (location == null) return decode ? decode(response) : response;
+            URL target = new URL(url, location);
+            if (!target.getProtocol().equalsIgnoreCase(url.getProtocol())) return decode ? decode(response) : response;
+            if (redirects == MAX_REDIRECTS) {
+                response.close();
+                throw new ProtocolException("Too many redirects: " + (MAX_REDIRECTS + 1));
+            }
+            response.discard();
+
+            url = target;
+            if (response.code == 303 || (response.code <= 302 && method.equals("POST"))) {
+                method = "GET";
+                body = null;
+                compressBody = false;
+            }
+        }
+    }
+
+    private static URI toUri(URL url) {
+        try {
+            return url.toURI();
+        } catch (URISyntaxException e) {
+            // a URL that only opens because it is not checked as strictly has no cookies
+            return null;
+        }
+    }
+
+    /**
+     * Adds the handler's cookies for a URI to the request's Cookie header.
+     */
+    private static void addCookies(CookieHandler cookieHandler, URI uri, Map<String, String> headers) throws IOException {
+        Map<String, List<String>> requestHeaders = new HashMap<>();
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            requestHeaders.put(header.getKey(), Collections.singletonList(header.getValue()));
+        }
+        for (Map.Entry<String, List<String>> entry : cookieHandler.get(uri, Collections.unmodifiableMap(requestHeaders)).entrySet()) {
+            if (!"Cookie".equalsIgnoreCase(entry.getKey()) || entry.getValue() == null || entry.getValue().isEmpty()) continue;
+            String cookies = String.join("; ", entry.getValue());
+            String name = "Cookie";
+            for (String header : headers.keySet()) {
+                if (header.equalsIgnoreCase(name)) name = header;
+            }
+            // cookies the caller set come first
+            String current = headers.get(name);
+            headers.put(name, current == null || current.isEmpty() ? cookies : current + "; " + cookies);
+        }
+    }
+
+    private static RawResponse decode(RawResponse response) throws IOException {
+        try {
+            return ContentEncoding.decode(response);
+        } catch (IOException | RuntimeException e) {
+            response.close();
+            throw e;
+        }
+    }
+
+    private static boolean hasHeader(Request request, String name) {
+        for (String header : request.getHeaders().keySet()) {
+            if (header.equalsIgnoreCase(name)) return true;
+        }
+        return false;
+    }
+
+    private Map<String, String> headers(Request request, Map<String, String> extraHeaders, RequestBody body,
+                                        boolean acceptEncoding, boolean compressedBody) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put("User-Agent", userAgent);
+        headers.put("Accept", "*/*");
+        if (acceptEncoding) headers.put("Accept-Encoding", ContentEncoding.ACCEPT_ENCODING);
+        if (body != null) {
+            String contentType = body.contentType();
+            headers.put("Content-Type", contentType != null ? contentType : "application/x-www-form-urlencoded");
+            if (compressedBody) headers.put("Content-Encoding", "gzip");
+        }
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            // replace the defaults whatever the case of the name
+            headers.keySet().removeIf(name -> name.equalsIgnoreCase(header.getKey()));
+            headers.put(header.getKey(), header.getValue());
+        }
+        headers.putAll(extraHeaders);
+        return headers;
+    }
+
+    private static int initialBufferSize(RawResponse response) {
+        String contentLength = response.header("Content-Length");
+        if (contentLength == null) return 8192;
+        try {
+            // trust the announced length only up to a limit, the buffer still grows past it
+            return (int) Math.max(32, Math.min(Long.parseLong(contentLength.trim()), 8 * 1024 * 1024));
+        } catch (NumberFormatException e) {
+            return 8192;
+        }
+    }
+
+    private static boolean isRedirect(int code) {
+        return code == 301 || code == 302 || code == 303 || code == 307 || code == 308;
+    }
+
+    private static ScheduledFuture<?> scheduleTimeout(Request request, Call call, CompletableFuture<?> future) {
+        int timeout = request.getTimeout();
+        if (timeout <= 0) return null;
+        call.deadline(timeout);
+        return Timeouts.SCHEDULER.schedule(() -> {
+            call.timeout(timeout);
+            if (future != null) future.completeExceptionally(call.abortedException());
+        }, timeout, TimeUnit.MILLISECONDS);
+    }
+
+    private static HttpTransport loadHttp2Transport(SSLContext sslContext, ProxySelector proxySelector, int timeout) {
+        try {
+            Class<?> type = Class.forName("dev.yuzuki.utils.network.Http2Transport");
+            return (HttpTransport) type.getDeclaredConstructor(SSLContext.class, ProxySelector.class, int.class, int.class)
+                    .newInstance(sslContext, proxySelector, timeout, timeout);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // Java 8, where the jar only holds the HTTP/1.1 transport
+            return null;
+        }
+    }
+
+    private static ExecutorService defaultExecutor() {
+        ExecutorService executor = defaultExecutor;
+        if (executor == null) {
+            synchronized (HttpClient.class) {
+                executor = defaultExecutor;
+                if (executor == null) {
+                    ThreadPoolExecutor pool = new ThreadPoolExecutor(DEFAULT_ASYNC_THREADS, DEFAULT_ASYNC_THREADS,
+                            60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), daemonThreadFactory("HttpClient-io"));
+                    pool.allowCoreThreadTimeOut(true);
+                    executor = pool;
+                    defaultExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    private static ThreadFactory daemonThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Holds the timer thread, which is only started once a request has a timeout.
+     */
+    private static class Timeouts {
+        static final ScheduledThreadPoolExecutor SCHEDULER;
+
+        static {
+            SCHEDULER = new ScheduledThreadPoolExecutor(1, daemonThreadFactory("HttpClient-timeout"));
+            SCHEDULER.setRemoveOnCancelPolicy(true);
+        }
+    }
+
+    /**
+     * A streamed body that stops the request's timer and reports the request once it is closed.
+     */
+    private static class ClosingInputStream extends FilterInputStream {
+        private final Runnable onClose;
+        private boolean closed;
+
+        ClosingInputStream(InputStream in, Runnable onClose) {
+            super(in);
+            this.onClose = onClose;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            try {
+                super.close();
+            } finally {
+                onClose.run();
+            }
+        }
+    }
+
+    /**
+     * A response body that frees its host limiter slot once it has been read to the end or closed.
      */
-    private static class Pair<K, V> {
-        private final K k;
-        private final V v;
+    private static class PermitReleasingInputStream extends FilterInputStream {
+        private final HostLimiter.Permit permit;
+
+        PermitReleasingInputStream(InputStream in, HostLimiter.Permit permit) {
+            super(in);
+            this.permit = permit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b == -1) permit.release();
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read == -1) permit.release();
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                permit.release();
+            }
+        }
+    }
+
+    /**
+     * A future that aborts its call when cancelled.
+     */
+    private static class CallFuture extends CompletableFuture<TemporaryResponse> {
+        private final Call call;
+
+        CallFuture(Call call) {
+            this.call = call;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled) call.cancel();
+            return cancelled;
+        }
+    }
+
+    /**
+     * A request shared by identical requests, completed with its response once for all of them.
+     */
+    private static final class Flight extends CompletableFuture<TemporaryResponse> {
+        private int waiters = 1;
+        // the exchange sent on the I/O executor, null while a caller of send() runs it on its own thread
+        private Call call;
+        private CallFuture exchange;
+
+        synchronized void start(Call call, CallFuture exchange) {
+            this.call = call;
+            this.exchange = exchange;
+        }
+
+        /**
+         * Adds a waiter, unless every waiter has gone already and the exchange is being aborted.
+         */
+        synchronized boolean addWaiter() {
+            if (waiters == 0) return false;
+            waiters++;
+            return true;
+        }
+
+        /**
+         * Removes a waiter. The last one to go aborts an exchange still running, for the same reason it went.
+         */
+        void removeWaiter(boolean timedOut, int timeout) {
+            Call call;
+            CallFuture exchange;
+            synchronized (this) {
+                if (--waiters > 0 || this.exchange == null || this.exchange.isDone()) return;
+                call = this.call;
+                exchange = this.exchange;
+            }
+            if (timedOut) {
+                call.timeout(timeout);
+                exchange.completeExceptionally(call.abortedException());
+            } else {
+                exchange.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Picks the same proxy for every request.
+     */
+    private static final class FixedProxySelector extends ProxySelector {
+        final Proxy proxy;
+
+        FixedProxySelector(Proxy proxy) {
+            this.proxy = proxy;
+        }
+
+        @Override
+        public List<Proxy> select(URI uri) {
+            return Collections.singletonList(proxy);
+        }
+
+        @Override
+        public void connectFailed(URI uri, SocketAddress address, IOException e) {
+            // there is no other proxy to fall back to
+        }
+    }
+
+    /**
+     * A builder class for constructing HttpClient objects.
+     */
+    public static class Builder {
+        private int timeout = 5000;
+        private String userAgent = USER_AGENT;
+        private boolean followRedirects = true;
+        private boolean compression;
+        private long requestCompressionThreshold = -1;
+        private ConnectionPool connectionPool;
+        private HttpCache cache;
+        private boolean coalesceRequests;
+        private RetryPolicy retryPolicy;
+        private CircuitBreaker circuitBreaker;
+        private HostLimiter hostLimiter;
+        private boolean metrics;
+        private RequestListener requestListener;
+        private SSLSocketFactory sslSocketFactory;
+        private SSLContext sslContext;
+        private boolean http2;
+        private DnsCache dnsCache;
+        private ProxySelector proxySelector;
+        private CookieHandler cookieHandler;
+        private Executor executor;
+
+        /**
+         * Sets the connect and read timeout.
+         *
+         * @param timeout the timeout value in milliseconds, 0 for none
+         * @return the Builder instance
+         */
+        public Builder timeout(int timeout) {
+            if (timeout < 0) throw new IllegalArgumentException("Timeout must not be negative");
+            this.timeout = timeout;
+            return this;
+        }
+
+        /**
+         * Sets the User-Agent header sent with every request.
+         *
+         * @param userAgent the user agent
+         * @return the Builder instance
+         */
+        public Builder userAgent(String userAgent) {
+            this.userAgent = userAgent;
+            return this;
+        }
+
+        /**
+         * Sets whether redirects to the same protocol are followed. Enabled by default.
+         *
+         * @param followRedirects whether to follow redirects
+         * @return the Builder instance
+         */
+        public Builder followRedirects(boolean followRedirects) {
+            this.followRedirects = followRedirects;
+            return this;
+        }
+
+        /**
+         * Sets whether responses may be compressed. If enabled, requests that set no Accept-Encoding header of their
+         * own accept gzip and deflate, and compressed bodies are decompressed while they are read.
+         * Disabled by default.
+         *
+         * @param compression whether to negotiate compressed responses
+         * @return the Builder instance
+         */
+        public Builder compression(boolean compression) {
+            this.compression = compression;
+            return this;
+        }
+
+        /**
+         * Gzips request bodies of at least the given size, sending them chunked with a Content-Encoding header.
+         * Bodies of unknown length and requests that set their own Content-Encoding are sent as they are.
+         * The server must accept compressed request bodies.
+         *
+         * @param threshold the minimum body length in bytes, or -1 to never compress, which is the default
+         * @return the Builder instance
+         */
+        public Builder requestCompressionThreshold(long threshold) {
+            this.requestCompressionThreshold = threshold;
+            return this;
+        }
+
+        /**
+         * Sets the pool that keeps this client's idle connections. A new pool is created by default.
+         *
+         * @param connectionPool the pool, which may be shared between clients
+         * @return the Builder instance
+         */
+        public Builder connectionPool(ConnectionPool connectionPool) {
+            this.connectionPool = connectionPool;
+            return this;
+        }
+
+        /**
+         * Sets the cache that GET responses are served from and stored in. Responses are not cached by default.
+         *
+         * @param cache the cache, which may be shared between clients
+         * @return the Builder instance
+         */
+        public Builder cache(HttpCache cache) {
+            this.cache = cache;
+            return this;
+        }
 
         /**
-         * Constructs a new Pair with the specified objects.
+         * Sets whether identical requests share one exchange. If enabled, a GET or HEAD request without a body that
+         * is sent while an identical one (same method, URL, headers and timeout) is in flight waits for that request
+         * instead of going to the network, and receives a copy of its response, or the same exception. Disabled by
+         * default.
          *
-         * @param k the first object
-         * @param v the second object
+         * @param coalesceRequests whether to coalesce identical requests
+         * @return the Builder instance
          */
-        public Pair(K k, V v) {
-            this.k = k;
-            this.v = v;
+        public Builder coalesceRequests(boolean coalesceRequests) {
+            this.coalesceRequests = coalesceRequests;
+            return this;
         }
 
         /**
-         * Returns the first object.
+         * Sets the policy that decides which failed requests are sent again. Requests are not retried by default.
+         * Retries happen within the request's {@linkplain Request#getTimeout() timeout}.
          *
-         * @return the first object
+         * @param retryPolicy the retry policy
+         * @return the Builder instance
          */
-        public K getK() {
-            return k;
+        public Builder retryPolicy(RetryPolicy retryPolicy) {
+            this.retryPolicy = retryPolicy;
+            return this;
         }
 
         /**
-         * Returns the second object.
+         * Sets the circuit breaker that stops requests to failing hosts. None is used by default.
          *
-         * @return the second object
+         * @param circuitBreaker the circuit breaker, which may be shared between clients
+         * @return the Builder instance
          */
-        public V getV() {
-            return v;
+        public Builder circuitBreaker(CircuitBreaker circuitBreaker) {
+            this.circuitBreaker = circuitBreaker;
+            return this;
+        }
+
+        /**
+         * Sets the limiter that caps the rate and concurrency of requests to each host. Requests are not limited by
+         * default.
+         *
+         * @param hostLimiter the limiter, which may be shared between clients
+         * @return the Builder instance
+         */
+        public Builder hostLimiter(HostLimiter hostLimiter) {
+            this.hostLimiter = hostLimiter;
+            return this;
+        }
+
+        /**
+         * Records latency, time to first byte, pool wait and response size histograms, status code counts and bytes
+         * sent and received per host. Disabled by default.
+         *
+         * @param metrics true to record metrics
+         * @return the Builder instance
+         * @see HttpClient#getMetrics()
+         */
+        public Builder metrics(boolean metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * Sets the listener that receives every finished request with its timings.
+         *
+         * @param requestListener the listener, or null for none
+         * @return the Builder instance
+         */
+        public Builder requestListener(RequestListener requestListener) {
+            this.requestListener = requestListener;
+            return this;
+        }
+
+        /**
+         * Sets the factory for TLS connections. The JVM default is used otherwise.
+         * A client with a socket factory sends every request over HTTP/1.1; use {@link #sslContext(SSLContext)}
+         * together with {@link #http2(boolean)}.
+         *
+         * @param sslSocketFactory the socket factory
+         * @return the Builder instance
+         */
+        public Builder sslSocketFactory(SSLSocketFactory sslSocketFactory) {
+            this.sslSocketFactory = sslSocketFactory;
+            return this;
+        }
+
+        /**
+         * Sets the TLS context for HTTPS connections, over HTTP/1.1 and HTTP/2 alike. The JVM default is used
+         * otherwise.
+         *
+         * @param sslContext the TLS context
+         * @return the Builder instance
+         */
+        public Builder sslContext(SSLContext sslContext) {
+            this.sslContext = sslContext;
+            return this;
+        }
+
+        /**
+         * Sets whether HTTPS requests use HTTP/2 where the server supports it, so that concurrent requests to a host
+         * share one multiplexed connection instead of queueing for pooled ones. It needs Java 11 or later; on Java 8
+         * the setting is ignored. Disabled by default.
+         *
+         * @param http2 whether to use HTTP/2
+         * @return the Builder instance
+         * @see HttpClient#isHttp2Enabled()
+         */
+        public Builder http2(boolean http2) {
+            this.http2 = http2;
+            return this;
+        }
+
+        /**
+         * Sets the cache that resolves host names for new HTTP/1.1 connections, which can be shared between clients.
+         * Without one, every new connection goes through the JVM's resolver and its cache settings.
+         *
+         * @param dnsCache the DNS cache, or null
+         * @return the Builder instance
+         */
+        public Builder dnsCache(DnsCache dnsCache) {
+            this.dnsCache = dnsCache;
+            return this;
+        }
+
+        /**
+         * Sends every request through one proxy, or with {@link Proxy#NO_PROXY} straight to the server whatever the
+         * system proxy settings are. HTTPS requests are tunneled through an HTTP proxy with CONNECT; a SOCKS proxy
+         * keeps every request on HTTP/1.1, since the HTTP/2 transport cannot use one.
+         *
+         * @param proxy the proxy
+         * @return the Builder instance
+         */
+        public Builder proxy(Proxy proxy) {
+            if (proxy == null) throw new IllegalArgumentException("proxy must not be null");
+            if (proxy.type() != Proxy.Type.DIRECT && !(proxy.address() instanceof InetSocketAddress)) {
+                throw new IllegalArgumentException("proxy address must be an InetSocketAddress");
+            }
+            this.proxySelector = new FixedProxySelector(proxy);
+            return this;
+        }
+
+        /**
+         * Sets the selector that picks the proxy for each request, like {@link java.net.HttpURLConnection} does.
+         * {@link ProxySelector#getDefault()}, which follows the {@code http.proxyHost} family of system properties,
+         * is used otherwise. Proxies asking for Basic credentials get them from the default
+         * {@link java.net.Authenticator}.
+         *
+         * @param proxySelector the proxy selector, or null for the default one
+         * @return the Builder instance
+         */
+        public Builder proxySelector(ProxySelector proxySelector) {
+            this.proxySelector = proxySelector;
+            return this;
+        }
+
+        /**
+         * Sets the handler that adds cookies to each request and stores the ones responses set, redirects included.
+         * {@link CookieHandler#getDefault()} is used otherwise, and no cookies are handled if there is none.
+         *
+         * @param cookieHandler the cookie handler, such as a {@link java.net.CookieManager}, or null for the default one
+         * @return the Builder instance
+         */
+        public Builder cookieHandler(CookieHandler cookieHandler) {
+            this.cookieHandler = cookieHandler;
+            return this;
+        }
+
+        /**
+         * Sets the executor that runs {@link HttpClient#sendAsync(Request)} calls. Each running request blocks one
+         * thread, so the executor's size bounds the number of concurrent asynchronous requests; further requests
+         * wait in its queue. A shared pool of 64 daemon threads is used by default.
+         *
+         * @param executor the executor, which the caller keeps ownership of
+         * @return the Builder instance
+         */
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Builds and returns the HttpClient.
+         *
+         * @return the constructed HttpClient
+         */
+        public HttpClient build() {
+            return new HttpClient(this);
         }
     }
 
@@ -133,6 +1350,8 @@ public class HttpClient {
      * A temporary response class to hold the response data before converting to a specific response type.
      */
     public static class TemporaryResponse extends Response<ByteArrayOutputStream> {
+        // adds the time a conversion took to the metrics of the request's host
+        LongConsumer decodeRecorder;
 
         /**
          * Constructs a new TemporaryResponse with the specified status code, time taken, and data.
@@ -145,22 +1364,93 @@ public class HttpClient {
             super(code, tookTime, data);
         }
 
+        /**
+         * Constructs a new TemporaryResponse with the specified status code, time taken, data, and headers.
+         *
+         * @param code the HTTP status code of the response
+         * @param tookTime the time taken to receive the response
+         * @param data the response data
+         * @param headers the response headers
+         */
+        public TemporaryResponse(int code, long tookTime, ByteArrayOutputStream data, Map<String, List<String>> headers) {
+            super(code, tookTime, data, headers);
+        }
+
+        /**
+         * Constructs a new TemporaryResponse with the specified status code, time taken, data, headers, and timings.
+         *
+         * @param code the HTTP status code of the response
+         * @param tookTime the time taken to receive the response
+         * @param data the response data
+         * @param headers the response headers
+         * @param timings the timing breakdown of the request
+         */
+        public TemporaryResponse(int code, long tookTime, ByteArrayOutputStream data, Map<String, List<String>> headers,
+                                 RequestTimings timings) {
+            super(code, tookTime, data, headers, timings);
+        }
+
         /**
          * Converts the temporary response to a BinaryResponse.
          *
          * @return a BinaryResponse object
          */
         public BinaryResponse toBinaryResponse() {
-            return new BinaryResponse(getCode(), getTookTime(), get().toByteArray());
+            long start = System.nanoTime();
+            byte[] data = get().toByteArray();
+            return new BinaryResponse(getCode(), getTookTime(), data, getHeaders(), decoded(start));
         }
 
         /**
-         * Converts the temporary response to a TextResponse.
+         * Converts the temporary response to a TextResponse, decoded with the charset of the Content-Type header.
+         * Without one, the text is decoded as UTF-16 if it starts with a UTF-16 byte order mark, otherwise as UTF-8.
          *
          * @return a TextResponse object
          */
         public TextResponse toTextResponse() {
-            return new TextResponse(getCode(), getTookTime(), get().toString());
+            return toTextResponse(charset());
+        }
+
+        /**
+         * Converts the temporary response to a TextResponse, decoded with the given charset.
+         *
+         * @param charset the charset of the text
+         * @return a TextResponse object
+         */
+        public TextResponse toTextResponse(Charset charset) {
+            long start = System.nanoTime();
+            String text = buffer().toString(charset);
+            return new TextResponse(getCode(), getTookTime(), text, getHeaders(), decoded(start));
+        }
+
+        /**
+         * Returns a reader decoding the body as it is read, with the charset {@link #toTextResponse()} uses.
+         * Large bodies can be processed this way without holding them as a String as well.
+         *
+         * @return a new reader
+         */
+        public Reader reader() {
+            return buffer().newReader(charset());
+        }
+
+        /**
+         * Returns the body as a CharSequence, with the charset {@link #toTextResponse()} uses.
+         *
+         * @return the text
+         * @see ResponseBuffer#asCharSequence(Charset)
+         */
+        public CharSequence asCharSequence() {
+            return buffer().asCharSequence(charset());
+        }
+
+        /**
+         * Passes each line of the body to an action, with the charset {@link #toTextResponse()} uses. Suits
+         * newline-delimited formats such as NDJSON, whose records are decoded one at a time.
+         *
+         * @param action the action receiving each line, without its line terminator
+         */
+        public void forEachLine(Consumer<String> action) {
+            buffer().forEachLine(charset(), action);
         }
 
         /**
@@ -170,11 +1460,45 @@ public class HttpClient {
          * @throws RuntimeException if an I/O error occurs
          */
         public ImageResponse toImageResponse() {
+            long start = System.nanoTime();
             try {
-                return new ImageResponse(getCode(), getTookTime(), ImageIO.read(new ByteArrayInputStream(get().toByteArray())));
+                BufferedImage image = ImageIO.read(buffer().newInputStream());
+                return new ImageResponse(getCode(), getTookTime(), image, getHeaders(), decoded(start));
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
         }
+
+        /**
+         * Returns the body as a ResponseBuffer, copying it only if the response was built around another stream.
+         */
+        private ResponseBuffer buffer() {
+            ByteArrayOutputStream data = get();
+            if (data instanceof ResponseBuffer) return (ResponseBuffer) data;
+            ResponseBuffer buffer = new ResponseBuffer(data.size());
+            try {
+                data.writeTo(buffer);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return buffer;
+        }
+
+        private Charset charset() {
+            Charset charset = getCharset();
+            return charset != null ? charset : buffer().detectCharset();
+        }
+
+        /**
+         * Returns the timings with the conversion that started at the given time added as decode time, which is also
+         * recorded in the host's metrics.
+         */
+        private RequestTimings decoded(long start) {
+            long nanos = System.nanoTime() - start;
+            LongConsumer recorder = decodeRecorder;
+            if (recorder != null) recorder.accept(nanos);
+            RequestTimings timings = getTimings();
+            return timings == null ? null : timings.withDecode(nanos);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,59 @@
+package dev.yuzuki.utils.network;
+
+import java.io.*;
+import java.net.Socket;
+import java.net.SocketException;
+
+/**
+ * A TCP (or TLS) connection to one {@link Address} that can carry one HTTP/1.1 exchange at a time.
+ */
+final class HttpConnection implements Closeable {
+    private static final int BUFFER_SIZE = 8192;
+
+    final Address address;
+    final Socket socket;
+    final InputStream in;
+    final OutputStream out;
+
+    /**
+     * Number of exchanges that completed on this connection.
+     */
+    int exchanges;
+    long idleSince;
+
+    HttpConnection(Address address, Socket socket) throws IOException {
+        this.address = address;
+        this.socket = socket;
+        this.in = new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE);
+        this.out = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
+    }
+
+    /**
+     * Sets the read timeout for the next exchange.
+     *
+     * @param timeout the timeout in milliseconds, 0 for none
+     * @throws SocketException if the socket is broken
+     */
+    void setReadTimeout(int timeout) throws SocketException {
+        socket.setSoTimeout(timeout);
+    }
+
+    /**
+     * Returns whether the connection is still open from our side.
+     * A peer that closed the connection while it was idle is only noticed by the next exchange.
+     *
+     * @return true if the connection may be reused
+     */
+    boolean isOpen() {
+        return !socket.isClosed() && !socket.isInputShutdown() && !socket.isOutputShutdown();
+    }
+
+    @Override
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // nothing left to release
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package dev.yuzuki.utils.network;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * Carries one exchange to a server and back. The client handles redirects, compression and caching on top of it.
+ */
+interface HttpTransport {
+
+    /**
+     * Sends a request and reads the response head, leaving the body to be read from the response.
+     *
+     * @param call the call, which aborts the exchange when canceled
+     * @param method the request method
+     * @param url the request URL
+     * @param headers the request headers
+     * @param body the request body, or null
+     * @return the response, which must be closed
+     * @throws IOException if the exchange fails or the call was aborted
+     */
+    RawResponse execute(Call call, String method, URL url, Map<String, String> headers, RequestBody body) throws IOException;
+}
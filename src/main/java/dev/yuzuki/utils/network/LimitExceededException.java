@@ -0,0 +1,32 @@
+package dev.yuzuki.utils.network;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of sending a request when a {@link HostLimiter} could not let it through before its deadline.
+ */
+public class LimitExceededException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final String host;
+
+    /**
+     * Constructs a new LimitExceededException.
+     *
+     * @param host the host whose limit was reached
+     * @param message the detail message
+     */
+    public LimitExceededException(String host, String message) {
+        super(message);
+        this.host = host;
+    }
+
+    /**
+     * Returns the host whose limit was reached.
+     *
+     * @return the host and port
+     */
+    public String getHost() {
+        return host;
+    }
+}
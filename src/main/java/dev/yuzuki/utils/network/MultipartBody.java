@@ -0,0 +1,247 @@
+package dev.yuzuki.utils.network;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A multipart/form-data body made of fields and files. <br>
+ * Usage:
+ * <pre>
+ *     {@code
+ *     MultipartBody body = MultipartBody.builder()
+ *             .field("server", "lobby-1")
+ *             .file("replay", new File("replay.bin"))
+ *             .file("log", Paths.get("latest.log"), "text/plain")
+ *             .build();
+ *     Request request = Request.builder().url(url).method(Request.Method.POST).body(body).build();
+ *     }
+ * </pre>
+ *
+ * Files are streamed from disk through a {@link java.nio.channels.FileChannel} while the request is sent, so they are never loaded
+ * into memory. Their sizes are read when the body is built, which lets the body be sent with a fixed
+ * Content-Length; a file that changes size before the request is sent fails the request.
+ */
+public class MultipartBody extends RequestBody {
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private final String boundary;
+    private final List<Part> parts;
+    private final byte[] closing;
+    private final long contentLength;
+
+    private MultipartBody(String boundary, List<Part> parts) {
+        this.boundary = boundary;
+        this.parts = parts;
+        this.closing = ("--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        long length = closing.length;
+        for (Part part : parts) {
+            length += part.head.length + part.length + CRLF.length;
+        }
+        this.contentLength = length;
+    }
+
+    /**
+     * Returns a new Builder instance for constructing a MultipartBody.
+     *
+     * @return a new Builder instance
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns the boundary separating the parts.
+     *
+     * @return the boundary
+     */
+    public String getBoundary() {
+        return boundary;
+    }
+
+    /**
+     * Returns this body if its files still have the sizes read when it was built, otherwise a body with the same
+     * boundary and the current sizes.
+     *
+     * @throws IOException if a file cannot be read
+     */
+    MultipartBody refreshed() throws IOException {
+        List<Part> current = null;
+        for (int i = 0; i < parts.size(); i++) {
+            Part part = parts.get(i);
+            if (part.file == null) continue;
+            long length = fileSize(part.file);
+            if (length == part.length) continue;
+            if (current == null) current = new ArrayList<>(parts);
+            current.set(i, new Part(part.head, null, part.file, length));
+        }
+        return current == null ? this : new MultipartBody(boundary, Collections.unmodifiableList(current));
+    }
+
+    @Override
+    public String contentType() {
+        return "multipart/form-data; boundary=" + boundary;
+    }
+
+    @Override
+    public long contentLength() {
+        return contentLength;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        for (Part part : parts) {
+            out.write(part.head);
+            if (part.file != null) {
+                writeFile(part.file, part.length, out);
+            } else {
+                out.write(part.data);
+            }
+            out.write(CRLF);
+        }
+        out.write(closing);
+    }
+
+    private static final class Part {
+        final byte[] head;
+        final byte[] data;
+        final Path file;
+        final long length;
+
+        Part(byte[] head, byte[] data, Path file, long length) {
+            this.head = head;
+            this.data = data;
+            this.file = file;
+            this.length = length;
+        }
+    }
+
+    /**
+     * A builder class for constructing MultipartBody objects.
+     */
+    public static class Builder {
+        private final List<Part> parts = new ArrayList<>();
+        private String boundary;
+
+        /**
+         * Sets the boundary. A random boundary is used by default.
+         *
+         * @param boundary the boundary, which must not occur in any part
+         * @return the Builder instance
+         */
+        public Builder boundary(String boundary) {
+            if (boundary.isEmpty() || boundary.length() > 70) {
+                throw new IllegalArgumentException("Boundary must be 1 to 70 characters long");
+            }
+            this.boundary = boundary;
+            return this;
+        }
+
+        /**
+         * Adds a text field encoded as UTF-8.
+         *
+         * @param name the field name
+         * @param value the field value
+         * @return the Builder instance
+         */
+        public Builder field(String name, String value) {
+            byte[] data = value.getBytes(StandardCharsets.UTF_8);
+            parts.add(new Part(header(name, null, null), data, null, data.length));
+            return this;
+        }
+
+        /**
+         * Adds a file, with a content type guessed from its name.
+         *
+         * @param name the field name
+         * @param file the file to upload
+         * @return the Builder instance
+         * @throws FileNotFoundException if the file does not exist or cannot be read
+         * @throws IOException if the file's size cannot be read
+         */
+        public Builder file(String name, File file) throws IOException {
+            return file(name, file.toPath(), null);
+        }
+
+        /**
+         * Adds a file.
+         *
+         * @param name the field name
+         * @param file the file to upload
+         * @param contentType the content type of the file, or null to guess it from the file name
+         * @return the Builder instance
+         * @throws FileNotFoundException if the file does not exist or cannot be read
+         * @throws IOException if the file's size cannot be read
+         */
+        public Builder file(String name, Path file, String contentType) throws IOException {
+            String fileName = file.getFileName().toString();
+            if (contentType == null) {
+                contentType = URLConnection.guessContentTypeFromName(fileName);
+                if (contentType == null) contentType = "application/octet-stream";
+            }
+            long length = fileSize(file);
+            parts.add(new Part(header(name, fileName, contentType), null, file, length));
+            return this;
+        }
+
+        /**
+         * Adds a part with arbitrary content.
+         *
+         * @param name the field name
+         * @param fileName the file name, or null
+         * @param contentType the content type, or null
+         * @param data the content
+         * @return the Builder instance
+         */
+        public Builder part(String name, String fileName, String contentType, byte[] data) {
+            parts.add(new Part(header(name, fileName, contentType), data.clone(), null, data.length));
+            return this;
+        }
+
+        /**
+         * Builds and returns the MultipartBody.
+         *
+         * @return the constructed MultipartBody
+         * @throws IllegalArgumentException if no part was added
+         */
+        public MultipartBody build() {
+            if (parts.isEmpty()) throw new IllegalArgumentException("Multipart body must have at least one part");
+            String boundary = this.boundary != null ? this.boundary : randomBoundary();
+            byte[] delimiter = ("--" + boundary + "\r\n").getBytes(StandardCharsets.US_ASCII);
+            List<Part> framed = new ArrayList<>(parts.size());
+            for (Part part : parts) {
+                byte[] head = new byte[delimiter.length + part.head.length];
+                System.arraycopy(delimiter, 0, head, 0, delimiter.length);
+                System.arraycopy(part.head, 0, head, delimiter.length, part.head.length);
+                framed.add(new Part(head, part.data, part.file, part.length));
+            }
+            return new MultipartBody(boundary, Collections.unmodifiableList(framed));
+        }
+
+        private static byte[] header(String name, String fileName, String contentType) {
+            StringBuilder header = new StringBuilder("Content-Disposition: form-data; name=\"").append(escape(name)).append('"');
+            if (fileName != null) header.append("; filename=\"").append(escape(fileName)).append('"');
+            header.append("\r\n");
+            if (contentType != null) header.append("Content-Type: ").append(contentType).append("\r\n");
+            header.append("\r\n");
+            return header.toString().getBytes(StandardCharsets.UTF_8);
+        }
+
+        private static String escape(String value) {
+            return value.replace("\"", "%22").replace("\r", "%0D").replace("\n", "%0A");
+        }
+
+        private static String randomBoundary() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            return "----YuzukiBoundary" + Long.toHexString(random.nextLong()) + Long.toHexString(random.nextLong());
+        }
+    }
+}
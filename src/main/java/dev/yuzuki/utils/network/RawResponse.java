@@ -0,0 +1,68 @@
+package dev.yuzuki.utils.network;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The status, headers and unread body of a response as it comes off the wire.
+ * Closing it, or reading the body to the end, hands the connection back.
+ */
+final class RawResponse implements Closeable {
+    private static final int DISCARD_LIMIT = 64 * 1024;
+
+    final int code;
+    final String message;
+
+    /**
+     * Response headers keyed case-insensitively.
+     */
+    final Map<String, List<String>> headers;
+    final InputStream body;
+
+    RawResponse(int code, String message, Map<String, List<String>> headers, InputStream body) {
+        this.code = code;
+        this.message = message;
+        this.headers = headers;
+        this.body = body;
+    }
+
+    /**
+     * Returns the first value of a header.
+     *
+     * @param name the header name, case-insensitive
+     * @return the value, or null if absent
+     */
+    String header(String name) {
+        List<String> values = headers.get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    /**
+     * Skips a small remaining body so the connection can be reused, and closes the response.
+     */
+    void discard() {
+        try {
+            byte[] buffer = new byte[8192];
+            int total = 0;
+            int read;
+            while (total < DISCARD_LIMIT && (read = body.read(buffer)) != -1) {
+                total += read;
+            }
+        } catch (IOException ignored) {
+            // the connection is dropped by close()
+        }
+        close();
+    }
+
+    @Override
+    public void close() {
+        try {
+            body.close();
+        } catch (IOException ignored) {
+            // nothing left to release
+        }
+    }
+}
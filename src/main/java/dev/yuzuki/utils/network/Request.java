@@ -1,19 +1,33 @@
 package dev.yuzuki.utils.network;
 
 import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Represents an HTTP request with various attributes such as URL, method, headers, body, and file.
  */
 public class Request {
+    private static final Set<String> IDEMPOTENT_METHODS = new HashSet<>(Arrays.asList("GET", "HEAD", "OPTIONS", "TRACE", "PUT", "DELETE"));
+
     private String url;
     private String method;
     private Map<String, String> headers;
     private String body;
+    private Charset charset = StandardCharsets.UTF_8;
+    private RequestBody encodedBody;
     private File file;
     private String fileFieldName;
+    private MultipartBody fileBody;
+    private RequestBody requestBody;
+    private int timeout;
 
     /**
      * Constructs an empty Request object.
@@ -114,6 +128,13 @@ public class Request {
         this.method = method;
     }
 
+    /**
+     * Returns whether sending a request with the given method twice has the same effect as sending it once.
+     */
+    static boolean isIdempotent(String method) {
+        return IDEMPOTENT_METHODS.contains(method);
+    }
+
     /**
      * Returns the headers of the request.
      *
@@ -142,16 +163,55 @@ public class Request {
     }
 
     /**
-     * Sets the body of the request.
+     * Sets the body of the request, which is encoded with the request's charset.
      *
      * @param body the body to set
      */
     public void setBody(String body) {
         this.body = body;
+        this.encodedBody = null;
+    }
+
+    /**
+     * Returns the charset the String body is encoded with.
+     *
+     * @return the charset, UTF-8 by default
+     */
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Sets the charset the String body is encoded with.
+     *
+     * @param charset the charset to set
+     */
+    public void setCharset(Charset charset) {
+        this.charset = charset;
+        this.encodedBody = null;
+    }
+
+    /**
+     * Returns the body object of the request, which takes precedence over the file and the String body.
+     *
+     * @return the body object of the request, or null
+     */
+    public RequestBody getRequestBody() {
+        return requestBody;
     }
 
     /**
-     * Returns the file to be sent with the request.
+     * Sets the body object of the request, which takes precedence over the file and the String body.
+     *
+     * @param requestBody the body to set, for example a {@link MultipartBody}
+     */
+    public void setRequestBody(RequestBody requestBody) {
+        this.requestBody = requestBody;
+    }
+
+    /**
+     * Returns the file to be sent with the request. The file is uploaded as multipart/form-data under
+     * the file field name, and takes precedence over the String body.
      *
      * @return the file to be sent with the request
      */
@@ -166,6 +226,7 @@ public class Request {
      */
     public void setFile(File file) {
         this.file = file;
+        this.fileBody = null;
     }
 
     /**
@@ -184,6 +245,79 @@ public class Request {
      */
     public void setFileFieldName(String fileFieldName) {
         this.fileFieldName = fileFieldName;
+        this.fileBody = null;
+    }
+
+    /**
+     * Returns the time the whole request may take, including connecting, redirects and reading the response.
+     *
+     * @return the timeout in milliseconds, 0 if only the client's connect and read timeouts apply
+     */
+    public int getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Sets the time the whole request may take, including connecting, redirects and reading the response.
+     *
+     * @param timeout the timeout in milliseconds, 0 if only the client's connect and read timeouts apply
+     */
+    public void setTimeout(int timeout) {
+        if (timeout < 0) throw new IllegalArgumentException("Timeout must not be negative");
+        this.timeout = timeout;
+    }
+
+    /**
+     * Returns the body to send: the body object, else the file as multipart/form-data, else the String body.
+     * The file's multipart body keeps its boundary until the file or its field name is changed, but the file's size is
+     * read again on every call, so a file that changed between two sends is sent whole. The String body is encoded
+     * once and kept until it or its charset is changed.
+     *
+     * @return the body, or null if the request has none
+     * @throws FileNotFoundException if the file does not exist or cannot be read
+     * @throws IOException if the file's size cannot be read
+     */
+    RequestBody resolveBody() throws IOException {
+        if (requestBody != null) {
+            return requestBody;
+        }
+        if (file != null) {
+            MultipartBody multipart = fileBody;
+            if (multipart == null) {
+                multipart = MultipartBody.builder().file(fileFieldName != null ? fileFieldName : "file", file).build();
+            } else {
+                multipart = multipart.refreshed();
+            }
+            fileBody = multipart;
+            return multipart;
+        }
+        if (body == null) {
+            return null;
+        }
+        RequestBody encoded = encodedBody;
+        if (encoded == null) {
+            encoded = RequestBody.of(body.getBytes(charset), null);
+            encodedBody = encoded;
+        }
+        return encoded;
+    }
+
+    /**
+     * Returns whether the request has a body, without reading the file.
+     *
+     * @return true if a body object, a file or a String body is set
+     */
+    boolean hasBody() {
+        return requestBody != null || file != null || body != null;
+    }
+
+    /**
+     * Returns whether the body can be sent again, without reading the file.
+     *
+     * @return false only for a body object that cannot be written twice
+     */
+    boolean isBodyRepeatable() {
+        return requestBody == null || requestBody.isRepeatable();
     }
 
     /**
@@ -246,6 +380,30 @@ public class Request {
             return this;
         }
 
+        /**
+         * Sets the body of the request and the charset it is encoded with.
+         *
+         * @param body the body to set
+         * @param charset the charset to encode the body with
+         * @return the Builder instance
+         */
+        public Builder body(String body, Charset charset) {
+            request.setBody(body);
+            request.setCharset(charset);
+            return this;
+        }
+
+        /**
+         * Sets the body of the request.
+         *
+         * @param body the body to set, for example a {@link MultipartBody} or one of the {@code RequestBody.of} bodies
+         * @return the Builder instance
+         */
+        public Builder body(RequestBody body) {
+            request.setRequestBody(body);
+            return this;
+        }
+
         /**
          * Sets the file and field name for the request.
          *
@@ -259,6 +417,17 @@ public class Request {
             return this;
         }
 
+        /**
+         * Sets the time the whole request may take, including connecting, redirects and reading the response.
+         *
+         * @param timeout the timeout in milliseconds, 0 if only the client's connect and read timeouts apply
+         * @return the Builder instance
+         */
+        public Builder timeout(int timeout) {
+            request.setTimeout(timeout);
+            return this;
+        }
+
         /**
          * Builds and returns the Request object.
          *
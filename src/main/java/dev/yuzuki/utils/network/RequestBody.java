@@ -0,0 +1,316 @@
+package dev.yuzuki.utils.network;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The body of a request, written to the connection when the request is sent. <br>
+ * Usage:
+ * <pre>
+ *     {@code
+ *     Request request = Request.builder()
+ *             .url("https://api.example.com/upload")
+ *             .method(Request.Method.POST)
+ *             .body(RequestBody.of(message.toByteArray(), "application/x-protobuf"))
+ *             .build();
+ *     }
+ * </pre>
+ *
+ * The length of every body created here is known up front, except for streams given a length of -1,
+ * which are sent chunked. A body may be written more than once, for example when a request is retried on a new
+ * connection, so implementations must produce the same bytes every time {@link #writeTo(OutputStream)} is called,
+ * or report that they cannot through {@link #isRepeatable()}.
+ */
+public abstract class RequestBody {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final ThreadLocal<ByteBuffer> BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocate(BUFFER_SIZE));
+
+    /**
+     * Returns a body holding the given bytes. The array is not copied and must not be modified afterwards.
+     *
+     * @param data the bytes
+     * @param contentType the content type, or null
+     * @return the body
+     */
+    public static RequestBody of(byte[] data, String contentType) {
+        return of(data, 0, data.length, contentType);
+    }
+
+    /**
+     * Returns a body holding a range of the given bytes. The array is not copied and must not be modified afterwards.
+     *
+     * @param data the bytes
+     * @param offset the start of the range
+     * @param length the length of the range
+     * @param contentType the content type, or null
+     * @return the body
+     */
+    public static RequestBody of(byte[] data, int offset, int length, String contentType) {
+        if (offset < 0 || length < 0 || offset > data.length - length) throw new IndexOutOfBoundsException();
+        return new RequestBody() {
+            @Override
+            public String contentType() {
+                return contentType;
+            }
+
+            @Override
+            public long contentLength() {
+                return length;
+            }
+
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                out.write(data, offset, length);
+            }
+        };
+    }
+
+    /**
+     * Returns a body holding the remaining bytes of a buffer. The buffer's position is not changed, and its content
+     * must not be modified afterwards. Direct buffers are copied to the connection in 64 KB pieces.
+     *
+     * @param buffer the buffer
+     * @param contentType the content type, or null
+     * @return the body
+     */
+    public static RequestBody of(ByteBuffer buffer, String contentType) {
+        ByteBuffer data = buffer.slice();
+        if (data.hasArray()) {
+            return of(data.array(), data.arrayOffset(), data.remaining(), contentType);
+        }
+        return new RequestBody() {
+            @Override
+            public String contentType() {
+                return contentType;
+            }
+
+            @Override
+            public long contentLength() {
+                return data.remaining();
+            }
+
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                ByteBuffer source = data.duplicate();
+                byte[] chunk = BUFFER.get().array();
+                while (source.hasRemaining()) {
+                    int length = Math.min(chunk.length, source.remaining());
+                    source.get(chunk, 0, length);
+                    out.write(chunk, 0, length);
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns a body holding a string, encoded once with the given charset.
+     *
+     * @param text the text
+     * @param charset the charset, which is added to the content type if it has none
+     * @param contentType the content type, or null
+     * @return the body
+     */
+    public static RequestBody of(String text, Charset charset, String contentType) {
+        if (contentType != null && !contentType.toLowerCase(Locale.ROOT).contains("charset=")) {
+            contentType = contentType + "; charset=" + charset.name();
+        }
+        return of(text.getBytes(charset), contentType);
+    }
+
+    /**
+     * Returns a body streaming a file from disk. The file's size is read now.
+     *
+     * @param file the file
+     * @param contentType the content type, or null
+     * @return the body
+     * @throws FileNotFoundException if the file does not exist or cannot be read
+     * @throws IOException if the file's size cannot be read
+     */
+    public static RequestBody of(Path file, String contentType) throws IOException {
+        long length = fileSize(file);
+        return new RequestBody() {
+            @Override
+            public String contentType() {
+                return contentType;
+            }
+
+            @Override
+            public long contentLength() {
+                return length;
+            }
+
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                writeFile(file, length, out);
+            }
+        };
+    }
+
+    /**
+     * Returns a body streaming a file from disk. The file's size is read now.
+     *
+     * @param file the file
+     * @param contentType the content type, or null
+     * @return the body
+     * @throws FileNotFoundException if the file does not exist or cannot be read
+     * @throws IOException if the file's size cannot be read
+     */
+    public static RequestBody of(File file, String contentType) throws IOException {
+        return of(file.toPath(), contentType);
+    }
+
+    /**
+     * Returns a body that opens a new stream every time it is written, so it can be sent again.
+     *
+     * @param supplier opens the stream, which is closed after it has been written
+     * @param length the number of bytes the stream provides, or -1 if unknown
+     * @param contentType the content type, or null
+     * @return the body
+     */
+    public static RequestBody of(InputStreamSupplier supplier, long length, String contentType) {
+        return new RequestBody() {
+            @Override
+            public String contentType() {
+                return contentType;
+            }
+
+            @Override
+            public long contentLength() {
+                return length;
+            }
+
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                try (InputStream in = supplier.open()) {
+                    copy(in, out);
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns a body reading a stream once. A request with such a body cannot be retried after the stream was read.
+     *
+     * @param in the stream, which is closed after it has been written
+     * @param length the number of bytes the stream provides, or -1 if unknown
+     * @param contentType the content type, or null
+     * @return the body
+     */
+    public static RequestBody of(InputStream in, long length, String contentType) {
+        AtomicBoolean consumed = new AtomicBoolean();
+        return new RequestBody() {
+            @Override
+            public String contentType() {
+                return contentType;
+            }
+
+            @Override
+            public long contentLength() {
+                return length;
+            }
+
+            @Override
+            public boolean isRepeatable() {
+                return !consumed.get();
+            }
+
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                if (consumed.getAndSet(true)) throw new IOException("The request body stream has already been read");
+                try (InputStream stream = in) {
+                    copy(stream, out);
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the media type sent as the Content-Type header.
+     *
+     * @return the content type, or null to leave it to the client
+     */
+    public abstract String contentType();
+
+    /**
+     * Returns the number of bytes {@link #writeTo(OutputStream)} writes.
+     *
+     * @return the length, or -1 if it is unknown and the body must be sent chunked
+     */
+    public abstract long contentLength();
+
+    /**
+     * Writes the body.
+     *
+     * @param out the stream to write to, which must not be closed
+     * @throws IOException if the body could not be read or written
+     */
+    public abstract void writeTo(OutputStream out) throws IOException;
+
+    /**
+     * Returns whether {@link #writeTo(OutputStream)} can be called again.
+     *
+     * @return true by default
+     */
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    /**
+     * Returns the size of a file that is about to be sent, failing like {@link java.io.FileInputStream} does for a
+     * file that is missing or cannot be read.
+     */
+    static long fileSize(Path file) throws IOException {
+        if (!Files.isRegularFile(file) || !Files.isReadable(file)) {
+            throw new FileNotFoundException(file + " (not a readable file)");
+        }
+        return Files.size(file);
+    }
+
+    /**
+     * Copies a file through a {@link FileChannel}, checking that it still has the expected size.
+     */
+    static void writeFile(Path file, long length, OutputStream out) throws IOException {
+        ByteBuffer buffer = BUFFER.get();
+        long remaining = length;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (remaining > 0) {
+                buffer.clear();
+                if (remaining < buffer.capacity()) buffer.limit((int) remaining);
+                int read = channel.read(buffer);
+                if (read == -1) break;
+                out.write(buffer.array(), 0, read);
+                remaining -= read;
+            }
+            if (remaining != 0 || channel.size() != length) {
+                throw new IOException("File changed size while being sent: " + file);
+            }
+        }
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = BUFFER.get().array();
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+    }
+
+    /**
+     * Opens the stream a body is read from.
+     */
+    @FunctionalInterface
+    public interface InputStreamSupplier {
+        InputStream open() throws IOException;
+    }
+}
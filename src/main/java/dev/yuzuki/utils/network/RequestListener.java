@@ -0,0 +1,29 @@
+package dev.yuzuki.utils.network;
+
+/**
+ * Receives every request an {@link HttpClient} finishes, for example to feed a metrics system. <br>
+ * Usage:
+ * <pre>
+ *     {@code
+ *     HttpClient client = HttpClient.builder()
+ *             .requestListener((request, code, timings, failure) -> {
+ *                 if (timings.getTotalNanos() > 1_000_000_000L) System.out.println("Slow: " + request.getUrl() + " " + timings);
+ *             })
+ *             .build();
+ *     }
+ * </pre>
+ */
+@FunctionalInterface
+public interface RequestListener {
+
+    /**
+     * Called once a request has finished, on the thread that finished it. Streamed responses finish when they are
+     * closed. It must return quickly; exceptions it throws are ignored.
+     *
+     * @param request the request
+     * @param code the status code, or -1 if the request failed
+     * @param timings where the time of the request went
+     * @param failure the exception that failed the request, or null
+     */
+    void onRequestFinished(Request request, int code, RequestTimings timings, Throwable failure);
+}
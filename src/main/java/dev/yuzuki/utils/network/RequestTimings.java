@@ -0,0 +1,168 @@
+package dev.yuzuki.utils.network;
+
+/**
+ * Where the time of one request went, in nanoseconds. <br>
+ * Phases add up over every exchange of the request, so retries and redirects are included. Phases a request did not
+ * go through, such as DNS and connecting on a reused connection, are 0; the HTTP/2 transport only reports the
+ * time to first byte and the download.
+ */
+public class RequestTimings {
+    private final long dnsNanos;
+    private final long connectNanos;
+    private final long tlsNanos;
+    private final long poolWaitNanos;
+    private final long sendNanos;
+    private final long timeToFirstByteNanos;
+    private final long downloadNanos;
+    private final long decodeNanos;
+    private final long totalNanos;
+    private final long bytesSent;
+    private final long bytesReceived;
+    private final int exchanges;
+
+    RequestTimings(long dnsNanos, long connectNanos, long tlsNanos, long poolWaitNanos, long sendNanos,
+                   long timeToFirstByteNanos, long downloadNanos, long decodeNanos, long totalNanos,
+                   long bytesSent, long bytesReceived, int exchanges) {
+        this.dnsNanos = dnsNanos;
+        this.connectNanos = connectNanos;
+        this.tlsNanos = tlsNanos;
+        this.poolWaitNanos = poolWaitNanos;
+        this.sendNanos = sendNanos;
+        this.timeToFirstByteNanos = timeToFirstByteNanos;
+        this.downloadNanos = downloadNanos;
+        this.decodeNanos = decodeNanos;
+        this.totalNanos = totalNanos;
+        this.bytesSent = bytesSent;
+        this.bytesReceived = bytesReceived;
+        this.exchanges = exchanges;
+    }
+
+    /**
+     * Returns a copy with the time spent converting the body added, such as decoding an image.
+     *
+     * @param decodeNanos the time the conversion took
+     * @return the new timings
+     */
+    RequestTimings withDecode(long decodeNanos) {
+        return new RequestTimings(dnsNanos, connectNanos, tlsNanos, poolWaitNanos, sendNanos, timeToFirstByteNanos,
+                downloadNanos, this.decodeNanos + decodeNanos, totalNanos, bytesSent, bytesReceived, exchanges);
+    }
+
+    /**
+     * Returns the time spent resolving host names.
+     *
+     * @return the DNS time in nanoseconds
+     */
+    public long getDnsNanos() {
+        return dnsNanos;
+    }
+
+    /**
+     * Returns the time spent opening TCP connections.
+     *
+     * @return the connect time in nanoseconds
+     */
+    public long getConnectNanos() {
+        return connectNanos;
+    }
+
+    /**
+     * Returns the time spent in TLS handshakes.
+     *
+     * @return the handshake time in nanoseconds
+     */
+    public long getTlsNanos() {
+        return tlsNanos;
+    }
+
+    /**
+     * Returns the time spent waiting for a pooled connection to become free.
+     *
+     * @return the pool wait in nanoseconds
+     */
+    public long getPoolWaitNanos() {
+        return poolWaitNanos;
+    }
+
+    /**
+     * Returns the time spent writing the request head and body.
+     *
+     * @return the send time in nanoseconds
+     */
+    public long getSendNanos() {
+        return sendNanos;
+    }
+
+    /**
+     * Returns the time from the request being sent to the first byte of the response, which is mostly the server's
+     * processing time.
+     *
+     * @return the time to first byte in nanoseconds
+     */
+    public long getTimeToFirstByteNanos() {
+        return timeToFirstByteNanos;
+    }
+
+    /**
+     * Returns the time spent reading the response head and body, including decompression.
+     *
+     * @return the download time in nanoseconds
+     */
+    public long getDownloadNanos() {
+        return downloadNanos;
+    }
+
+    /**
+     * Returns the time spent converting the body, such as decoding an image or text.
+     *
+     * @return the decode time in nanoseconds, 0 until the response is converted
+     */
+    public long getDecodeNanos() {
+        return decodeNanos;
+    }
+
+    /**
+     * Returns the time from the request being sent by the caller to the response being read, including waits
+     * between retries.
+     *
+     * @return the total time in nanoseconds
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * Returns the number of bytes written for the request heads and bodies.
+     *
+     * @return the bytes sent
+     */
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * Returns the number of response body bytes read from the network, before decompression.
+     *
+     * @return the bytes received
+     */
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /**
+     * Returns the number of exchanges with servers, counting retries and redirects.
+     *
+     * @return the number of exchanges, 0 if the request was answered from the cache
+     */
+    public int getExchanges() {
+        return exchanges;
+    }
+
+    @Override
+    public String toString() {
+        return "dns=" + dnsNanos + "ns, connect=" + connectNanos + "ns, tls=" + tlsNanos + "ns, poolWait=" + poolWaitNanos
+                + "ns, send=" + sendNanos + "ns, ttfb=" + timeToFirstByteNanos + "ns, download=" + downloadNanos
+                + "ns, decode=" + decodeNanos + "ns, total=" + totalNanos + "ns, sent=" + bytesSent
+                + "B, received=" + bytesReceived + "B, exchanges=" + exchanges;
+    }
+}
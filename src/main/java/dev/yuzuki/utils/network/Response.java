@@ -1,5 +1,13 @@
 package dev.yuzuki.utils.network;
 
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Represents a generic network response.
  *
@@ -10,6 +18,8 @@ public class Response<T> {
     private final HttpStatus httpStatus;
     private final long tookTime;
     private final T t;
+    private final Map<String, List<String>> headers;
+    private final RequestTimings timings;
 
     /**
      * Constructs a new Response with the specified status code, time taken, and response data.
@@ -19,10 +29,37 @@ public class Response<T> {
      * @param t the response data
      */
     public Response(int code, long tookTime, T t) {
+        this(code, tookTime, t, Collections.emptyMap());
+    }
+
+    /**
+     * Constructs a new Response with the specified status code, time taken, response data, and headers.
+     *
+     * @param code the HTTP status code of the response
+     * @param tookTime the time taken to receive the response
+     * @param t the response data
+     * @param headers the response headers, keyed case-insensitively
+     */
+    public Response(int code, long tookTime, T t, Map<String, List<String>> headers) {
+        this(code, tookTime, t, headers, null);
+    }
+
+    /**
+     * Constructs a new Response with the specified status code, time taken, response data, headers, and timings.
+     *
+     * @param code the HTTP status code of the response
+     * @param tookTime the time taken to receive the response
+     * @param t the response data
+     * @param headers the response headers, keyed case-insensitively
+     * @param timings the timing breakdown of the request, or null
+     */
+    public Response(int code, long tookTime, T t, Map<String, List<String>> headers, RequestTimings timings) {
         this.code = code;
         this.tookTime = tookTime;
         this.t = t;
         this.httpStatus = HttpStatus.fromCode(code);
+        this.headers = Collections.unmodifiableMap(headers);
+        this.timings = timings;
     }
 
     /**
@@ -52,6 +89,57 @@ public class Response<T> {
         return t;
     }
 
+    /**
+     * Returns the response headers.
+     *
+     * @return an unmodifiable map of header names to their values
+     */
+    public Map<String, List<String>> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Returns the first value of a response header.
+     *
+     * @param name the header name, case-insensitive if the response came from {@link HttpClient}
+     * @return the value, or null if absent
+     */
+    public String getHeader(String name) {
+        List<String> values = headers.get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    /**
+     * Returns the charset declared by the Content-Type header.
+     *
+     * @return the charset, or null if none is declared or it is not supported
+     */
+    public Charset getCharset() {
+        String contentType = getHeader("Content-Type");
+        if (contentType == null) return null;
+        for (String parameter : contentType.split(";")) {
+            int equals = parameter.indexOf('=');
+            if (equals < 0 || !parameter.substring(0, equals).trim().toLowerCase(Locale.ROOT).equals("charset")) continue;
+            String name = parameter.substring(equals + 1).trim();
+            if (name.length() >= 2 && name.startsWith("\"") && name.endsWith("\"")) name = name.substring(1, name.length() - 1);
+            try {
+                return Charset.forName(name);
+            } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns where the time of the request went, such as connecting, waiting for the server and downloading.
+     *
+     * @return the timings, or null if the response was not received by {@link HttpClient}
+     */
+    public RequestTimings getTimings() {
+        return timings;
+    }
+
     /**
      * Return the HTTPStatus.
      *
@@ -0,0 +1,220 @@
+package dev.yuzuki.utils.network;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * The buffered body of a {@link HttpClient.TemporaryResponse}, which can be decoded and read in place instead of
+ * being copied out with {@link #toByteArray()} first.
+ * <p>
+ * The views returned by {@link #newInputStream()}, {@link #newReader(Charset)} and {@link #asCharSequence(Charset)}
+ * share the buffer and see the bytes written before they were created.
+ */
+public class ResponseBuffer extends ByteArrayOutputStream {
+    private static final byte[] UTF_8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+    /**
+     * Constructs a new ResponseBuffer with the default initial size.
+     */
+    public ResponseBuffer() {
+        super();
+    }
+
+    /**
+     * Constructs a new ResponseBuffer with the specified initial size.
+     *
+     * @param size the initial size
+     */
+    public ResponseBuffer(int size) {
+        super(size);
+    }
+
+    /**
+     * Reads a stream to its end straight into the buffer.
+     *
+     * @param in the stream to read
+     * @return the number of bytes read
+     * @throws IOException if reading fails
+     */
+    public synchronized long readFrom(InputStream in) throws IOException {
+        long total = 0;
+        while (true) {
+            if (count == buf.length) {
+                // a buffer sized from Content-Length is full at the end of the body, so check before growing it
+                int next = in.read();
+                if (next == -1) return total;
+                write(next);
+                total++;
+            }
+            int read = in.read(buf, count, buf.length - count);
+            if (read == -1) return total;
+            count += read;
+            total += read;
+        }
+    }
+
+    /**
+     * Returns a stream reading the buffered bytes.
+     *
+     * @return a new input stream
+     */
+    public synchronized InputStream newInputStream() {
+        return new ByteArrayInputStream(buf, 0, count);
+    }
+
+    /**
+     * Decodes the buffered bytes, skipping a byte order mark.
+     *
+     * @param charset the charset of the text
+     * @return the text
+     */
+    public synchronized String toString(Charset charset) {
+        int bom = bomLength(charset);
+        return new String(buf, bom, count - bom, charset);
+    }
+
+    /**
+     * Returns a reader decoding the buffered bytes as they are read, skipping a byte order mark.
+     *
+     * @param charset the charset of the text
+     * @return a new reader
+     */
+    public synchronized Reader newReader(Charset charset) {
+        int bom = bomLength(charset);
+        return new InputStreamReader(new ByteArrayInputStream(buf, bom, count - bom), charset);
+    }
+
+    /**
+     * Returns the text as a CharSequence. ISO-8859-1 text is read straight from the buffer; other charsets are
+     * decoded into a single char buffer, without the intermediate copies of building a String.
+     *
+     * @param charset the charset of the text
+     * @return the text
+     */
+    public synchronized CharSequence asCharSequence(Charset charset) {
+        int bom = bomLength(charset);
+        if (charset.equals(StandardCharsets.ISO_8859_1)) return new Latin1Sequence(buf, bom, count - bom);
+        return charset.decode(ByteBuffer.wrap(buf, bom, count - bom));
+    }
+
+    /**
+     * Passes each line of the text to an action, such as each record of an NDJSON body. Lines end with {@code \n},
+     * {@code \r} or {@code \r\n}, as with {@link BufferedReader#readLine()}, and a final line without a terminator
+     * is passed as well.
+     *
+     * @param charset the charset of the text
+     * @param action the action receiving each line, without its line terminator
+     */
+    public void forEachLine(Charset charset, Consumer<String> action) {
+        byte[] bytes;
+        int end;
+        int start;
+        synchronized (this) {
+            bytes = buf;
+            end = count;
+            start = bomLength(charset);
+        }
+        if (!isAsciiCompatible(charset)) {
+            try (BufferedReader reader = new BufferedReader(newReader(charset))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    action.accept(line);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return;
+        }
+        // line terminator bytes are always line terminators in these charsets, so each line is decoded straight from
+        // the buffer, splitting where BufferedReader would
+        while (start < end) {
+            int lineEnd = start;
+            while (lineEnd < end && bytes[lineEnd] != '\n' && bytes[lineEnd] != '\r') lineEnd++;
+            action.accept(new String(bytes, start, lineEnd - start, charset));
+            start = lineEnd + 1;
+            if (start < end && bytes[lineEnd] == '\r' && bytes[start] == '\n') start++;
+        }
+    }
+
+    /**
+     * Guesses the charset of text whose response declares none: UTF-16 if it starts with a UTF-16 byte order mark,
+     * otherwise UTF-8.
+     *
+     * @return the charset
+     */
+    synchronized Charset detectCharset() {
+        if (count >= 2 && ((buf[0] == (byte) 0xFE && buf[1] == (byte) 0xFF) || (buf[0] == (byte) 0xFF && buf[1] == (byte) 0xFE))) {
+            return StandardCharsets.UTF_16;
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    /**
+     * Returns the length of the byte order mark at the start of the buffer that the charset's decoder would keep.
+     */
+    private int bomLength(Charset charset) {
+        if (charset.equals(StandardCharsets.UTF_8) && count >= 3
+                && buf[0] == UTF_8_BOM[0] && buf[1] == UTF_8_BOM[1] && buf[2] == UTF_8_BOM[2]) {
+            return 3;
+        }
+        if (count >= 2 && ((charset.equals(StandardCharsets.UTF_16BE) && buf[0] == (byte) 0xFE && buf[1] == (byte) 0xFF)
+                || (charset.equals(StandardCharsets.UTF_16LE) && buf[0] == (byte) 0xFF && buf[1] == (byte) 0xFE))) {
+            return 2;
+        }
+        return 0;
+    }
+
+    private static boolean isAsciiCompatible(Charset charset) {
+        return charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.ISO_8859_1)
+                || charset.equals(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * ISO-8859-1 text read straight from the bytes, each byte being one char.
+     */
+    private static final class Latin1Sequence implements CharSequence {
+        private final byte[] bytes;
+        private final int offset;
+        private final int length;
+
+        Latin1Sequence(byte[] bytes, int offset, int length) {
+            this.bytes = bytes;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+            return (char) (bytes[offset + index] & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > length || start > end) {
+                throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+            }
+            return new Latin1Sequence(bytes, offset + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package dev.yuzuki.utils.network;
+
+import javax.net.ssl.SSLHandshakeException;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.net.UnknownHostException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides whether and when a failed request is sent again. <br>
+ * Usage:
+ * <pre>
+ *     {@code
+ *     RetryPolicy retry = RetryPolicy.builder()
+ *             .maxAttempts(4)
+ *             .backoff(200, 5000, TimeUnit.MILLISECONDS)
+ *             .build();
+ *     HttpClient client = HttpClient.builder().retryPolicy(retry).build();
+ *     }
+ * </pre>
+ *
+ * Requests are retried after I/O errors and after responses with a retryable status code (408, 429, 502, 503 and
+ * 504 by default). The delay grows exponentially and is randomized with "full jitter", so that clients failing at the
+ * same moment do not come back at the same moment. A Retry-After header on the response replaces the computed delay.
+ * <p>
+ * Only idempotent methods are retried unless {@link Builder#retryNonIdempotent(boolean)} is set, since a POST that
+ * failed while its response was on the way may already have taken effect.
+ */
+public class RetryPolicy {
+    private final int maxAttempts;
+    private final long initialBackoff;
+    private final long maxBackoff;
+    private final double multiplier;
+    private final Set<Integer> retryStatusCodes;
+    private final boolean retryNonIdempotent;
+    private final long maxRetryAfter;
+
+    private RetryPolicy(Builder builder) {
+        this.maxAttempts = builder.maxAttempts;
+        this.initialBackoff = builder.initialBackoff;
+        this.maxBackoff = builder.maxBackoff;
+        this.multiplier = builder.multiplier;
+        this.retryStatusCodes = new HashSet<>(builder.retryStatusCodes);
+        this.retryNonIdempotent = builder.retryNonIdempotent;
+        this.maxRetryAfter = builder.maxRetryAfter;
+    }
+
+    /**
+     * Returns a new Builder instance for constructing a RetryPolicy.
+     *
+     * @return a new Builder instance
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns the maximum number of times a request is sent, including the first attempt.
+     *
+     * @return the maximum number of attempts
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Returns how long to wait before retrying a request that received a response.
+     *
+     * @param method the request method
+     * @param attempt the number of the attempt that just finished, starting at 1
+     * @param code the status code of the response
+     * @param retryAfter the Retry-After header of the response, or null
+     * @return the delay in milliseconds, or -1 if the response should be returned
+     */
+    long delayAfterResponse(String method, int attempt, int code, String retryAfter) {
+        if (!canRetry(method, attempt) || !retryStatusCodes.contains(code)) return -1;
+        if (retryAfter != null) {
+            long delay = parseRetryAfter(retryAfter);
+            if (delay >= 0) return delay <= maxRetryAfter ? delay : -1;
+        }
+        return backoff(attempt);
+    }
+
+    /**
+     * Returns how long to wait before retrying a request that failed.
+     *
+     * @param method the request method
+     * @param attempt the number of the attempt that just finished, starting at 1
+     * @param failure the exception that failed the attempt
+     * @return the delay in milliseconds, or -1 if the exception should be thrown
+     */
+    long delayAfterFailure(String method, int attempt, IOException failure) {
+        if (!canRetry(method, attempt) || !isRetryable(failure)) return -1;
+        return backoff(attempt);
+    }
+
+    private boolean canRetry(String method, int attempt) {
+        return attempt < maxAttempts && (retryNonIdempotent || Request.isIdempotent(method));
+    }
+
+    private long backoff(int attempt) {
+        double ceiling = Math.min(maxBackoff, initialBackoff * Math.pow(multiplier, attempt - 1));
+        return (long) (ThreadLocalRandom.current().nextDouble() * ceiling);
+    }
+
+    private static boolean isRetryable(IOException failure) {
+        // these fail the same way every time
+        return !(failure instanceof CircuitOpenException || failure instanceof LimitExceededException
+                || failure instanceof UnknownHostException
+                || failure instanceof ProtocolException || failure instanceof SSLHandshakeException
+                || failure instanceof SSLPeerUnverifiedException);
+    }
+
+    private static long parseRetryAfter(String value) {
+        value = value.trim();
+        try {
+            return Math.max(0, TimeUnit.SECONDS.toMillis(Long.parseLong(value)));
+        } catch (NumberFormatException ignored) {
+            // not delay-seconds, so it should be an HTTP date
+        }
+        try {
+            long at = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            return Math.max(0, at - System.currentTimeMillis());
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * A builder class for constructing RetryPolicy objects.
+     */
+    public static class Builder {
+        private int maxAttempts = 3;
+        private long initialBackoff = 100;
+        private long maxBackoff = 10_000;
+        private double multiplier = 2;
+        private Set<Integer> retryStatusCodes = new HashSet<>(Arrays.asList(408, 429, 502, 503, 504));
+        private boolean retryNonIdempotent;
+        private long maxRetryAfter = 60_000;
+
+        /**
+         * Sets the maximum number of times a request is sent, including the first attempt. 3 by default.
+         *
+         * @param maxAttempts the maximum number of attempts
+         * @return the Builder instance
+         */
+        public Builder maxAttempts(int maxAttempts) {
+            if (maxAttempts < 1) throw new IllegalArgumentException("maxAttempts must be at least 1");
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * Sets the backoff. The n-th retry waits a random time up to {@code min(max, initial * multiplier^(n-1))}.
+         * 100 ms up to 10 seconds by default.
+         *
+         * @param initial the cap of the first delay
+         * @param max the cap of every delay
+         * @param unit the unit of both
+         * @return the Builder instance
+         */
+        public Builder backoff(long initial, long max, TimeUnit unit) {
+            if (initial < 0 || max < initial) throw new IllegalArgumentException("Invalid backoff");
+            this.initialBackoff = unit.toMillis(initial);
+            this.maxBackoff = unit.toMillis(max);
+            return this;
+        }
+
+        /**
+         * Sets the factor by which the delay grows with every attempt. 2 by default.
+         *
+         * @param multiplier the multiplier, at least 1
+         * @return the Builder instance
+         */
+        public Builder multiplier(double multiplier) {
+            if (multiplier < 1) throw new IllegalArgumentException("multiplier must be at least 1");
+            this.multiplier = multiplier;
+            return this;
+        }
+
+        /**
+         * Sets the status codes that are retried. 408, 429, 502, 503 and 504 by default.
+         *
+         * @param codes the status codes
+         * @return the Builder instance
+         */
+        public Builder retryStatusCodes(Integer... codes) {
+            this.retryStatusCodes = new HashSet<>(Arrays.asList(codes));
+            return this;
+        }
+
+        /**
+         * Sets whether methods that are not idempotent, such as POST and PATCH, are retried as well. Disabled by default.
+         *
+         * @param retryNonIdempotent whether to retry every method
+         * @return the Builder instance
+         */
+        public Builder retryNonIdempotent(boolean retryNonIdempotent) {
+            this.retryNonIdempotent = retryNonIdempotent;
+            return this;
+        }
+
+        /**
+         * Sets the longest Retry-After delay that is waited for. A response asking to wait longer is returned as it is.
+         * One minute by default.
+         *
+         * @param maxRetryAfter the longest delay
+         * @param unit the unit of maxRetryAfter
+         * @return the Builder instance
+         */
+        public Builder maxRetryAfter(long maxRetryAfter, TimeUnit unit) {
+            this.maxRetryAfter = unit.toMillis(maxRetryAfter);
+            return this;
+        }
+
+        /**
+         * Builds and returns the RetryPolicy.
+         *
+         * @return the constructed RetryPolicy
+         */
+        public RetryPolicy build() {
+            return new RetryPolicy(this);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package dev.yuzuki.utils.network.response;
 
+import dev.yuzuki.utils.network.RequestTimings;
 import dev.yuzuki.utils.network.Response;
 
 import java.io.File;
@@ -7,6 +8,8 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Represents a binary response from a network request.
@@ -25,6 +28,31 @@ public class BinaryResponse extends Response<byte[]> {
         super(code, tookTime, data);
     }
 
+    /**
+     * Constructs a new BinaryResponse with the specified status code, time taken, data, and headers.
+     *
+     * @param code the HTTP status code of the response
+     * @param tookTime the time taken to receive the response
+     * @param data the binary data of the response
+     * @param headers the response headers
+     */
+    public BinaryResponse(int code, long tookTime, byte[] data, Map<String, List<String>> headers) {
+        super(code, tookTime, data, headers);
+    }
+
+    /**
+     * Constructs a new BinaryResponse with the specified status code, time taken, data, headers, and timings.
+     *
+     * @param code the HTTP status code of the response
+     * @param tookTime the time taken to receive the response
+     * @param data the binary data of the response
+     * @param headers the response headers
+     * @param timings the timing breakdown of the request
+     */
+    public BinaryResponse(int code, long tookTime, byte[] data, Map<String, List<String>> headers, RequestTimings timings) {
+        super(code, tookTime, data, headers, timings);
+    }
+
     public boolean writeToFile(Path path, String fileName) {
         try {
             Files.write(new File(path.toFile(), fileName).toPath(), get());
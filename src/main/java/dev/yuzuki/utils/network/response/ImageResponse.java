@@ -1,8 +1,11 @@
 package dev.yuzuki.utils.network.response;
 
+import dev.yuzuki.utils.network.RequestTimings;
 import dev.yuzuki.utils.network.Response;
 
 import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Represents an image response from a network request.
@@ -20,4 +23,29 @@ public class ImageResponse extends Response<BufferedImage> {
     public ImageResponse(int code, long tookTime, BufferedImage image) {
         super(code, tookTime, image);
     }
+
+    /**
+     * Constructs a new ImageResponse with the specified status code, time taken, image data, and headers.
+     *
+     * @param code the HTTP status code of the response
+     * @param tookTime the time taken to receive the response
+     * @param image the image data of the response
+     * @param headers the response headers
+     */
+    public ImageResponse(int code, long tookTime, BufferedImage image, Map<String, List<String>> headers) {
+        super(code, tookTime, image, headers);
+    }
+
+    /**
+     * Constructs a new ImageResponse with the specified status code, time taken, image data, headers, and timings.
+     *
+     * @param code the HTTP status code of the response
+     * @param tookTime the time taken to receive the response
+     * @param image the image data of the response
+     * @param headers the response headers
+     * @param timings the timing breakdown of the request
+     */
+    public ImageResponse(int code, long tookTime, BufferedImage image, Map<String, List<String>> headers, RequestTimings timings) {
+        super(code, tookTime, image, headers, timings);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,163 @@
+package dev.yuzuki.utils.network.response;
+
+import dev.yuzuki.utils.network.RequestTimings;
+import dev.yuzuki.utils.network.Response;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Represents a response whose body is read as it arrives instead of being buffered in memory.
+ * This class extends the generic Response class with an InputStream as the data type. <br>
+ * Usage:
+ * <pre>
+ *     {@code
+ *     try (StreamResponse response = client.stream(request)) {
+ *         response.transferTo(Paths.get("replay.bin"));
+ *     }
+ *     }
+ * </pre>
+ *
+ * The response must be closed. Reading the body to the end returns the connection to the pool;
+ * closing it early drops the connection.
+ */
+public class StreamResponse extends Response<InputStream> implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
+    /**
+     * Constructs a new StreamResponse with the specified status code, time taken, and body.
+     *
+     * @param code the HTTP status code of the response
+     * @param tookTime the time taken to receive the response headers
+     * @param body the response body
+     */
+    public StreamResponse(int code, long tookTime, InputStream body) {
+        super(code, tookTime, body);
+    }
+
+    /**
+     * Constructs a new StreamResponse with the specified status code, time taken, body, and headers.
+     *
+     * @param code the HTTP status code of the response
+     * @param tookTime the time taken to receive the response headers
+     * @param body the response body
+     * @param headers the response headers
+     */
+    public StreamResponse(int code, long tookTime, InputStream body, Map<String, List<String>> headers) {
+        super(code, tookTime, body, headers);
+    }
+
+    /**
+     * Constructs a new StreamResponse with the specified status code, time taken, body, headers, and timings.
+     *
+     * @param code the HTTP status code of the response
+     * @param tookTime the time taken to receive the response headers
+     * @param body the response body
+     * @param headers the response headers
+     * @param timings the timing breakdown of the request
+     */
+    public StreamResponse(int code, long tookTime, InputStream body, Map<String, List<String>> headers, RequestTimings timings) {
+        super(code, tookTime, body, headers, timings);
+    }
+
+    /**
+     * Returns the body as a channel.
+     *
+     * @return a channel reading from the body
+     */
+    public ReadableByteChannel channel() {
+        return Channels.newChannel(get());
+    }
+
+    /**
+     * Returns a reader decoding the body as it arrives, with the charset of the Content-Type header or UTF-8.
+     *
+     * @return a reader reading from the body
+     */
+    public Reader reader() {
+        Charset charset = getCharset();
+        return new InputStreamReader(get(), charset != null ? charset : StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Passes each line of the body to an action as soon as it has arrived, such as each record of an NDJSON
+     * stream. Returns once the body ends; the response still has to be closed.
+     *
+     * @param action the action receiving each line, without its line terminator
+     * @throws IOException if reading the body fails
+     */
+    public void forEachLine(Consumer<String> action) throws IOException {
+        BufferedReader reader = new BufferedReader(reader());
+        String line;
+        while ((line = reader.readLine()) != null) {
+            action.accept(line);
+        }
+    }
+
+    /**
+     * Writes the rest of the body to a file, replacing it. The body is written to a {@code .part} file next to
+     * the target first, so the target never holds a partial download.
+     *
+     * @param file the file to write
+     * @return the number of bytes written
+     * @throws IOException if reading the body or writing the file fails
+     */
+    public long transferTo(Path file) throws IOException {
+        Path partial = file.resolveSibling(file.getFileName() + ".part");
+        long total = 0;
+        try (FileChannel out = FileChannel.open(partial,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            InputStream in = get();
+            byte[] buffer = BUFFER.get();
+            ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                wrapped.clear();
+                wrapped.limit(read);
+                while (wrapped.hasRemaining()) {
+                    out.write(wrapped);
+                }
+                total += read;
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(partial);
+            throw e;
+        }
+
+        try {
+            Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return total;
+    }
+
+    /**
+     * Closes the body, dropping the connection if it has not been read to the end.
+     *
+     * @throws IOException if closing fails
+     */
+    @Override
+    public void close() throws IOException {
+        get().close();
+    }
+}
@@ -1,7 +1,11 @@
 package dev.yuzuki.utils.network.response;
 
+import dev.yuzuki.utils.network.RequestTimings;
 import dev.yuzuki.utils.network.Response;
 
+import java.util.List;
+import java.util.Map;
+
 /**
  * Represents a text response from a network request.
  * This class extends the generic Response class with a String as the data type.
@@ -18,4 +22,29 @@ public class TextResponse extends Response<String> {
     public TextResponse(int code, long tookTime, String text) {
         super(code, tookTime, text);
     }
+
+    /**
+     * Constructs a new TextResponse with the specified status code, time taken, text data, and headers.
+     *
+     * @param code the HTTP status code of the response
+     * @param tookTime the time taken to receive the response
+     * @param text the text data of the response
+     * @param headers the response headers
+     */
+    public TextResponse(int code, long tookTime, String text, Map<String, List<String>> headers) {
+        super(code, tookTime, text, headers);
+    }
+
+    /**
+     * Constructs a new TextResponse with the specified status code, time taken, text data, headers, and timings.
+     *
+     * @param code the HTTP status code of the response
+     * @param tookTime the time taken to receive the response
+     * @param text the text data of the response
+     * @param headers the response headers
+     * @param timings the timing breakdown of the request
+     */
+    public TextResponse(int code, long tookTime, String text, Map<String, List<String>> headers, RequestTimings timings) {
+        super(code, tookTime, text, headers, timings);
+    }
 }
\ No newline at end of file
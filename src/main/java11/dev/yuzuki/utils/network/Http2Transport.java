@@ -0,0 +1,371 @@
+package dev.yuzuki.utils.network;
+
+import javax.net.ssl.SSLContext;
+import java.io.*;
+import java.net.Authenticator;
+import java.net.MalformedURLException;
+import java.net.PasswordAuthentication;
+import java.net.ProxySelector;
+import java.net.SocketTimeoutException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+
+/**
+ * Sends requests with the JDK's HTTP client, which multiplexes them as HTTP/2 streams over a single connection per
+ * host when the server negotiates HTTP/2, and speaks HTTP/1.1 otherwise.
+ * <p>
+ * This class is only compiled for Java 11 and later and ships in the jar's {@code META-INF/versions/11}, so that
+ * {@link HttpClient} finds it on newer runtimes and keeps to {@link Http1Transport} on Java 8.
+ */
+final class Http2Transport implements HttpTransport {
+    // the JDK client manages these itself and refuses them
+    private static final Set<String> RESTRICTED_HEADERS = new HashSet<>(Arrays.asList(
+            "connection", "content-length", "expect", "host", "keep-alive", "transfer-encoding", "upgrade"));
+    private static final int BUFFERED_BODY_LIMIT = 64 * 1024;
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    private final java.net.http.HttpClient client;
+    private final Duration readTimeout;
+
+    Http2Transport(SSLContext sslContext, ProxySelector proxySelector, int connectTimeout, int readTimeout) {
+        java.net.http.HttpClient.Builder builder = java.net.http.HttpClient.newBuilder()
+                .version(java.net.http.HttpClient.Version.HTTP_2)
+                .followRedirects(java.net.http.HttpClient.Redirect.NEVER)
+                .authenticator(ProxyAuthenticator.INSTANCE);
+        if (sslContext != null) builder.sslContext(sslContext);
+        // without one the JDK client takes the default selector, which only supports HTTP proxies
+        if (proxySelector != null) builder.proxy(proxySelector);
+        if (connectTimeout > 0) builder.connectTimeout(Duration.ofMillis(connectTimeout));
+        this.client = builder.build();
+        this.readTimeout = readTimeout > 0 ? Duration.ofMillis(readTimeout) : null;
+    }
+
+    /**
+     * Sends a request as a stream on the host's shared connection. Small bodies are sent from memory, larger ones
+     * are written on the calling thread as fast as the connection's flow control lets them through.
+     */
+    @Override
+    public RawResponse execute(Call call, String method, URL url, Map<String, String> headers, RequestBody body) throws IOException {
+        HttpRequest.Builder builder;
+        try {
+            builder = HttpRequest.newBuilder(url.toURI());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            throw new MalformedURLException("Invalid URL: " + url);
+        }
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (!RESTRICTED_HEADERS.contains(header.getKey().toLowerCase(Locale.ROOT))) {
+                builder.setHeader(header.getKey(), header.getValue());
+            }
+        }
+        if (readTimeout != null) builder.timeout(readTimeout);
+
+        long sendStart = System.nanoTime();
+        StreamingPublisher streaming = null;
+        if (body == null) {
+            builder.method(method, HttpRequest.BodyPublishers.noBody());
+        } else if (body.contentLength() >= 0 && body.contentLength() <= BUFFERED_BODY_LIMIT) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream((int) body.contentLength());
+            body.writeTo(buffer);
+            builder.method(method, HttpRequest.BodyPublishers.ofByteArray(buffer.toByteArray()));
+            call.bytesSent += buffer.size();
+        } else {
+            streaming = new StreamingPublisher(body.contentLength());
+            builder.method(method, streaming);
+        }
+
+        Exchange exchange = new Exchange();
+        call.attach(exchange);
+        HttpResponse<InputStream> response;
+        try {
+            CompletableFuture<HttpResponse<InputStream>> future =
+                    client.sendAsync(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+            exchange.setFuture(future);
+            if (streaming != null) call.bytesSent += streaming.write(body, future);
+            response = await(future);
+            exchange.setBody(response.body());
+            // the JDK client does not tell connecting and sending apart
+            call.respondedAt = System.nanoTime();
+            call.timeToFirstByteNanos += call.respondedAt - sendStart;
+            call.exchanges++;
+        } catch (IOException e) {
+            call.detach(exchange);
+            exchange.close();
+            throw Http1Transport.aborted(call, e);
+        }
+
+        Map<String, List<String>> responseHeaders = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        responseHeaders.putAll(response.headers().map());
+        // HTTP/2 has no reason phrase
+        return new RawResponse(response.statusCode(), "", responseHeaders, new BodyInputStream(call, exchange, response.body()));
+    }
+
+    private static HttpResponse<InputStream> await(CompletableFuture<HttpResponse<InputStream>> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for the response");
+        } catch (CancellationException e) {
+            throw new InterruptedIOException("Request canceled");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof CancellationException) throw new InterruptedIOException("Request canceled");
+            if (cause instanceof HttpConnectTimeoutException) throw timeout("Connect timed out", cause);
+            if (cause instanceof HttpTimeoutException) throw timeout("Read timed out", cause);
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    private static SocketTimeoutException timeout(String message, Throwable cause) {
+        // the same exception the HTTP/1.1 transport throws
+        SocketTimeoutException timeout = new SocketTimeoutException(message);
+        timeout.initCause(cause);
+        return timeout;
+    }
+
+    /**
+     * What a canceled call closes: the pending response, or the body once it arrived.
+     */
+    private static final class Exchange implements Closeable {
+        private CompletableFuture<?> future;
+        private InputStream body;
+        private boolean closed;
+
+        synchronized void setFuture(CompletableFuture<?> future) {
+            this.future = future;
+            if (closed) future.cancel(true);
+        }
+
+        synchronized void setBody(InputStream body) throws IOException {
+            this.body = body;
+            if (closed) body.close();
+        }
+
+        @Override
+        public synchronized void close() {
+            closed = true;
+            if (future != null) future.cancel(true);
+            if (body != null) {
+                try {
+                    // resets the stream, leaving the connection to the other streams
+                    body.close();
+                } catch (IOException ignored) {
+                    // the reader fails with its own exception
+                }
+            }
+        }
+    }
+
+    /**
+     * A response body that stops the call from closing the exchange once it has been read or closed.
+     */
+    private static final class BodyInputStream extends FilterInputStream {
+        private final Call call;
+        private final Exchange exchange;
+
+        BodyInputStream(Call call, Exchange exchange, InputStream in) {
+            super(in);
+            this.call = call;
+            this.exchange = exchange;
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                int b = super.read();
+                if (b == -1) call.detach(exchange);
+                else call.bytesReceived++;
+                return b;
+            } catch (IOException e) {
+                throw Http1Transport.aborted(call, e);
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            try {
+                int read = super.read(b, off, len);
+                if (read == -1) call.detach(exchange);
+                else call.bytesReceived += read;
+                return read;
+            } catch (IOException e) {
+                throw Http1Transport.aborted(call, e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            call.detach(exchange);
+            super.close();
+        }
+    }
+
+    /**
+     * Publishes a body that is written on the calling thread, which waits whenever the client has not asked for
+     * more data, so that the body is never held in memory as a whole.
+     */
+    private static final class StreamingPublisher implements HttpRequest.BodyPublisher, Flow.Subscription {
+        private final long length;
+        private Flow.Subscriber<? super ByteBuffer> subscriber;
+        private long demand;
+        private boolean done;
+
+        StreamingPublisher(long length) {
+            this.length = length;
+        }
+
+        @Override
+        public long contentLength() {
+            return length;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            synchronized (this) {
+                if (this.subscriber == null) {
+                    this.subscriber = subscriber;
+                    notifyAll();
+                    subscriber = null;
+                }
+            }
+            if (subscriber == null) {
+                this.subscriber.onSubscribe(this);
+                return;
+            }
+            // the body is written once, so a resent request cannot get it again
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IOException("The request body cannot be sent twice"));
+        }
+
+        @Override
+        public synchronized void request(long n) {
+            if (n <= 0) {
+                cancel();
+                return;
+            }
+            demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+            notifyAll();
+        }
+
+        @Override
+        public synchronized void cancel() {
+            done = true;
+            notifyAll();
+        }
+
+        /**
+         * Writes the body to the subscriber, returning early if the exchange ends before the body was taken.
+         *
+         * @param body the body
+         * @param response the response, whose completion stops the writing
+         * @return the number of bytes handed to the client
+         * @throws IOException if the body could not be read
+         */
+        long write(RequestBody body, CompletableFuture<?> response) throws IOException {
+            long[] written = new long[1];
+            response.whenComplete((r, t) -> cancel());
+            OutputStream out = new BufferedOutputStream(new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    write(new byte[]{(byte) b}, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    while (len > 0) {
+                        int n = Math.min(len, CHUNK_SIZE);
+                        // the client may still hold the buffer after onNext returns
+                        ByteBuffer chunk = ByteBuffer.wrap(Arrays.copyOfRange(b, off, off + n));
+                        awaitDemand().onNext(chunk);
+                        written[0] += n;
+                        off += n;
+                        len -= n;
+                    }
+                }
+            }, CHUNK_SIZE);
+            try {
+                body.writeTo(out);
+                out.flush();
+            } catch (Abandoned e) {
+                // the exchange failed or was answered early, the response tells which
+                return written[0];
+            } catch (IOException | RuntimeException e) {
+                Flow.Subscriber<? super ByteBuffer> subscriber = finish();
+                if (subscriber != null) subscriber.onError(e);
+                throw e;
+            }
+            Flow.Subscriber<? super ByteBuffer> subscriber = finish();
+            if (subscriber != null) subscriber.onComplete();
+            return written[0];
+        }
+
+        private synchronized Flow.Subscriber<? super ByteBuffer> awaitDemand() throws IOException {
+            try {
+                while (!done && (subscriber == null || demand == 0)) wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted writing the request body");
+            }
+            if (done) throw new Abandoned();
+            demand--;
+            return subscriber;
+        }
+
+        private synchronized Flow.Subscriber<? super ByteBuffer> finish() throws IOException {
+            try {
+                // completing before the first request(n) races the JDK 11-17 HTTP/1.1 exchange, which only stores
+                // its subscriber once subscribe() has returned
+                while (!done && (subscriber == null || demand == 0)) wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted writing the request body");
+            }
+            if (done) return null;
+            done = true;
+            return subscriber;
+        }
+    }
+
+    private static final class Abandoned extends IOException {
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Passes a proxy's credential requests on to the default {@link Authenticator}, like {@link Http1Transport}.
+     * Servers' own challenges are left unanswered, so that their 401 responses reach the caller.
+     */
+    private static final class ProxyAuthenticator extends Authenticator {
+        static final ProxyAuthenticator INSTANCE = new ProxyAuthenticator();
+
+        @Override
+        protected PasswordAuthentication getPasswordAuthentication() {
+            Authenticator authenticator = Authenticator.getDefault();
+            if (getRequestorType() != RequestorType.PROXY || authenticator == null) return null;
+            return authenticator.requestPasswordAuthenticationInstance(getRequestingHost(), getRequestingSite(),
+                    getRequestingPort(), getRequestingProtocol(), getRequestingPrompt(), getRequestingScheme(),
+                    getRequestingURL(), RequestorType.PROXY);
+        }
+    }
+}
@@ -0,0 +1,745 @@
+import dev.yuzuki.utils.event.CancellableEvent;
+import dev.yuzuki.utils.event.EventBus;
+import dev.yuzuki.utils.event.EventDispatchException;
+import dev.yuzuki.utils.event.EventExceptionHandler;
+import dev.yuzuki.utils.event.EventExecutors;
+import dev.yuzuki.utils.event.Listener;
+import dev.yuzuki.utils.event.MetricsSnapshot;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class EventBusTest {
+
+    @Test
+    public void invokerTest() {
+        EventBus bus = new EventBus();
+        PrivateListener listener = new PrivateListener();
+        bus.register(listener);
+
+        Base event = new Base();
+        bus.post(event);
+        bus.post("text");
+        assertSame(event, listener.event);
+        assertEquals("text", listener.text);
+
+        // re-registering the same listener class must reuse its invokers instead of defining new classes
+        ClassLoadingMXBean classLoading = ManagementFactory.getClassLoadingMXBean();
+        bus.unregister(listener);
+        long loaded = classLoading.getTotalLoadedClassCount();
+        for (int i = 0; i < 1000; i++) {
+            PrivateListener again = new PrivateListener();
+            bus.register(again);
+            bus.post(event);
+            assertSame(event, again.event);
+            bus.unregister(again);
+        }
+        assertTrue(classLoading.getTotalLoadedClassCount() - loaded < 50);
+    }
+
+    @Test
+    public void hierarchyTest() {
+        List<String> received = new ArrayList<>();
+        EventBus bus = new EventBus();
+        bus.register(new Object() {
+            @Listener(priority = 1)
+            public void onBase(Base event) {
+                received.add("base");
+            }
+
+            @Listener
+            public void onChild(Child event) {
+                received.add("child");
+            }
+
+            @Listener(priority = 2)
+            public void onAny(Object event) {
+                received.add("any");
+            }
+        });
+
+        bus.post(new Child());
+        assertEquals(Arrays.asList("child", "base", "any"), received);
+    }
+
+    @Test
+    public void cancelTest() {
+        List<String> received = new ArrayList<>();
+        EventBus bus = new EventBus();
+        bus.register(new Object() {
+            @Listener
+            public void onFirst(Cancellable event) {
+                received.add("first");
+                event.setCancelled(true);
+            }
+
+            @Listener(priority = 1, ignoreCancelled = true)
+            public void onSkipped(Cancellable event) {
+                received.add("skipped");
+            }
+
+            @Listener(priority = 2)
+            public void onMonitor(Cancellable event) {
+                received.add("monitor");
+            }
+        });
+
+        bus.post(new Cancellable());
+        assertEquals(Arrays.asList("first", "monitor"), received);
+    }
+
+    @Test
+    public void batchTest() {
+        EventBus bus = new EventBus();
+        BatchListener listener = new BatchListener();
+        bus.register(listener);
+
+        bus.postAll(Arrays.asList("a", 1, "b", 2, "c"));
+        // one call per event class, in the order of the group's first event
+        assertEquals(Collections.singletonList(Arrays.asList("a", "b", "c")), listener.strings);
+        assertEquals(Arrays.asList(1, 2), listener.integers);
+
+        bus.post("d");
+        assertEquals(Collections.singletonList("d"), listener.strings.get(1));
+    }
+
+    @Test
+    public void coalesceTest() {
+        EventBus bus = new EventBus();
+        PositionListener listener = new PositionListener();
+        bus.register(listener);
+
+        bus.postCoalesced("player-1", new Position("player-1", 1));
+        bus.postCoalesced("player-2", new Position("player-2", 5));
+        bus.postCoalesced("player-1", new Position("player-1", 2));
+        assertEquals(0, listener.batches.size());
+
+        // the latest event per key, in the order each key first arrived, as one batch
+        assertEquals(2, bus.flush());
+        assertEquals(1, listener.batches.size());
+        assertEquals(Arrays.asList("player-1@2", "player-2@5"), listener.batches.get(0));
+        assertEquals(0, bus.flush());
+    }
+
+    @Test
+    public void queueWraparoundTest() {
+        EventBus bus = EventBus.builder().queue(4).build();
+        IntegerListener listener = new IntegerListener();
+        bus.register(listener);
+
+        List<Integer> expected = new ArrayList<>();
+        // each round fills the ring, so the slots are reused many times over
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 5; i++) bus.post(round * 5 + i);
+            for (int i = 0; i < 4; i++) expected.add(round * 5 + i);
+            assertEquals(4, bus.getQueueDepth());
+            assertEquals(round + 1, bus.getDroppedCount());
+            assertEquals(4, bus.drain());
+            assertEquals(0, bus.getQueueDepth());
+        }
+        assertEquals(expected, listener.events);
+    }
+
+    @Test
+    public void queueProducersTest() throws Exception {
+        int producers = 4;
+        int perProducer = 20_000;
+        SequenceListener listener = new SequenceListener(producers, producers * perProducer);
+        EventBus bus = EventBus.builder().queue(1 << 17).dispatcherThread().build();
+        try {
+            bus.register(listener);
+            List<Thread> threads = new ArrayList<>();
+            for (int p = 0; p < producers; p++) {
+                int producer = p;
+                Thread thread = new Thread(() -> {
+                    for (int i = 0; i < perProducer; i++) bus.post(new Sequenced(producer, i));
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads) thread.join();
+            assertTrue(listener.done.await(10, TimeUnit.SECONDS), "delivered " + listener.done.getCount() + " too few");
+            assertEquals(0, bus.getDroppedCount());
+            // each producer's events arrive in the order it posted them
+            assertEquals(0, listener.outOfOrder);
+        } finally {
+            bus.shutdown();
+        }
+    }
+
+    @Test
+    public void metricsTest() {
+        EventBus bus = EventBus.builder().metrics(true).build();
+        try {
+            bus.register(new MetricsListener());
+            bus.post("a");
+            bus.post("b");
+            assertThrows(IllegalStateException.class, () -> bus.post("fail"));
+            bus.postAsync(7).join();
+
+            MetricsSnapshot listener = bus.getListenerMetrics().get("EventBusTest$MetricsListener#onText(String)");
+            assertEquals(3, listener.getInvocations());
+            assertEquals(1, listener.getExceptions());
+            assertTrue(listener.getMaxNanos() > 0);
+            assertTrue(listener.getP50Nanos() <= listener.getP99Nanos());
+
+            MetricsSnapshot event = bus.getEventMetrics().get("java.lang.String");
+            assertEquals(3, event.getInvocations());
+            assertEquals(1, event.getExceptions());
+
+            // a parallel listener also records how long it waited for a thread
+            MetricsSnapshot parallel = bus.getListenerMetrics().get("EventBusTest$MetricsListener#onNumber(Integer)");
+            assertEquals(1, parallel.getInvocations());
+            assertEquals(1, parallel.getQueuedInvocations());
+
+            bus.resetMetrics();
+            assertEquals(0, bus.getListenerMetrics().get("EventBusTest$MetricsListener#onText(String)").getInvocations());
+            assertEquals(0, bus.getEventMetrics().get("java.lang.String").getInvocations());
+        } finally {
+            bus.shutdown();
+        }
+    }
+
+    @Test
+    public void metricsDisabledTest() {
+        EventBus bus = new EventBus();
+        bus.register(new MetricsListener());
+        bus.post("a");
+        assertTrue(bus.getListenerMetrics().isEmpty());
+        assertTrue(bus.getEventMetrics().isEmpty());
+    }
+
+    @Test
+    public void postAsyncFailureTest() throws Exception {
+        EventBus bus = new EventBus();
+        try {
+            FailingListener listener = new FailingListener();
+            bus.register(listener);
+            Order order = new Order();
+            CompletableFuture<Void> future = bus.postAsync(order);
+
+            // the slow parallel listener is still running, so the future waits for it
+            Thread.sleep(50);
+            assertFalse(future.isDone());
+            listener.release.countDown();
+
+            ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(2, TimeUnit.SECONDS));
+            EventDispatchException failure = (EventDispatchException) e.getCause();
+            assertSame(order, failure.getEvent());
+            // both failures are reported, and neither stopped the other listeners
+            assertEquals(1, failure.getSuppressed().length);
+            List<String> messages = Arrays.asList(failure.getCause().getMessage(), failure.getSuppressed()[0].getMessage());
+            assertTrue(messages.contains("sync") && messages.contains("parallel"), messages.toString());
+            assertTrue(listener.slowFinished.get());
+        } finally {
+            bus.shutdown();
+        }
+    }
+
+    @Test
+    public void postAsyncQueueFullTest() {
+        EventBus bus = EventBus.builder().queue(2).build();
+        bus.register(new IntegerListener());
+        CompletableFuture<Void> first = bus.postAsync(1);
+        bus.postAsync(2);
+        CompletableFuture<Void> rejected = bus.postAsync(3);
+
+        ExecutionException e = assertThrows(ExecutionException.class, rejected::get);
+        assertTrue(e.getCause() instanceof RejectedExecutionException);
+        // queued futures complete once their event has been drained
+        assertFalse(first.isDone());
+        bus.drain();
+        assertTrue(first.isDone() && !first.isCompletedExceptionally());
+    }
+
+    @Test
+    public void weakRegistrationTest() throws Exception {
+        EventBus bus = new EventBus();
+        PingListener strong = new PingListener(new AtomicInteger());
+        bus.register(strong);
+        AtomicInteger weakCalls = new AtomicInteger();
+        PingListener weak = new PingListener(weakCalls);
+        bus.registerWeak(weak);
+
+        bus.post(new Ping());
+        assertEquals(1, weakCalls.get());
+
+        WeakReference<PingListener> reference = new WeakReference<>(weak);
+        weak = null;
+        for (int i = 0; i < 50 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertNull(reference.get(), "the bus kept a weakly registered listener reachable");
+
+        // the collected listener is purged on the next post and the others keep receiving events
+        bus.post(new Ping());
+        bus.post(new Ping());
+        assertEquals(1, weakCalls.get());
+        assertEquals(3, strong.calls.get());
+    }
+
+    @Test
+    public void weakUnregisterTest() {
+        EventBus bus = new EventBus();
+        PingListener listener = new PingListener(new AtomicInteger());
+        bus.registerWeak(listener);
+        bus.unregister(listener);
+        bus.post(new Ping());
+        assertEquals(0, listener.calls.get());
+    }
+
+    @Test
+    public void overflowAbortTest() throws Exception {
+        JobListener listener = new JobListener();
+        EventBus bus = fullBus(listener, EventExecutors.Overflow.ABORT);
+        try {
+            assertRejected(bus.postAsync(new Job(false)));
+            listener.release.countDown();
+            listener.awaitFinished(2);
+        } finally {
+            bus.shutdown();
+        }
+    }
+
+    @Test
+    public void overflowDiscardTest() throws Exception {
+        JobListener listener = new JobListener();
+        List<Throwable> handled = new CopyOnWriteArrayList<>();
+        EventBus bus = fullBus(listener, EventExecutors.Overflow.DISCARD, (e, event) -> handled.add(e));
+        try {
+            // a plain post is dropped silently, but a future waiting for the listener fails instead of hanging
+            bus.post(new Job(false));
+            assertRejected(bus.postAsync(new Job(false)));
+            listener.release.countDown();
+            listener.awaitFinished(2);
+            assertTrue(handled.isEmpty(), handled.toString());
+        } finally {
+            bus.shutdown();
+        }
+    }
+
+    @Test
+    public void overflowCallerRunsTest() throws Exception {
+        JobListener listener = new JobListener();
+        EventBus bus = fullBus(listener, EventExecutors.Overflow.CALLER_RUNS);
+        try {
+            bus.postAsync(new Job(false)).get(2, TimeUnit.SECONDS);
+            assertTrue(listener.threads.contains(Thread.currentThread()));
+            listener.release.countDown();
+            listener.awaitFinished(3);
+        } finally {
+            bus.shutdown();
+        }
+    }
+
+    @Test
+    public void overflowBlockTest() throws Exception {
+        JobListener listener = new JobListener();
+        EventBus bus = fullBus(listener, EventExecutors.Overflow.BLOCK);
+        try {
+            CompletableFuture<CompletableFuture<Void>> posted = CompletableFuture.supplyAsync(() -> bus.postAsync(new Job(false)));
+            // the poster waits for room in the queue
+            assertThrows(TimeoutException.class, () -> posted.get(100, TimeUnit.MILLISECONDS));
+            listener.release.countDown();
+            posted.get(2, TimeUnit.SECONDS).get(2, TimeUnit.SECONDS);
+            listener.awaitFinished(3);
+        } finally {
+            bus.shutdown();
+        }
+    }
+
+    @Test
+    public void postAfterShutdownTest() throws Exception {
+        for (EventExecutors.Overflow overflow : EventExecutors.Overflow.values()) {
+            List<Throwable> handled = new CopyOnWriteArrayList<>();
+            EventBus bus = EventBus.builder().executor(EventExecutors.bounded(1, 1, overflow))
+                    .exceptionHandler((e, event) -> handled.add(e)).build();
+            JobListener listener = new JobListener();
+            listener.release.countDown();
+            bus.register(listener);
+            bus.shutdown();
+            assertTrue(bus.isShutdown());
+            assertTrue(bus.awaitTermination(1, TimeUnit.SECONDS));
+
+            assertRejected(bus.postAsync(new Job(false)));
+            bus.post(new Job(false));
+            assertEquals(1, handled.size(), overflow.name());
+            assertTrue(handled.get(0) instanceof RejectedExecutionException, overflow.name());
+            assertEquals(0, listener.finished.get(), overflow.name());
+            // synchronous listeners are still called
+            assertEquals(2, listener.synchronous.get(), overflow.name());
+        }
+    }
+
+    @Test
+    public void awaitTerminationTest() throws Exception {
+        JobListener listener = new JobListener();
+        EventBus bus = EventBus.builder().executor(EventExecutors.bounded(2, 8, EventExecutors.Overflow.ABORT)).build();
+        bus.register(listener);
+        CompletableFuture<Void> running = bus.postAsync(new Job(true));
+        bus.close();
+        assertFalse(bus.awaitTermination(50, TimeUnit.MILLISECONDS));
+        // shutting down lets submitted listeners finish
+        listener.release.countDown();
+        assertTrue(bus.awaitTermination(2, TimeUnit.SECONDS));
+        running.get(2, TimeUnit.SECONDS);
+        assertEquals(1, listener.finished.get());
+    }
+
+    @Test
+    public void executorStrategiesTest() throws Exception {
+        List<ExecutorService> executors = Arrays.asList(EventExecutors.unbounded(2), EventExecutors.forkJoin(2),
+                EventExecutors.callerRuns(), EventExecutors.virtualThreads());
+        for (ExecutorService executor : executors) {
+            JobListener listener = new JobListener();
+            listener.release.countDown();
+            EventBus bus = EventBus.builder().executor(executor).build();
+            bus.register(listener);
+            bus.postAsync(new Job(false)).get(2, TimeUnit.SECONDS);
+            assertEquals(1, listener.finished.get());
+            bus.shutdown();
+            assertRejected(bus.postAsync(new Job(false)));
+        }
+
+        JobListener listener = new JobListener();
+        listener.release.countDown();
+        EventBus bus = EventBus.builder().executor(EventExecutors.callerRuns()).build();
+        bus.register(listener);
+        bus.post(new Job(false));
+        assertEquals(Collections.singletonList(Thread.currentThread()), listener.threads);
+
+        // virtual threads need Java 21, and the fallback is a pool of daemon threads
+        String version = System.getProperty("java.specification.version");
+        boolean java21 = !version.startsWith("1.") && Integer.parseInt(version) >= 21;
+        assertEquals(java21, EventExecutors.isVirtualThreadsSupported());
+    }
+
+    @Test
+    public void concurrentRegistrationTest() throws Exception {
+        EventBus bus = new EventBus();
+        bus.register(new OrderListener("first-a", OrderListener.FIRST));
+        bus.register(new LastListener("last-a"));
+        bus.register(new OrderListener("first-b", OrderListener.FIRST));
+        bus.register(new LastListener("last-b"));
+
+        Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicInteger withMiddle = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            threads.add(new Thread(() -> {
+                try {
+                    while (running.get()) {
+                        OrderListener middle = new OrderListener("middle", OrderListener.MIDDLE);
+                        bus.register(middle);
+                        bus.unregister(middle);
+                    }
+                } catch (Throwable t) {
+                    failures.add(t);
+                }
+            }));
+        }
+        for (int i = 0; i < 4; i++) {
+            threads.add(new Thread(() -> {
+                try {
+                    for (int n = 0; n < 20_000; n++) {
+                        Ordered event = new Ordered();
+                        bus.post(event);
+                        List<String> expected = new ArrayList<>(Arrays.asList("first-a", "first-b"));
+                        for (int m = 2; m < event.seen.size() - 2; m++) expected.add("middle");
+                        expected.addAll(Arrays.asList("last-a", "last-b"));
+                        // priority order, and registration order within a priority, whatever changed meanwhile
+                        if (!expected.equals(event.seen)) throw new AssertionError("out of order: " + event.seen);
+                        if (event.seen.size() > 4) withMiddle.incrementAndGet();
+                    }
+                } catch (Throwable t) {
+                    failures.add(t);
+                }
+            }));
+        }
+        for (Thread thread : threads) thread.start();
+        for (Thread thread : threads.subList(2, threads.size())) thread.join();
+        running.set(false);
+        for (Thread thread : threads.subList(0, 2)) thread.join();
+
+        assertTrue(failures.isEmpty(), String.valueOf(failures.peek()));
+        assertTrue(withMiddle.get() > 0, "no post ran while a listener was registered");
+        Ordered last = new Ordered();
+        bus.post(last);
+        assertEquals(Arrays.asList("first-a", "first-b", "last-a", "last-b"), last.seen);
+    }
+
+    static EventBus fullBus(JobListener listener, EventExecutors.Overflow overflow) throws InterruptedException {
+        return fullBus(listener, overflow, (e, event) -> e.printStackTrace());
+    }
+
+    /**
+     * Returns a bus whose single pool thread is busy and whose queue of one is full until the listener is released.
+     */
+    static EventBus fullBus(JobListener listener, EventExecutors.Overflow overflow, EventExceptionHandler handler) throws InterruptedException {
+        EventBus bus = EventBus.builder().executor(EventExecutors.bounded(1, 1, overflow)).exceptionHandler(handler).build();
+        bus.register(listener);
+        bus.post(new Job(true));
+        assertTrue(listener.started.await(2, TimeUnit.SECONDS));
+        bus.post(new Job(true));
+        return bus;
+    }
+
+    static void assertRejected(CompletableFuture<Void> future) throws Exception {
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(2, TimeUnit.SECONDS));
+        assertTrue(e.getCause().getCause() instanceof RejectedExecutionException, String.valueOf(e.getCause()));
+    }
+
+    static class Base {
+    }
+
+    static final class Child extends Base {
+    }
+
+    static final class Cancellable extends CancellableEvent {
+    }
+
+    private static final class PrivateListener {
+        private Base event;
+        private String text;
+
+        @Listener
+        private void onEvent(Base event) {
+            this.event = event;
+        }
+
+        @Listener
+        void onText(String text) {
+            this.text = text;
+        }
+    }
+
+    static final class BatchListener {
+        final List<List<String>> strings = new ArrayList<>();
+        final List<Integer> integers = new ArrayList<>();
+
+        @Listener(batch = true)
+        void onStrings(List<String> events) {
+            strings.add(new ArrayList<>(events));
+        }
+
+        @Listener
+        void onInteger(Integer event) {
+            integers.add(event);
+        }
+    }
+
+    static final class Position {
+        final String id;
+        final int x;
+
+        Position(String id, int x) {
+            this.id = id;
+            this.x = x;
+        }
+
+        @Override
+        public String toString() {
+            return id + "@" + x;
+        }
+    }
+
+    static final class PositionListener {
+        final List<List<String>> batches = new ArrayList<>();
+
+        @Listener(batch = true)
+        void onPositions(List<Position> events) {
+            List<String> batch = new ArrayList<>();
+            for (Position event : events) batch.add(event.toString());
+            batches.add(batch);
+        }
+    }
+
+    static final class IntegerListener {
+        final List<Integer> events = new ArrayList<>();
+
+        @Listener
+        void onInteger(Integer event) {
+            events.add(event);
+        }
+    }
+
+    static final class Sequenced {
+        final int producer;
+        final int sequence;
+
+        Sequenced(int producer, int sequence) {
+            this.producer = producer;
+            this.sequence = sequence;
+        }
+    }
+
+    static final class SequenceListener {
+        final int[] next;
+        final CountDownLatch done;
+        int outOfOrder;
+
+        SequenceListener(int producers, int events) {
+            this.next = new int[producers];
+            this.done = new CountDownLatch(events);
+        }
+
+        // only ever called on the dispatcher thread
+        @Listener
+        void onSequenced(Sequenced event) {
+            if (next[event.producer]++ != event.sequence) outOfOrder++;
+            done.countDown();
+        }
+    }
+
+    static final class MetricsListener {
+
+        @Listener
+        void onText(String event) {
+            if (event.equals("fail")) throw new IllegalStateException("listener failed");
+        }
+
+        @Listener(parallel = true)
+        void onNumber(Integer event) {
+        }
+    }
+
+    static final class Order {
+    }
+
+    static final class FailingListener {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicBoolean slowFinished = new AtomicBoolean();
+
+        @Listener(priority = 1)
+        void failSync(Order event) {
+            throw new IllegalStateException("sync");
+        }
+
+        @Listener(parallel = true)
+        void failParallel(Order event) {
+            throw new IllegalArgumentException("parallel");
+        }
+
+        @Listener(parallel = true)
+        void slow(Order event) throws InterruptedException {
+            release.await();
+            slowFinished.set(true);
+        }
+    }
+
+    static final class Ping {
+    }
+
+    static final class PingListener {
+        final AtomicInteger calls;
+
+        PingListener(AtomicInteger calls) {
+            this.calls = calls;
+        }
+
+        @Listener
+        void onPing(Ping event) {
+            calls.incrementAndGet();
+        }
+    }
+
+    static final class Job {
+        final boolean block;
+
+        Job(boolean block) {
+            this.block = block;
+        }
+    }
+
+    static final class JobListener {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger finished = new AtomicInteger();
+        final AtomicInteger synchronous = new AtomicInteger();
+        final List<Thread> threads = new CopyOnWriteArrayList<>();
+
+        @Listener
+        void onJobSync(Job event) {
+            synchronous.incrementAndGet();
+        }
+
+        @Listener(parallel = true)
+        void onJob(Job event) throws InterruptedException {
+            threads.add(Thread.currentThread());
+            started.countDown();
+            if (event.block) release.await();
+            finished.incrementAndGet();
+        }
+
+        void awaitFinished(int count) throws InterruptedException {
+            for (int i = 0; i < 200 && finished.get() < count; i++) Thread.sleep(10);
+            assertEquals(count, finished.get());
+        }
+    }
+
+    static final class Ordered {
+        final List<String> seen = new ArrayList<>();
+    }
+
+    static final class OrderListener {
+        static final int FIRST = -1;
+        static final int MIDDLE = 2;
+        final String name;
+        final int priority;
+
+        OrderListener(String name, int priority) {
+            this.name = name;
+            this.priority = priority;
+        }
+
+        @Listener(priority = FIRST)
+        void first(Ordered event) {
+            if (priority == FIRST) event.seen.add(name);
+        }
+
+        @Listener(priority = MIDDLE)
+        void middle(Ordered event) {
+            if (priority == MIDDLE) event.seen.add(name);
+        }
+    }
+
+    static final class LastListener {
+        final String name;
+
+        LastListener(String name) {
+            this.name = name;
+        }
+
+        @Listener(priority = 5)
+        void last(Ordered event) {
+            event.seen.add(name);
+        }
+    }
+}
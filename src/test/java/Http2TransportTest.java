@@ -0,0 +1,155 @@
+import dev.yuzuki.utils.network.HttpClient;
+import dev.yuzuki.utils.network.Request;
+import dev.yuzuki.utils.network.RequestBody;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.security.KeyStore;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Requests through the HTTP/2 transport, which only loads on Java 11 and later. The local server does not offer h2
+ * over ALPN, so the JDK client falls back to HTTP/1.1 on the wire, but every request still goes through the
+ * transport's header filtering, body publishing, cancellation and timeout handling.
+ */
+public class Http2TransportTest {
+    private static SSLContext tls;
+
+    @BeforeAll
+    static void createCertificate() throws Exception {
+        String version = System.getProperty("java.specification.version");
+        if (version.startsWith("1.")) return;
+
+        File keyStore = File.createTempFile("localhost", ".p12");
+        keyStore.delete();
+        keyStore.deleteOnExit();
+        Process keytool = new ProcessBuilder(System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool",
+                "-genkeypair", "-alias", "localhost", "-keyalg", "EC", "-dname", "CN=localhost", "-ext", "SAN=ip:127.0.0.1",
+                "-validity", "1", "-storetype", "PKCS12", "-keystore", keyStore.getPath(), "-storepass", "password")
+                .redirectErrorStream(true).start();
+        assertEquals(0, keytool.waitFor());
+
+        KeyStore store = KeyStore.getInstance("PKCS12");
+        try (InputStream in = new FileInputStream(keyStore)) {
+            store.load(in, "password".toCharArray());
+        }
+        KeyManagerFactory keys = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keys.init(store, "password".toCharArray());
+        TrustManagerFactory trust = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trust.init(store);
+        tls = SSLContext.getInstance("TLS");
+        tls.init(keys.getKeyManagers(), trust.getTrustManagers(), null);
+    }
+
+    @Test
+    public void http2EnabledTest() throws Exception {
+        assumeTrue(tls != null, "HTTP/2 needs Java 11");
+        try (LocalServer server = new LocalServer((request, out) -> {
+            out.write(LocalServer.response(200, "secure"));
+            return true;
+        }, tls)) {
+            HttpClient client = HttpClient.builder().sslContext(tls).http2(true).build();
+            assertTrue(client.isHttp2Enabled());
+            assertFalse(HttpClient.builder().sslContext(tls).build().isHttp2Enabled());
+
+            // headers the JDK client manages itself are dropped instead of failing the request
+            Request request = Request.builder().url(server.url("/")).method(Request.Method.GET)
+                    .header("Connection", "close").header("Host", "example.com").header("X-Test", "kept").build();
+            assertEquals("secure", client.send(request).toTextResponse().get());
+            LocalServer.RecordedRequest received = server.requests().get(0);
+            assertEquals("kept", received.header("X-Test"));
+            assertEquals(server.host(), received.header("Host"));
+            assertNull(received.header("Connection"));
+        }
+    }
+
+    @Test
+    public void streamedBodyTest() throws Exception {
+        assumeTrue(tls != null, "HTTP/2 needs Java 11");
+        byte[] data = new byte[1024 * 1024 + 3];
+        new Random(2).nextBytes(data);
+        try (LocalServer server = new LocalServer((request, out) -> {
+            out.write(LocalServer.response(200, String.valueOf(request.body.length)));
+            return true;
+        }, tls)) {
+            HttpClient client = HttpClient.builder().sslContext(tls).http2(true).build();
+            // larger than the buffered limit, so the body is published as it is written
+            Request known = Request.builder().url(server.url("/known")).method(Request.Method.POST)
+                    .body(RequestBody.of(() -> new ByteArrayInputStream(data), data.length, "application/octet-stream")).build();
+            assertEquals(String.valueOf(data.length), client.send(known).toTextResponse().get());
+            assertEquals(String.valueOf(data.length), server.requests().get(0).header("Content-Length"));
+            assertArrayEquals(data, server.requests().get(0).body);
+
+            Request unknown = Request.builder().url(server.url("/unknown")).method(Request.Method.POST)
+                    .body(RequestBody.of(new ByteArrayInputStream(data), -1, "application/octet-stream")).build();
+            assertEquals(String.valueOf(data.length), client.send(unknown).toTextResponse().get());
+            assertEquals("chunked", server.requests().get(1).header("Transfer-Encoding"));
+            assertArrayEquals(data, server.requests().get(1).body);
+        }
+    }
+
+    @Test
+    public void timeoutTest() throws Exception {
+        assumeTrue(tls != null, "HTTP/2 needs Java 11");
+        CountDownLatch release = new CountDownLatch(1);
+        try (LocalServer server = new LocalServer((request, out) -> {
+            release.await();
+            return false;
+        }, tls)) {
+            HttpClient client = HttpClient.builder().sslContext(tls).http2(true).timeout(300).build();
+            // the JDK client's timeout surfaces as the exception the HTTP/1.1 transport throws
+            assertThrows(SocketTimeoutException.class, () -> client.send(get(server.url("/slow"))));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void cancelTest() throws Exception {
+        assumeTrue(tls != null, "HTTP/2 needs Java 11");
+        CountDownLatch release = new CountDownLatch(1);
+        try (LocalServer server = new LocalServer((request, out) -> {
+            release.await();
+            return false;
+        }, tls)) {
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            try {
+                HttpClient client = HttpClient.builder().sslContext(tls).http2(true).timeout(0).executor(executor).build();
+                CompletableFuture<HttpClient.TemporaryResponse> pending = client.sendAsync(get(server.url("/never")));
+                Thread.sleep(200);
+                assertTrue(pending.cancel(true));
+                // canceling aborts the exchange, so the executor's only thread is free again
+                assertEquals("free", CompletableFuture.supplyAsync(() -> "free", executor).get(2, TimeUnit.SECONDS));
+            } finally {
+                executor.shutdownNow();
+            }
+        } finally {
+            release.countDown();
+        }
+    }
+
+    static Request get(String url) {
+        return Request.builder().url(url).method(Request.Method.GET).build();
+    }
+}
@@ -0,0 +1,1073 @@
+import dev.yuzuki.utils.network.CircuitBreaker;
+import dev.yuzuki.utils.network.CircuitOpenException;
+import dev.yuzuki.utils.network.ConnectionPool;
+import dev.yuzuki.utils.network.DnsCache;
+import dev.yuzuki.utils.network.HostLimiter;
+import dev.yuzuki.utils.network.HostMetricsSnapshot;
+import dev.yuzuki.utils.network.HttpCache;
+import dev.yuzuki.utils.network.HttpClient;
+import dev.yuzuki.utils.network.LimitExceededException;
+import dev.yuzuki.utils.network.MultipartBody;
+import dev.yuzuki.utils.network.Request;
+import dev.yuzuki.utils.network.RequestTimings;
+import dev.yuzuki.utils.network.RetryPolicy;
+import dev.yuzuki.utils.network.response.StreamResponse;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Authenticator;
+import java.net.InetAddress;
+import java.net.CookieManager;
+import java.net.InetSocketAddress;
+import java.net.PasswordAuthentication;
+import java.net.ProtocolException;
+import java.net.ServerSocket;
+import java.net.Proxy;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HttpClientTest {
+
+    @Test
+    public void staleConnectionRetryTest() throws Exception {
+        // the server closes the kept-alive connection as the second request arrives, like an idle timeout would
+        try (LocalServer server = new LocalServer((request, out) -> {
+            if (request.exchange == 2) return false;
+            out.write(LocalServer.response(200, "ok"));
+            return true;
+        })) {
+            HttpClient client = HttpClient.builder().build();
+            assertEquals("ok", client.send(get(server.url("/a"))).toTextResponse().get());
+            assertEquals("ok", client.send(get(server.url("/b"))).toTextResponse().get());
+            assertEquals(3, server.requests().size());
+            assertEquals(2, server.connections());
+        }
+    }
+
+    @Test
+    public void staleConnectionNotRetriedForPostTest() throws Exception {
+        try (LocalServer server = new LocalServer((request, out) -> {
+            if (request.exchange == 2) return false;
+            out.write(LocalServer.response(200, "ok"));
+            return true;
+        })) {
+            HttpClient client = HttpClient.builder().build();
+            client.send(get(server.url("/a")));
+            Request post = Request.builder().url(server.url("/b")).method(Request.Method.POST)
+                    .body("payload").build();
+            assertThrows(IOException.class, () -> client.send(post));
+            assertEquals(2, server.requests().size());
+        }
+    }
+
+    @Test
+    public void timeoutNotRetriedTest() throws Exception {
+        try (LocalServer server = new LocalServer((request, out) -> {
+            if (request.exchange == 2) Thread.sleep(1000);
+            out.write(LocalServer.response(200, "ok"));
+            return true;
+        })) {
+            HttpClient client = HttpClient.builder().timeout(300).build();
+            client.send(get(server.url("/a")));
+            long start = System.nanoTime();
+            assertThrows(SocketTimeoutException.class, () -> client.send(get(server.url("/slow"))));
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+            assertEquals(2, server.requests().size());
+            assertTrue(elapsedMillis < 900, "waited " + elapsedMillis + " ms");
+        }
+    }
+
+    @Test
+    public void headerInjectionTest() throws Exception {
+        try (LocalServer server = new LocalServer((request, out) -> {
+            out.write(LocalServer.response(200, "ok"));
+            return true;
+        })) {
+            HttpClient client = HttpClient.builder().build();
+            String url = server.url("/");
+            assertThrows(IllegalArgumentException.class, () -> client.send(Request.builder().url(url).method(Request.Method.GET)
+                    .header("X-Trace", "1\r\nX-Injected: yes").build()));
+            assertThrows(IllegalArgumentException.class, () -> client.send(Request.builder().url(url).method(Request.Method.GET)
+                    .header("X-Trace", "1\nGET /smuggled HTTP/1.1").build()));
+            assertThrows(IllegalArgumentException.class, () -> client.send(Request.builder().url(url).method(Request.Method.GET)
+                    .header("X-Trace", "1\u0000").build()));
+            assertThrows(IllegalArgumentException.class, () -> client.send(Request.builder().url(url).method(Request.Method.GET)
+                    .header("X-Trace", "\u65e5\u672c").build()));
+            assertThrows(IllegalArgumentException.class, () -> client.send(Request.builder().url(url).method(Request.Method.GET)
+                    .header("X Trace", "1").build()));
+            assertThrows(IllegalArgumentException.class, () -> client.send(Request.builder().url(url).method(Request.Method.GET)
+                    .header("X-Trace:", "1").build()));
+
+            Request method = get(url);
+            method.setMethod("GET / HTTP/1.1\r\nX-Injected: yes\r\n\r\nGET");
+            assertThrows(IllegalArgumentException.class, () -> client.send(method));
+
+            assertEquals(0, server.requests().size());
+            assertEquals("ok", client.send(Request.builder().url(url).method(Request.Method.GET)
+                    .header("X-Trace", "caf\u00e9\tok").build()).toTextResponse().get());
+            assertEquals("caf\u00e9\tok", server.requests().get(0).header("X-Trace"));
+        }
+    }
+
+    @Test
+    public void poolWaitStopsOnCancelTest() throws Exception {
+        try (LocalServer server = new LocalServer((request, out) -> {
+            out.write(LocalServer.response(200, "ok"));
+            return true;
+        })) {
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            HttpClient client = HttpClient.builder().timeout(0).executor(executor)
+                    .connectionPool(new ConnectionPool(1, 60, TimeUnit.SECONDS)).build();
+            try (StreamResponse held = client.stream(get(server.url("/held")))) {
+                // the only connection is leased, so these wait in the pool
+                Request limited = Request.builder().url(server.url("/limited")).method(Request.Method.GET).timeout(200).build();
+                Future<?> sync = Executors.newSingleThreadExecutor().submit(() -> client.send(limited));
+                ExecutionException timedOut = assertThrows(ExecutionException.class, () -> sync.get(2, TimeUnit.SECONDS));
+                assertTrue(timedOut.getCause() instanceof SocketTimeoutException);
+
+                CompletableFuture<HttpClient.TemporaryResponse> queued = client.sendAsync(get(server.url("/queued")));
+                Thread.sleep(100);
+                queued.cancel(true);
+                // the executor's only thread is free again instead of waiting for the held connection
+                assertEquals("free", CompletableFuture.supplyAsync(() -> "free", executor).get(2, TimeUnit.SECONDS));
+            } finally {
+                executor.shutdownNow();
+            }
+            assertEquals(1, server.requests().size());
+        }
+    }
+
+    @Test
+    public void proxyForwardTest() throws Exception {
+        try (LocalServer proxy = new LocalServer((request, out) -> {
+            out.write(LocalServer.response(200, "via proxy"));
+            return true;
+        })) {
+            HttpClient client = HttpClient.builder().proxy(proxy(proxy)).build();
+            // the host does not resolve, so only the proxy can have answered
+            assertEquals("via proxy", client.send(get("http://origin.invalid:8080/path?q=1")).toTextResponse().get());
+            LocalServer.RecordedRequest request = proxy.requests().get(0);
+            assertEquals("http://origin.invalid:8080/path?q=1", request.target);
+            assertEquals("origin.invalid:8080", request.header("Host"));
+        }
+    }
+
+    @Test
+    public void proxyTunnelRefusedTest() throws Exception {
+        try (LocalServer proxy = new LocalServer((request, out) -> {
+            out.write(LocalServer.response(403, ""));
+            return false;
+        })) {
+            HttpClient client = HttpClient.builder().proxy(proxy(proxy)).build();
+            IOException e = assertThrows(IOException.class, () -> client.send(get("https://origin.invalid/")));
+            assertTrue(e.getMessage().startsWith("Unable to tunnel through proxy"), e.getMessage());
+            LocalServer.RecordedRequest request = proxy.requests().get(0);
+            assertEquals("CONNECT", request.method);
+            assertEquals("origin.invalid:443", request.target);
+        }
+    }
+
+    @Test
+    public void proxyAuthenticationTest() throws Exception {
+        String expected = "Basic " + Base64.getEncoder().encodeToString("user:secret".getBytes(StandardCharsets.UTF_8));
+        try (LocalServer proxy = new LocalServer((request, out) -> {
+            if (expected.equals(request.header("Proxy-Authorization"))) {
+                out.write(LocalServer.response(200, "ok"));
+            } else {
+                out.write(LocalServer.response(407, "", "Proxy-Authenticate: Basic realm=\"proxy\""));
+            }
+            return true;
+        })) {
+            AtomicInteger asked = new AtomicInteger();
+            Authenticator.setDefault(new Authenticator() {
+                @Override
+                protected PasswordAuthentication getPasswordAuthentication() {
+                    asked.incrementAndGet();
+                    assertEquals(RequestorType.PROXY, getRequestorType());
+                    assertEquals("proxy", getRequestingPrompt());
+                    return new PasswordAuthentication("user", "secret".toCharArray());
+                }
+            });
+            try {
+                HttpClient client = HttpClient.builder().proxy(proxy(proxy)).build();
+                assertEquals("ok", client.send(get("http://origin.invalid/a")).toTextResponse().get());
+                assertEquals("ok", client.send(get("http://origin.invalid/b")).toTextResponse().get());
+            } finally {
+                Authenticator.setDefault(null);
+            }
+            // the accepted credentials are sent up front from then on
+            assertEquals(1, asked.get());
+            assertEquals(3, proxy.requests().size());
+            assertNull(proxy.requests().get(0).header("Proxy-Authorization"));
+            assertEquals(expected, proxy.requests().get(2).header("Proxy-Authorization"));
+        }
+    }
+
+    @Test
+    public void cookieHandlerTest() throws Exception {
+        try (LocalServer server = new LocalServer((request, out) -> {
+            if (request.target.equals("/login")) {
+                out.write(LocalServer.response(302, "", "Location: /home", "Set-Cookie: session=abc; Path=/"));
+            } else {
+                out.write(LocalServer.response(200, "ok"));
+            }
+            return true;
+        })) {
+            HttpClient client = HttpClient.builder().cookieHandler(new CookieManager()).build();
+            client.send(get(server.url("/login")));
+            assertEquals("session=abc", server.requests().get(1).header("Cookie"));
+
+            client.send(Request.builder().url(server.url("/settings")).method(Request.Method.GET)
+                    .header("cookie", "theme=dark").build());
+            assertEquals("theme=dark; session=abc", server.requests().get(2).header("Cookie"));
+        }
+    }
+
+    @Test
+    public void fileBodyBuiltOnceTest() throws Exception {
+        File file = File.createTempFile("upload", ".txt");
+        file.deleteOnExit();
+        Files.write(file.toPath(), "contents".getBytes(StandardCharsets.UTF_8));
+        try (LocalServer server = new LocalServer((request, out) -> {
+            out.write(LocalServer.response(200, "ok"));
+            return true;
+        })) {
+            HttpClient client = HttpClient.builder().build();
+            Request request = Request.builder().url(server.url("/upload")).method(Request.Method.POST)
+                    .file(file, "document").build();
+            client.send(request);
+            client.send(request);
+            String contentType = server.requests().get(0).header("Content-Type");
+            assertTrue(contentType.startsWith("multipart/form-data; boundary="), contentType);
+            assertEquals(contentType, server.requests().get(1).header("Content-Type"));
+            assertTrue(server.requests().get(1).bodyText().contains("contents"));
+        }
+    }
+
+    @Test
+    public void fileBodyChangedBetweenSendsTest() throws Exception {
+        File file = File.createTempFile("upload", ".txt");
+        file.deleteOnExit();
+        Files.write(file.toPath(), "first".getBytes(StandardCharsets.UTF_8));
+        try (LocalServer server = new LocalServer((request, out) -> {
+            out.write(LocalServer.response(200, "ok"));
+            return true;
+        })) {
+            HttpClient client = HttpClient.builder().build();
+            Request request = Request.builder().url(server.url("/upload")).method(Request.Method.POST)
+                    .file(file, "document").build();
+            assertEquals(200, client.send(request).getCode());
+            Files.write(file.toPath(), " and more".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+            assertEquals(200, client.send(request).getCode());
+
+            // the boundary is kept, and the second send carries the whole, longer file
+            LocalServer.RecordedRequest second = server.requests().get(1);
+            assertEquals(server.requests().get(0).header("Content-Type"), second.header("Content-Type"));
+            assertEquals(String.valueOf(second.body.length), second.header("Content-Length"));
+            assertTrue(second.bodyText().contains("\r\n\r\nfirst and more\r\n"), second.bodyText());
+        }
+    }
+
+    @Test
+    public void singleFlightTest() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        try (LocalServer server = new LocalServer((request, out) -> {
+            release.await();
+            out.write(LocalServer.response(200, "shared"));
+            return true;
+        })) {
+            HttpClient client = HttpClient.builder().coalesceRequests(true).build();
+            CompletableFuture<HttpClient.TemporaryResponse> leader = client.sendAsync(get(server.url("/")));
+            CompletableFuture<HttpClient.TemporaryResponse> follower = client.sendAsync(get(server.url("/")));
+            Thread.sleep(100);
+            release.countDown();
+            assertEquals("shared", leader.get(2, TimeUnit.SECONDS).toTextResponse().get());
+            assertEquals("shared", follower.get(2, TimeUnit.SECONDS).toTextResponse().get());
+            assertEquals(1, server.requests().size());
+            assertEquals(1, client.getCoalescedCount());
+        }
+    }
+
+    @Test
+    public void singleFlightLeaderCancelTest() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        try (LocalServer server = new LocalServer((request, out) -> {
+            release.await();
+            out.write(LocalServer.response(200, "shared"));
+            return true;
+        })) {
+            HttpClient client = HttpClient.builder().coalesceRequests(true).build();
+            CompletableFuture<HttpClient.TemporaryResponse> leader = client.sendAsync(get(server.url("/")));
+            CompletableFuture<HttpClient.TemporaryResponse> follower = client.sendAsync(get(server.url("/")));
+            Thread.sleep(100);
+            // the follower still wants the response, so the exchange keeps going
+            leader.cancel(true);
+            release.countDown();
+            assertEquals("shared", follower.get(2, TimeUnit.SECONDS).toTextResponse().get());
+            assertEquals(1, server.requests().size());
+        }
+    }
+
+    @Test
+    public void singleFlightAbandonedTest() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        try (LocalServer server = new LocalServer((request, out) -> {
+            if (request.connection == 1) release.await();
+            out.write(LocalServer.response(200, "ok"));
+            return true;
+        })) {
+            HttpClient client = HttpClient.builder().coalesceRequests(true).build();
+            CompletableFuture<HttpClient.TemporaryResponse> first = client.sendAsync(get(server.url("/")));
+            CompletableFuture<HttpClient.TemporaryResponse> second = client.sendAsync(get(server.url("/")));
+            Thread.sleep(100);
+            first.cancel(true);
+            second.cancel(true);
+            // with every waiter gone the exchange is aborted, and a new request starts a flight of its own
+            assertEquals("ok", client.sendAsync(get(server.url("/"))).get(2, TimeUnit.SECONDS).toTextResponse().get());
+            assertEquals(2, server.connections());
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void singleFlightErrorTest() throws Exception {
+        AtomicBoolean fail = new AtomicBoolean(true);
+        try (LocalServer server = new LocalServer((request, out) -> {
+            out.write(LocalServer.response(200, "ok"));
+            return true;
+        })) {
+            HttpClient client = HttpClient.builder().coalesceRequests(true).requestListener((request, code, timings, failure) -> {
+                if (fail.getAndSet(false)) throw new AssertionError("listener failed");
+            }).build();
+            assertThrows(AssertionError.class, () -> client.send(get(server.url("/"))));
+            // the failed flight was completed and removed, so the next request is not left waiting on it
+            assertEquals("ok", CompletableFuture.supplyAsync(() -> {
+                try {
+                    return client.send(get(server.url("/"))).toTextResponse().get();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }).get(2, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void limiterRefundsTokenTest() throws Exception {
+        try (LocalServer server = new LocalServer((request, out) -> {
+            out.write(LocalServer.response(200, "ok"));
+            return true;
+        })) {
+            HostLimiter limiter = HostLimiter.builder().rate(2, 2).maxConcurrentRequests(1)
+                    .maxWait(100, TimeUnit.MILLISECONDS).build();
+            HttpClient client = HttpClient.builder().hostLimiter(limiter).build();
+            try (StreamResponse held = client.stream(get(server.url("/held")))) {
+                // a token is free but the only slot is not
+                LimitExceededException e = assertThrows(LimitExceededException.class, () -> client.send(get(server.url("/"))));
+                assertTrue(e.getMessage().startsWith("Too many requests in flight"), e.getMessage());
+            }
+            // the rejected request gave its token back, so the burst still has room for this one
+            assertEquals("ok", client.send(get(server.url("/"))).toTextResponse().get());
+            assertEquals(1, limiter.getRejectedCount());
+        }
+    }
+
+    @Test
+    public void limiterRejectionKeepsBreakerTrialTest() throws Exception {
+        try (LocalServer server = new LocalServer((request, out) -> {
+            out.write(LocalServer.response(request.target.equals("/fail") ? 500 : 200, "body"));
+            return true;
+        })) {
+            CircuitBreaker breaker = CircuitBreaker.builder().failureThreshold(1)
+                    .openDuration(300, TimeUnit.MILLISECONDS).build();
+            HostLimiter limiter = HostLimiter.builder().maxConcurrentRequests(2).maxWait(0, TimeUnit.MILLISECONDS).build();
+            HttpClient client = HttpClient.builder().circuitBreaker(breaker).hostLimiter(limiter).build();
+            StreamResponse held = client.stream(get(server.url("/held")));
+            StreamResponse failed = client.stream(get(server.url("/fail")));
+            assertEquals(CircuitBreaker.State.OPEN, breaker.getState(server.host()));
+
+            Thread.sleep(350);
+            // both slots are taken, so the limiter turns this one away before it can become the trial
+            assertThrows(LimitExceededException.class, () -> client.send(get(server.url("/"))));
+            held.close();
+            failed.close();
+            assertEquals(200, client.send(get(server.url("/"))).getCode());
+            assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(server.host()));
+        }
+    }
+
+    @Test
+    public void poolReuseTest() throws Exception {
+        try (LocalServer server = new LocalServer((request, out) -> {
+            out.write(LocalServer.response(200, request.target));
+            return true;
+        })) {
+            ConnectionPool pool = new ConnectionPool(4, 30, TimeUnit.SECONDS);
+            HttpClient client = HttpClient.builder().connectionPool(pool).build();
+            for (int i = 0; i < 5; i++) {
+                assertEquals("/" + i, client.send(get(server.url("/" + i))).toTextResponse().get());
+            }
+            assertEquals(1, server.connections());
+            assertEquals(1, pool.getStats().getCreated());
+            assertEquals(4, pool.getStats().getReused());
+            assertEquals(1, pool.getStats().getIdle());
+
+            // a response that closes the connection is not pooled
+            Request close = Request.builder().url(server.url("/close")).method(Request.Method.GET)
+                    .header("Connection", "close").build();
+            client.send(close);
+            client.send(get(server.url("/after")));
+            assertEquals(2, server.connections());
+        }
+    }
+
+    @Test
+    public void chunkedResponseTest() throws Exception {
+        try (LocalServer server = new LocalServer((request, out) -> {
+            if (request.target.equals("/chunked")) {
+                out.write(("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+                        + "5;name=value\r\nhello\r\n"
+                        + "6\r\n world\r\n"
+                        + "0\r\nX-Trailer: ignored\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+            } else if (request.target.equals("/malformed")) {
+                out.write("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\nzz\r\n".getBytes(StandardCharsets.ISO_8859_1));
+                return false;
+            } else {
+                out.write(LocalServer.response(200, "next"));
+            }
+            return true;
+        })) {
+            HttpClient client = HttpClient.builder().build();
+            assertEquals("hello world", client.send(get(server.url("/chunked"))).toTextResponse().get());
+            // the trailers were consumed, so the connection is clean for the next exchange
+            assertEquals("next", client.send(get(server.url("/next"))).toTextResponse().get());
+            assertEquals(1, server.connections());
+
+            assertThrows(ProtocolException.class, () -> client.send(get(server.url("/malformed"))));
+        }
+    }
+
+    @Test
+    public void compressedResponseTest() throws Exception {
+        String text = repeat("compressible text ", 200);
+        byte[] gzip = gzip(text.getBytes(StandardCharsets.UTF_8));
+        try (LocalServer server = new LocalServer((request, out) -> {
+            String accept = request.header("Accept-Encoding");
+            byte[] plain = text.getBytes(StandardCharsets.UTF_8);
+            if (request.target.equals("/gzip") && accept.contains("gzip")) {
+                out.write(LocalServer.response(200, gzip, "Content-Encoding: gzip"));
+            } else if (request.target.equals("/zlib") && accept.contains("deflate")) {
+                out.write(LocalServer.response(200, deflate(plain, false), "Content-Encoding: deflate"));
+            } else if (request.target.equals("/raw-deflate") && accept.contains("deflate")) {
+                out.write(LocalServer.response(200, deflate(plain, true), "Content-Encoding: deflate"));
+            } else {
+                out.write(LocalServer.response(200, plain));
+            }
+            return true;
+        })) {
+            HttpClient client = HttpClient.builder().compression(true).build();
+            HttpClient.TemporaryResponse response = client.send(get(server.url("/gzip")));
+            assertEquals(text, response.toTextResponse().get());
+            assertNull(response.getHeader("Content-Encoding"));
+            assertEquals(text, client.send(get(server.url("/zlib"))).toTextResponse().get());
+            assertEquals(text, client.send(get(server.url("/raw-deflate"))).toTextResponse().get());
+            // decoded bodies are read to the end of the compressed data, so the connection is reused
+            assertEquals(1, server.connections());
+
+            // a caller asking for an encoding itself gets the body as it was sent
+            Request own = Request.builder().url(server.url("/gzip")).method(Request.Method.GET)
+                    .header("Accept-Encoding", "gzip").build();
+            assertArrayEquals(gzip, client.send(own).toBinaryResponse().get());
+        }
+    }
+
+    @Test
+    public void compressedRequestTest() throws Exception {
+        try (LocalServer server = new LocalServer((request, out) -> {
+            byte[] body = "gzip".equals(request.header("Content-Encoding")) ? gunzip(request.body) : request.body;
+            out.write(LocalServer.response(200, body));
+            return true;
+        })) {
+            HttpClient client = HttpClient.builder().requestCompressionThreshold(1024).build();
+            String large = repeat("payload ", 1000);
+            Request request = Request.builder().url(server.url("/")).method(Request.Method.POST).body(large).build();
+            assertEquals(large, client.send(request).toTextResponse().get());
+            assertEquals("gzip", server.requests().get(0).header("Content-Encoding"));
+            assertTrue(server.requests().get(0).body.length < large.length());
+
+            Request small = Request.builder().url(server.url("/")).method(Request.Method.POST).body("small").build();
+            assertEquals("small", client.send(small).toTextResponse().get());
+            assertNull(server.requests().get(1).header("Content-Encoding"));
+        }
+    }
+
+    @Test
+    public void cacheRevalidationTest() throws Exception {
+        try (LocalServer server = new LocalServer((request, out) -> {
+            if (request.target.equals("/etag")) {
+                if ("\"v1\"".equals(request.header("If-None-Match"))) {
+                    out.write(LocalServer.response(304, "", "ETag: \"v1\"", "Cache-Control: max-age=0"));
+                } else {
+                    out.write(LocalServer.response(200, "tagged", "ETag: \"v1\"", "Cache-Control: max-age=0"));
+                }
+            } else if (request.target.equals("/modified")) {
+                String date = "Wed, 21 Oct 2015 07:28:00 GMT";
+                if (date.equals(request.header("If-Modified-Since"))) {
+                    out.write(LocalServer.response(304, "", "Cache-Control: no-cache"));
+                } else {
+                    out.write(LocalServer.response(200, "dated", "Last-Modified: " + date, "Cache-Control: no-cache"));
+                }
+            } else {
+                out.write(LocalServer.response(200, "fresh", "Cache-Control: max-age=60"));
+            }
+            return true;
+        })) {
+            HttpCache cache = HttpCache.builder().build();
+            HttpClient client = HttpClient.builder().cache(cache).build();
+
+            // a fresh entry is served without a request
+            assertEquals("fresh", client.send(get(server.url("/fresh"))).toTextResponse().get());
+            assertEquals("fresh", client.send(get(server.url("/fresh"))).toTextResponse().get());
+            assertEquals(1, server.requests().size());
+            assertEquals(1, cache.getStats().getHits());
+
+            // a stale entry is revalidated, and the 304 serves the stored body
+            assertEquals("tagged", client.send(get(server.url("/etag"))).toTextResponse().get());
+            HttpClient.TemporaryResponse revalidated = client.send(get(server.url("/etag")));
+            assertEquals(200, revalidated.getCode());
+            assertEquals("tagged", revalidated.toTextResponse().get());
+            assertEquals("\"v1\"", server.requests().get(2).header("If-None-Match"));
+
+            assertEquals("dated", client.send(get(server.url("/modified"))).toTextResponse().get());
+            assertEquals("dated", client.send(get(server.url("/modified"))).toTextResponse().get());
+            assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", server.requests().get(4).header("If-Modified-Since"));
+            assertEquals(2, cache.getStats().getRevalidations());
+
+            // a request carrying its own validator gets the server's answer as is
+            Request conditional = Request.builder().url(server.url("/etag")).method(Request.Method.GET)
+                    .header("If-None-Match", "\"v1\"").build();
+            assertEquals(304, client.send(conditional).getCode());
+        }
+    }
+
+    @Test
+    public void cacheVaryTest() throws Exception {
+        try (LocalServer server = new LocalServer((request, out) -> {
+            String language = request.header("Accept-Language");
+            out.write(LocalServer.response(200, language, "Cache-Control: max-age=60", "Vary: Accept-Language"));
+            return true;
+        })) {
+            HttpCache cache = HttpCache.builder().build();
+            HttpClient client = HttpClient.builder().cache(cache).build();
+            assertEquals("en", client.send(localized(server, "en")).toTextResponse().get());
+            assertEquals("en", client.send(localized(server, "en")).toTextResponse().get());
+            assertEquals(1, server.requests().size());
+
+            // a different value of a varying header is not answered with the stored entry
+            assertEquals("ja", client.send(localized(server, "ja")).toTextResponse().get());
+            assertEquals(2, server.requests().size());
+            assertEquals("ja", client.send(localized(server, "ja")).toTextResponse().get());
+            assertEquals(2, server.requests().size());
+        }
+    }
+
+    static Request localized(LocalServer server, String language) {
+        return Request.builder().url(server.url("/")).method(Request.Method.GET).header("Accept-Language", language).build();
+    }
+
+    @Test
+    public void retryBackoffTest() throws Exception {
+        AtomicInteger failures = new AtomicInteger(2);
+        try (LocalServer server = new LocalServer((request, out) -> {
+            if (request.target.equals("/always") || failures.getAndDecrement() > 0) {
+                out.write(LocalServer.response(502, "bad gateway"));
+            } else {
+                out.write(LocalServer.response(200, "ok"));
+            }
+            return true;
+        })) {
+            RetryPolicy retry = RetryPolicy.builder().maxAttempts(3).backoff(1, 10, TimeUnit.MILLISECONDS).build();
+            HttpClient client = HttpClient.builder().retryPolicy(retry).build();
+            assertEquals("ok", client.send(get(server.url("/"))).toTextResponse().get());
+            assertEquals(3, server.requests().size());
+
+            // the last response is returned once the attempts run out
+            assertEquals(502, client.send(get(server.url("/always"))).getCode());
+            assertEquals(6, server.requests().size());
+
+            // a POST may already have taken effect, so it is not sent again
+            Request post = Request.builder().url(server.url("/always")).method(Request.Method.POST).body("x").build();
+            assertEquals(502, client.send(post).getCode());
+            assertEquals(7, server.requests().size());
+        }
+    }
+
+    @Test
+    public void retryAfterTest() throws Exception {
+        try (LocalServer server = new LocalServer((request, out) -> {
+            if (request.target.equals("/later")) {
+                out.write(LocalServer.response(503, "busy", "Retry-After: 120"));
+            } else if (request.exchange == 1 && request.connection == 1) {
+                out.write(LocalServer.response(503, "busy", "Retry-After: 1"));
+            } else {
+                out.write(LocalServer.response(200, "ok"));
+            }
+            return true;
+        })) {
+            // the backoff alone would retry at once, so the wait comes from the header
+            RetryPolicy retry = RetryPolicy.builder().backoff(1, 1, TimeUnit.MILLISECONDS)
+                    .maxRetryAfter(60, TimeUnit.SECONDS).build();
+            HttpClient client = HttpClient.builder().retryPolicy(retry).build();
+            long start = System.nanoTime();
+            assertEquals("ok", client.send(get(server.url("/"))).toTextResponse().get());
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(950));
+            assertEquals(2, server.requests().size());
+
+            // a wait longer than the policy allows returns the response instead
+            start = System.nanoTime();
+            assertEquals(503, client.send(get(server.url("/later"))).getCode());
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+            assertEquals(3, server.requests().size());
+        }
+    }
+
+    @Test
+    public void circuitBreakerStateTest() throws Exception {
+        AtomicBoolean healthy = new AtomicBoolean();
+        AtomicReference<CircuitBreaker.State> stateDuringTrial = new AtomicReference<>();
+        CircuitBreaker breaker = CircuitBreaker.builder().failureThreshold(2)
+                .openDuration(200, TimeUnit.MILLISECONDS).build();
+        try (LocalServer server = new LocalServer((request, out) -> {
+            stateDuringTrial.set(breaker.getState(request.header("Host")));
+            out.write(healthy.get() ? LocalServer.response(200, "ok") : LocalServer.response(500, "error"));
+            return true;
+        })) {
+            HttpClient client = HttpClient.builder().circuitBreaker(breaker).build();
+            assertEquals(500, client.send(get(server.url("/"))).getCode());
+            assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(server.host()));
+            assertEquals(500, client.send(get(server.url("/"))).getCode());
+            assertEquals(CircuitBreaker.State.OPEN, breaker.getState(server.host()));
+
+            // an open circuit fails without sending
+            assertThrows(CircuitOpenException.class, () -> client.send(get(server.url("/"))));
+            assertEquals(2, server.requests().size());
+
+            // after the open duration one trial goes out, and its failure opens the circuit again
+            Thread.sleep(250);
+            assertEquals(500, client.send(get(server.url("/"))).getCode());
+            assertEquals(CircuitBreaker.State.HALF_OPEN, stateDuringTrial.get());
+            assertEquals(CircuitBreaker.State.OPEN, breaker.getState(server.host()));
+            assertThrows(CircuitOpenException.class, () -> client.send(get(server.url("/"))));
+
+            // a successful trial closes it
+            healthy.set(true);
+            Thread.sleep(250);
+            assertEquals(200, client.send(get(server.url("/"))).getCode());
+            assertEquals(CircuitBreaker.State.HALF_OPEN, stateDuringTrial.get());
+            assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(server.host()));
+            assertEquals(4, server.requests().size());
+        }
+    }
+
+    @Test
+    public void dnsNegativeCacheTest() throws Exception {
+        Map<String, AtomicInteger> lookups = new ConcurrentHashMap<>();
+        DnsCache dns = DnsCache.builder().negativeTtl(200, TimeUnit.MILLISECONDS).resolver(host -> {
+            lookups.computeIfAbsent(host, k -> new AtomicInteger()).incrementAndGet();
+            if (host.equals("missing.test")) throw new UnknownHostException(host);
+            return new InetAddress[]{InetAddress.getLoopbackAddress()};
+        }).build();
+        try (LocalServer server = new LocalServer((request, out) -> {
+            out.write(LocalServer.response(200, "ok"));
+            return true;
+        })) {
+            HttpClient client = HttpClient.builder().dnsCache(dns).build();
+            String port = server.host().substring(server.host().indexOf(':'));
+            assertEquals("ok", client.send(get("http://local.test" + port + "/")).toTextResponse().get());
+            assertEquals("ok", client.send(get("http://local.test" + port + "/")).toTextResponse().get());
+            assertEquals(1, lookups.get("local.test").get());
+
+            UnknownHostException first = assertThrows(UnknownHostException.class, () -> client.send(get("http://missing.test" + port + "/")));
+            assertEquals("missing.test", first.getMessage());
+            // within the negative TTL the failure is answered from the cache
+            UnknownHostException cached = assertThrows(UnknownHostException.class, () -> client.send(get("http://missing.test" + port + "/")));
+            assertEquals("missing.test (cached)", cached.getMessage());
+            assertEquals(1, lookups.get("missing.test").get());
+
+            Thread.sleep(250);
+            assertThrows(UnknownHostException.class, () -> dns.resolve("missing.test"));
+            assertEquals(2, lookups.get("missing.test").get());
+            assertEquals(2, server.requests().size());
+        }
+    }
+
+    @Test
+    public void charsetTest() throws Exception {
+        try (LocalServer server = new LocalServer((request, out) -> {
+            switch (request.target) {
+                case "/latin1":
+                    out.write(LocalServer.response(200, "café".getBytes(StandardCharsets.ISO_8859_1), "Content-Type: text/plain; charset=ISO-8859-1"));
+                    break;
+                case "/sjis":
+                    out.write(LocalServer.response(200, "日本語".getBytes("Shift_JIS"), "Content-Type: text/plain; charset=\"Shift_JIS\""));
+                    break;
+                case "/utf16":
+                    // no charset declared, so the byte order mark decides
+                    out.write(LocalServer.response(200, concat(new byte[]{(byte) 0xFF, (byte) 0xFE}, "日本".getBytes(StandardCharsets.UTF_16LE))));
+                    break;
+                case "/utf8-bom":
+                    out.write(LocalServer.response(200, concat(new byte[]{(byte) 0xEF, (byte) 0xBB, (byte) 0xBF}, "ü".getBytes(StandardCharsets.UTF_8)),
+                            "Content-Type: text/plain; charset=utf-8"));
+                    break;
+                case "/unknown":
+                    out.write(LocalServer.response(200, "ü".getBytes(StandardCharsets.UTF_8), "Content-Type: text/plain; charset=x-unknown"));
+                    break;
+                case "/lines":
+                    out.write(LocalServer.response(200, "a\r\nbé\n\nc".getBytes(StandardCharsets.UTF_8), "Content-Type: application/x-ndjson"));
+                    break;
+                case "/cr-latin1":
+                    out.write(LocalServer.response(200, "x\ry\r\n\rz\r".getBytes(StandardCharsets.ISO_8859_1), "Content-Type: text/plain; charset=ISO-8859-1"));
+                    break;
+                case "/cr-utf16":
+                    out.write(LocalServer.response(200, "x\ry\r\n\rz\r".getBytes(StandardCharsets.UTF_16LE), "Content-Type: text/plain; charset=UTF-16LE"));
+                    break;
+                default:
+                    out.write(LocalServer.response(200, concat(new byte[]{(byte) 0xFE, (byte) 0xFF}, "x\ny".getBytes(StandardCharsets.UTF_16BE)),
+                            "Content-Type: text/plain; charset=UTF-16BE"));
+            }
+            return true;
+        })) {
+            HttpClient client = HttpClient.builder().build();
+            assertEquals("café", client.send(get(server.url("/latin1"))).toTextResponse().get());
+            CharSequence latin1 = client.send(get(server.url("/latin1"))).asCharSequence();
+            assertEquals(4, latin1.length());
+            assertEquals('é', latin1.charAt(3));
+            assertEquals("af", latin1.subSequence(1, 3).toString());
+
+            assertEquals("日本語", client.send(get(server.url("/sjis"))).toTextResponse().get());
+            assertEquals("日本", client.send(get(server.url("/utf16"))).toTextResponse().get());
+            assertEquals("ü", client.send(get(server.url("/utf8-bom"))).toTextResponse().get());
+            assertEquals("ü", client.send(get(server.url("/utf8-bom"))).asCharSequence().toString());
+            assertEquals("ü", client.send(get(server.url("/unknown"))).toTextResponse().get());
+
+            List<String> lines = new ArrayList<>();
+            client.send(get(server.url("/lines"))).forEachLine(lines::add);
+            assertEquals(Arrays.asList("a", "bé", "", "c"), lines);
+            lines.clear();
+            client.send(get(server.url("/utf16-lines"))).forEachLine(lines::add);
+            assertEquals(Arrays.asList("x", "y"), lines);
+
+            // a lone \r ends a line whichever way the charset is decoded
+            for (String path : Arrays.asList("/cr-latin1", "/cr-utf16")) {
+                lines.clear();
+                client.send(get(server.url(path))).forEachLine(lines::add);
+                assertEquals(Arrays.asList("x", "y", "", "z"), lines, path);
+            }
+        }
+    }
+
+    @Test
+    public void multipartUploadTest() throws Exception {
+        Path file = Files.createTempFile("replay", ".bin");
+        file.toFile().deleteOnExit();
+        byte[] data = new byte[3 * 1024 * 1024 + 17];
+        new Random(1).nextBytes(data);
+        Files.write(file, data);
+        try (LocalServer server = new LocalServer((request, out) -> {
+            out.write(LocalServer.response(200, "ok"));
+            return true;
+        })) {
+            MultipartBody body = MultipartBody.builder().boundary("test-boundary")
+                    .field("server", "lobby-1")
+                    .file("replay", file, "application/octet-stream")
+                    .part("meta", null, "application/json", "{}".getBytes(StandardCharsets.UTF_8))
+                    .build();
+            Request request = Request.builder().url(server.url("/upload")).method(Request.Method.POST).body(body).build();
+            assertEquals(200, HttpClient.builder().build().send(request).getCode());
+
+            LocalServer.RecordedRequest received = server.requests().get(0);
+            assertEquals("multipart/form-data; boundary=test-boundary", received.header("Content-Type"));
+            // the length is known up front, so the file is streamed without chunked framing
+            assertNull(received.header("Transfer-Encoding"));
+            assertEquals(String.valueOf(body.contentLength()), received.header("Content-Length"));
+            assertEquals(body.contentLength(), received.body.length);
+
+            String fileHead = "--test-boundary\r\nContent-Disposition: form-data; name=\"replay\"; filename=\""
+                    + file.getFileName() + "\"\r\nContent-Type: application/octet-stream\r\n\r\n";
+            byte[] expected = concat(concat(concat(
+                    ("--test-boundary\r\nContent-Disposition: form-data; name=\"server\"\r\n\r\nlobby-1\r\n" + fileHead)
+                            .getBytes(StandardCharsets.UTF_8), data),
+                    ("\r\n--test-boundary\r\nContent-Disposition: form-data; name=\"meta\"\r\nContent-Type: application/json\r\n\r\n{}\r\n")
+                            .getBytes(StandardCharsets.UTF_8)),
+                    "--test-boundary--\r\n".getBytes(StandardCharsets.UTF_8));
+            assertArrayEquals(expected, received.body);
+        }
+    }
+
+    @Test
+    public void missingUploadFileTest() throws Exception {
+        File missing = new File(System.getProperty("java.io.tmpdir"), "missing-" + System.nanoTime() + ".bin");
+        try (LocalServer server = new LocalServer((request, out) -> {
+            out.write(LocalServer.response(200, "ok"));
+            return true;
+        })) {
+            HttpClient client = HttpClient.builder().build();
+            Request request = Request.builder().url(server.url("/upload")).method(Request.Method.POST)
+                    .file(missing, "document").build();
+            assertThrows(FileNotFoundException.class, () -> client.send(request));
+            ExecutionException e = assertThrows(ExecutionException.class, () -> client.sendAsync(request).get(2, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof FileNotFoundException, String.valueOf(e.getCause()));
+            assertThrows(FileNotFoundException.class, () -> MultipartBody.builder().file("document", missing));
+            assertEquals(0, server.requests().size());
+        }
+    }
+
+    @Test
+    public void requestMetricsTest() throws Exception {
+        BufferedImage image = new BufferedImage(64, 64, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", png);
+        String text = repeat("x", 100);
+        try (LocalServer server = new LocalServer((request, out) -> {
+            if (request.target.equals("/missing")) out.write(LocalServer.response(404, "missing"));
+            else if (request.target.equals("/image")) out.write(LocalServer.response(200, png.toByteArray(), "Content-Type: image/png"));
+            else out.write(LocalServer.response(200, text));
+            return true;
+        }); ServerSocket closed = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            List<RequestTimings> reported = new CopyOnWriteArrayList<>();
+            HttpClient client = HttpClient.builder().metrics(true)
+                    .requestListener((request, code, timings, failure) -> reported.add(timings)).build();
+
+            HttpClient.TemporaryResponse first = client.send(get(server.url("/text")));
+            RequestTimings timings = first.getTimings();
+            assertEquals(1, timings.getExchanges());
+            assertTrue(timings.getConnectNanos() > 0);
+            assertTrue(timings.getTimeToFirstByteNanos() > 0);
+            assertTrue(timings.getTotalNanos() >= timings.getConnectNanos() + timings.getTimeToFirstByteNanos());
+            assertTrue(timings.getBytesSent() > 0);
+            assertEquals(text.length(), timings.getBytesReceived());
+            assertEquals(0, timings.getDecodeNanos());
+            assertTrue(first.toTextResponse().getTimings().getDecodeNanos() > 0);
+            // the second request reuses the connection
+            assertEquals(0, client.send(get(server.url("/text"))).getTimings().getConnectNanos());
+
+            assertEquals(404, client.send(get(server.url("/missing"))).getCode());
+            HttpClient.TemporaryResponse imageResponse = client.send(get(server.url("/image")));
+            assertTrue(imageResponse.toImageResponse().getTimings().getDecodeNanos() > 0);
+            int port = closed.getLocalPort();
+            closed.close();
+            assertThrows(IOException.class, () -> client.send(get("http://127.0.0.1:" + port + "/")));
+
+            HostMetricsSnapshot host = client.getMetrics().get(server.host());
+            assertEquals(4, host.getRequests());
+            assertEquals(0, host.getFailures());
+            Map<Integer, Long> codes = new TreeMap<>();
+            codes.put(200, 3L);
+            codes.put(404, 1L);
+            assertEquals(codes, host.getStatusCodes());
+            assertEquals(2L * text.length() + "missing".length() + png.size(), host.getBytesReceived());
+            assertTrue(host.getP50Nanos() <= host.getP90Nanos() && host.getP90Nanos() <= host.getP99Nanos());
+            assertTrue(host.getP99Nanos() <= host.getMaxNanos());
+            assertTrue(host.getMeanNanos() > 0 && host.getMeanNanos() <= host.getMaxNanos());
+            assertTrue(host.getP50ResponseBytes() <= host.getP99ResponseBytes());
+            // conversions happen after the request was recorded, and still reach the host's metrics
+            assertEquals(2, host.getDecodes());
+            assertTrue(host.getMeanDecodeNanos() > 0 && host.getP50DecodeNanos() <= host.getP99DecodeNanos());
+
+            HostMetricsSnapshot failed = client.getMetrics().get("127.0.0.1:" + port);
+            assertEquals(1, failed.getRequests());
+            assertEquals(1, failed.getFailures());
+            assertTrue(failed.getStatusCodes().isEmpty());
+            assertEquals(5, reported.size());
+
+            client.resetMetrics();
+            assertTrue(client.getMetrics().isEmpty());
+        }
+    }
+
+    @Test
+    public void dnsTtlTest() throws Exception {
+        AtomicInteger lookups = new AtomicInteger();
+        DnsCache dns = DnsCache.builder().ttl(200, TimeUnit.MILLISECONDS).refreshAhead(1).resolver(host -> {
+            lookups.incrementAndGet();
+            return new InetAddress[]{InetAddress.getLoopbackAddress()};
+        }).build();
+        dns.resolve("a.test");
+        dns.resolve("a.test");
+        assertEquals(1, lookups.get());
+        assertEquals(1, dns.getHitCount());
+        assertEquals(1, dns.getMissCount());
+
+        // an expired entry is resolved again before it is returned
+        Thread.sleep(250);
+        dns.resolve("a.test");
+        assertEquals(2, lookups.get());
+        assertEquals(2, dns.getMissCount());
+        assertEquals(0, dns.getRefreshCount());
+    }
+
+    @Test
+    public void dnsRefreshAheadTest() throws Exception {
+        AtomicInteger lookups = new AtomicInteger();
+        AtomicBoolean outage = new AtomicBoolean();
+        DnsCache dns = DnsCache.builder().ttl(1, TimeUnit.SECONDS).refreshAhead(0.2).resolver(host -> {
+            int lookup = lookups.incrementAndGet();
+            if (outage.get()) throw new UnknownHostException(host);
+            return new InetAddress[]{InetAddress.getByAddress(host, new byte[]{127, 0, 0, (byte) lookup})};
+        }).build();
+        assertEquals(1, dns.resolve("b.test")[0].getAddress()[3]);
+
+        // past the refresh point the cached address is returned while a new one is looked up in the background
+        Thread.sleep(250);
+        assertEquals(1, dns.resolve("b.test")[0].getAddress()[3]);
+        for (int i = 0; i < 100 && dns.getRefreshCount() == 0; i++) Thread.sleep(10);
+        assertEquals(1, dns.getRefreshCount());
+        assertEquals(2, dns.resolve("b.test")[0].getAddress()[3]);
+        assertEquals(1, dns.getMissCount());
+
+        // during an outage one failed refresh is made, and the old address is kept until it expires
+        outage.set(true);
+        Thread.sleep(250);
+        for (int i = 0; i < 20; i++) {
+            assertEquals(2, dns.resolve("b.test")[0].getAddress()[3]);
+            Thread.sleep(5);
+        }
+        for (int i = 0; i < 100 && dns.getRefreshCount() == 1; i++) Thread.sleep(10);
+        Thread.sleep(50);
+        assertEquals(2, dns.getRefreshCount());
+        assertEquals(3, lookups.get());
+    }
+
+    @Test
+    public void dnsPrewarmTest() throws Exception {
+        Map<String, AtomicInteger> lookups = new ConcurrentHashMap<>();
+        DnsCache dns = DnsCache.builder().resolver(host -> {
+            lookups.computeIfAbsent(host, k -> new AtomicInteger()).incrementAndGet();
+            if (host.equals("missing.test")) throw new UnknownHostException(host);
+            return new InetAddress[]{InetAddress.getLoopbackAddress()};
+        }).build();
+        // the future completes for hosts that cannot be resolved as well
+        dns.prewarm("c.test", "d.test", "missing.test").get(2, TimeUnit.SECONDS);
+        dns.resolve("c.test");
+        dns.resolve("d.test");
+        assertThrows(UnknownHostException.class, () -> dns.resolve("missing.test"));
+        assertEquals(3, dns.getHitCount());
+        assertEquals(0, dns.getMissCount());
+        for (AtomicInteger count : lookups.values()) assertEquals(1, count.get());
+    }
+
+    @Test
+    public void dnsSharedLookupTest() throws Exception {
+        AtomicInteger lookups = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        DnsCache dns = DnsCache.builder().resolver(host -> {
+            lookups.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new UnknownHostException(host);
+            }
+            return new InetAddress[]{InetAddress.getLoopbackAddress()};
+        }).build();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<InetAddress[]>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) results.add(executor.submit(() -> dns.resolve("e.test")));
+            Thread.sleep(100);
+            release.countDown();
+            for (Future<InetAddress[]> result : results) {
+                assertEquals(InetAddress.getLoopbackAddress(), result.get(2, TimeUnit.SECONDS)[0]);
+            }
+            // every thread waited for the one resolution
+            assertEquals(1, lookups.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    static Request get(String url) {
+        return Request.builder().url(url).method(Request.Method.GET).build();
+    }
+
+    static Proxy proxy(LocalServer server) {
+        String[] host = server.host().split(":");
+        return new Proxy(Proxy.Type.HTTP, new InetSocketAddress(host[0], Integer.parseInt(host[1])));
+    }
+
+    static String repeat(String text, int count) {
+        StringBuilder builder = new StringBuilder(text.length() * count);
+        for (int i = 0; i < count; i++) builder.append(text);
+        return builder.toString();
+    }
+
+    static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    static byte[] deflate(byte[] data, boolean raw) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream(out, new Deflater(Deflater.DEFAULT_COMPRESSION, raw))) {
+            deflate.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    static byte[] gunzip(byte[] data) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) out.write(buffer, 0, read);
+            return out.toByteArray();
+        }
+    }
+
+    static byte[] concat(byte[] first, byte[] second) {
+        byte[] bytes = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, bytes, first.length, second.length);
+        return bytes;
+    }
+}
@@ -0,0 +1,218 @@
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An HTTP/1.1 server on the loopback interface whose responses are written byte for byte by the test, so that the
+ * client's parser, connection reuse and failure handling can be checked against exact wire data.
+ */
+final class LocalServer implements Closeable {
+    private final ServerSocket serverSocket;
+    private final Handler handler;
+    private final List<RecordedRequest> requests = new CopyOnWriteArrayList<>();
+    private final List<Socket> sockets = new CopyOnWriteArrayList<>();
+    private final AtomicInteger connections = new AtomicInteger();
+
+    LocalServer(Handler handler) throws IOException {
+        this(handler, null);
+    }
+
+    /**
+     * Starts a server that speaks TLS with the context's key, or plain HTTP if the context is null.
+     */
+    LocalServer(Handler handler, SSLContext tls) throws IOException {
+        this.serverSocket = tls != null
+                ? tls.getServerSocketFactory().createServerSocket(0, 50, InetAddress.getLoopbackAddress())
+                : new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        this.handler = handler;
+        Thread acceptor = new Thread(this::accept, "LocalServer-" + serverSocket.getLocalPort());
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Writes a raw response to the connection.
+     */
+    @FunctionalInterface
+    interface Handler {
+
+        /**
+         * Responds to a request.
+         *
+         * @return false to close the connection afterwards
+         */
+        boolean respond(RecordedRequest request, OutputStream out) throws Exception;
+    }
+
+    /**
+     * Returns a complete response with a Content-Length body.
+     */
+    static byte[] response(int code, String body, String... headers) {
+        return response(code, body.getBytes(StandardCharsets.UTF_8), headers);
+    }
+
+    /**
+     * Returns a complete response with a Content-Length body.
+     */
+    static byte[] response(int code, byte[] bytes, String... headers) {
+        StringBuilder head = new StringBuilder("HTTP/1.1 ").append(code).append(" Status\r\n");
+        for (String header : headers) head.append(header).append("\r\n");
+        head.append("Content-Length: ").append(bytes.length).append("\r\n\r\n");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1), 0, head.length());
+        out.write(bytes, 0, bytes.length);
+        return out.toByteArray();
+    }
+
+    String url(String path) {
+        String scheme = serverSocket instanceof SSLServerSocket ? "https" : "http";
+        return scheme + "://127.0.0.1:" + serverSocket.getLocalPort() + path;
+    }
+
+    String host() {
+        return "127.0.0.1:" + serverSocket.getLocalPort();
+    }
+
+    List<RecordedRequest> requests() {
+        return requests;
+    }
+
+    int connections() {
+        return connections.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Socket socket : sockets) socket.close();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                return;
+            }
+            sockets.add(socket);
+            int connection = connections.incrementAndGet();
+            Thread thread = new Thread(() -> serve(socket, connection), "LocalServer-connection-" + connection);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private void serve(Socket socket, int connection) {
+        try (Socket ignored = socket) {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = socket.getOutputStream();
+            for (int exchange = 1; ; exchange++) {
+                RecordedRequest request = RecordedRequest.read(in, connection, exchange);
+                if (request == null) return;
+                requests.add(request);
+                boolean keepAlive = handler.respond(request, out);
+                out.flush();
+                if (!keepAlive) return;
+            }
+        } catch (SocketException | EOFException ignored) {
+            // the client went away
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * A request as the server received it.
+     */
+    static final class RecordedRequest {
+        final String method;
+        final String target;
+        final Map<String, String> headers;
+        final byte[] body;
+        final int connection;
+        final int exchange;
+
+        private RecordedRequest(String method, String target, Map<String, String> headers, byte[] body, int connection, int exchange) {
+            this.method = method;
+            this.target = target;
+            this.headers = headers;
+            this.body = body;
+            this.connection = connection;
+            this.exchange = exchange;
+        }
+
+        String header(String name) {
+            return headers.get(name);
+        }
+
+        String bodyText() {
+            return new String(body, StandardCharsets.UTF_8);
+        }
+
+        static RecordedRequest read(InputStream in, int connection, int exchange) throws IOException {
+            String requestLine = readLine(in);
+            if (requestLine == null) return null;
+            String[] parts = requestLine.split(" ", 3);
+            Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            String line;
+            while ((line = readLine(in)) != null && !line.isEmpty()) {
+                int colon = line.indexOf(':');
+                headers.put(line.substring(0, colon), line.substring(colon + 1).trim());
+            }
+
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            if ("chunked".equalsIgnoreCase(headers.get("Transfer-Encoding"))) {
+                while (true) {
+                    int size = Integer.parseInt(readLine(in).trim(), 16);
+                    copy(in, body, size);
+                    readLine(in);
+                    if (size == 0) break;
+                }
+            } else if (headers.containsKey("Content-Length")) {
+                copy(in, body, Integer.parseInt(headers.get("Content-Length")));
+            }
+            return new RecordedRequest(parts[0], parts[1], Collections.unmodifiableMap(headers), body.toByteArray(), connection, exchange);
+        }
+
+        private static void copy(InputStream in, ByteArrayOutputStream out, int length) throws IOException {
+            for (int i = 0; i < length; i++) {
+                int b = in.read();
+                if (b == -1) throw new EOFException();
+                out.write(b);
+            }
+        }
+
+        private static String readLine(InputStream in) throws IOException {
+            StringBuilder line = new StringBuilder();
+            int b;
+            while ((b = in.read()) != -1) {
+                if (b == '\n') {
+                    int end = line.length();
+                    if (end > 0 && line.charAt(end - 1) == '\r') line.setLength(end - 1);
+                    return line.toString();
+                }
+                line.append((char) b);
+            }
+            return line.length() == 0 ? null : line.toString();
+        }
+    }
+}